@@ -0,0 +1,67 @@
+package carSimulaiton;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Memory of one agent. Each operation creates one bin or car, so with the GC
+ * profiler gc.alloc.rate.norm is the bytes per agent: the object itself plus
+ * everything it allocates for itself. addBin also counts the kernel's per-bin
+ * tables (id lookup and fill forecaster), their growth amortized over the
+ * iteration's bins.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Thread)
+public class AgentFootprintBenchmark {
+    private BenchmarkWorld world;
+    private SimulationKernel kernel;
+    private SimulationRandom random;
+    private int nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        world = new BenchmarkWorld(50, 0, 0, 42);
+        random = new SimulationRandom(42);
+    }
+
+    /**
+     * A fresh kernel per iteration, so the bins added by one do not pile up.
+     */
+    @Setup(Level.Iteration)
+    public void newKernel() {
+        kernel = new SimulationKernel(world.getGrid(), 42);
+        nextId = 0;
+    }
+
+    @Benchmark
+    public GarbageBin newBin() {
+        return new GarbageBin(nextId++, 100.0, GarbageBin.AreaType.RESIDENTIAL, random);
+    }
+
+    @Benchmark
+    public GarbageBin addBin() {
+        GarbageBin bin = new GarbageBin(nextId++, 100.0, GarbageBin.AreaType.RESIDENTIAL, random);
+        kernel.addGarbageBin(bin);
+        return bin;
+    }
+
+    @Benchmark
+    public Car newCar() {
+        return new Car(world.getGrid(), nextId++, VehicleClass.STANDARD);
+    }
+}
@@ -0,0 +1,61 @@
+package carSimulaiton;
+
+import java.util.List;
+
+import repast.simphony.context.Context;
+import repast.simphony.context.DefaultContext;
+import repast.simphony.random.RandomHelper;
+import repast.simphony.space.grid.Grid;
+
+/**
+ * A world built through CarSimulationBuilder outside the Repast GUI, for benchmarks.
+ * Ticks go through the SimulationKernel, exactly as in a Repast or headless run.
+ */
+public class BenchmarkWorld {
+    private final Context<Object> context;
+    private final SimulationKernel kernel;
+
+    /**
+     * Build a square world.
+     *
+     * @param size Grid width and height in cells
+     * @param numBins Number of garbage bins
+     * @param numCars Number of cars
+     * @param seed Random seed for a reproducible layout
+     */
+    public BenchmarkWorld(int size, int numBins, int numCars, int seed) {
+        context = new DefaultContext<>();
+        RandomHelper.setSeed(seed);
+
+        CarSimulationBuilder builder = new CarSimulationBuilder(size, size, numBins, numCars);
+        builder.build(context);
+        kernel = builder.getKernel();
+    }
+
+    /**
+     * Advance the model by one tick.
+     */
+    public void tick() {
+        kernel.tick();
+    }
+
+    public Context<Object> getContext() {
+        return context;
+    }
+
+    public SimulationKernel getKernel() {
+        return kernel;
+    }
+
+    public Grid<Object> getGrid() {
+        return kernel.getGrid();
+    }
+
+    public List<Car> getCars() {
+        return kernel.getCars();
+    }
+
+    public List<GarbageBin> getBins() {
+        return kernel.getBins();
+    }
+}
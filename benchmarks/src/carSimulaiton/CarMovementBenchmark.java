@@ -0,0 +1,64 @@
+package carSimulaiton;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Move validation on the default 50x50 map, for a car on a plain road cell
+ * and for a car on an intersection.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CarMovementBenchmark {
+    @Param({"ROAD", "INTERSECTION"})
+    public String cell;
+
+    private Car car;
+    private int x;
+    private int y;
+    private boolean atIntersection;
+    private Car.Direction[] directions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkWorld world = new BenchmarkWorld(50, 5, 1, 42);
+        car = world.getCars().get(0);
+
+        // (15, 10) is on the first horizontal road, (10, 10) is its first intersection
+        x = "ROAD".equals(cell) ? 15 : 10;
+        y = 10;
+        world.getGrid().moveTo(car, x, y);
+        car.setInitialDirection(Car.Direction.EAST);
+        atIntersection = car.isAtIntersection(x, y);
+        directions = Car.Direction.values();
+    }
+
+    @Benchmark
+    public void isValidMove(Blackhole bh) {
+        for (Car.Direction dir : directions) {
+            bh.consume(car.isValidMove(x, y, dir));
+        }
+    }
+
+    @Benchmark
+    public int getAllowedMoves() {
+        return car.getAllowedMoves(x, y, atIntersection);
+    }
+}
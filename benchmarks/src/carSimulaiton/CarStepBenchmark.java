@@ -0,0 +1,63 @@
+package carSimulaiton;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One full Car.step, the unit the movement code is tuned for. Every operation
+ * steps each car of a 50x50 scenario once, so with the GC profiler
+ * gc.alloc.rate.norm is the bytes allocated per car step, with nothing else
+ * of the tick mixed in. The kernel's clock does not advance: the cars keep
+ * driving, seeking, collecting and waiting at lights that stay as they are.
+ * Agent console output is discarded, as in a quiet headless run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CarStepBenchmark {
+    private static final int CARS = 20;
+
+    private BenchmarkWorld world;
+    private List<Car> cars;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        world = new BenchmarkWorld(50, 20, CARS, 42);
+        cars = world.getCars();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CARS)
+    public void step() {
+        for (int i = 0; i < cars.size(); i++) {
+            cars.get(i).step();
+        }
+    }
+}
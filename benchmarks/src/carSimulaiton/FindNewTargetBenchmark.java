@@ -0,0 +1,62 @@
+package carSimulaiton;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import repast.simphony.random.RandomHelper;
+
+/**
+ * Target selection for a car that knows about N bins spread over a 500x500 map.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FindNewTargetBenchmark {
+    @Param({"10", "100", "1000"})
+    public int knownBins;
+
+    private Car car;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkWorld world = new BenchmarkWorld(500, 0, 1, 42);
+        car = world.getCars().get(0);
+
+        for (int i = 1; i <= knownBins; i++) {
+            GarbageBin bin = new GarbageBin(i, 150.0, GarbageBin.AreaType.RESIDENTIAL);
+            car.rememberBin(bin, RandomHelper.nextIntFromTo(0, 499), RandomHelper.nextIntFromTo(0, 499));
+        }
+    }
+
+    /**
+     * Scoring pass over the known bins only.
+     */
+    @Benchmark
+    public int chooseTargetBin() {
+        return car.chooseTargetBin();
+    }
+
+    /**
+     * Full findNewTarget including the bin assignment, released again afterwards.
+     */
+    @Benchmark
+    public void findNewTarget() {
+        car.findNewTarget();
+        car.releaseTargetBin();
+    }
+}
@@ -0,0 +1,71 @@
+package carSimulaiton;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A partitioned run of a fixed scenario with 1, 2 and 4 worker processes.
+ * Each operation runs all ticks; starting the workers and building their
+ * scenarios happens before it and is not timed, so the score divided by the
+ * 1-worker score is the speedup. The workers run on separate cores only if
+ * the machine has them.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Thread)
+public class PartitionedRunBenchmark {
+    private static final int TICKS = 2000;
+    private static final int SIZE = 200;
+    private static final int BINS = 100;
+    private static final int CARS = 200;
+    private static final int SEED = 42;
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    @Param({"0", "100"})
+    public int epoch;
+
+    private PartitionedSimulation simulation;
+    private PrintStream console;
+
+    @Setup(Level.Invocation)
+    public void start() throws IOException {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        simulation = (epoch > 0) ?
+                new PartitionedSimulation(BisectionBalancer.forGrid(SIZE, SIZE, workers), epoch) :
+                new PartitionedSimulation(RegionPartition.uniform(SIZE, SIZE, workers));
+        simulation.start(TICKS, BINS, CARS, SEED, DispatchPolicy.GREEDY, false);
+    }
+
+    @Benchmark
+    public void run() throws IOException {
+        simulation.run();
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() {
+        simulation.close();
+        System.setOut(console);
+    }
+}
@@ -0,0 +1,91 @@
+package carSimulaiton;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bin assignment requests against one run's TaskCoordinator, uncontended and
+ * with several vehicles (threads) competing for the same bins.
+ *
+ * Every request that wins is released straight away, which resets the
+ * vehicle's repeat count for the bin, and the clock moves past the emptied-bin
+ * cooldown every few operations, so a request fails only because another
+ * vehicle holds the bin or it was emptied within the current tick. Console
+ * logging is off, as in a headless run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskCoordinatorBenchmark {
+    @Param({"100"})
+    public int numBins;
+
+    // Operations simulated per tick
+    private static final int OPS_PER_TICK = 8;
+
+    private TaskCoordinator coordinator;
+    private final AtomicInteger nextVehicleId = new AtomicInteger();
+    private final AtomicLong ops = new AtomicLong();
+
+    @State(Scope.Thread)
+    public static class Vehicle {
+        int id;
+        SplittableRandom random;
+
+        @Setup
+        public void setUp(TaskCoordinatorBenchmark shared) {
+            id = shared.nextVehicleId.incrementAndGet();
+            random = new SplittableRandom(id);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        coordinator = new TaskCoordinator();
+        coordinator.setLogging(false);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean uncontended(Vehicle vehicle) {
+        return requestAndRelease(vehicle);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean contended(Vehicle vehicle) {
+        return requestAndRelease(vehicle);
+    }
+
+    private boolean requestAndRelease(Vehicle vehicle) {
+        long op = ops.incrementAndGet();
+        if (op % OPS_PER_TICK == 0) {
+            // Jump past the cooldown so emptied bins are open again
+            coordinator.setCurrentTick(op / OPS_PER_TICK * (TaskCoordinator.EMPTY_COOLDOWN + 1));
+        }
+        int binId = vehicle.random.nextInt(numBins);
+        boolean assigned = coordinator.requestBinAssignment(vehicle.id, binId);
+        if (assigned) {
+            coordinator.releaseBin(vehicle.id, binId);
+        }
+        return assigned;
+    }
+}
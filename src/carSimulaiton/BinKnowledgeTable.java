@@ -0,0 +1,238 @@
+package carSimulaiton;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * What the trucks of a run have seen of the bins.
+ *
+ * One row per bin id holds the bin's cell and capacity, the fill and tick of
+ * its latest sighting by any truck (the row's version) and the tick it was
+ * last emptied. Trucks do not copy rows; each has a View, two bitsets over bin
+ * ids, naming the bins it sighted in the current epoch and in the one before.
+ * That is how much of the table a truck may use, which models each truck's
+ * partial view of the city at a cost of bits per bin rather than objects.
+ *
+ * Sightings expire by epoch: when a view is next used in a later epoch, the
+ * older set is dropped and the current one becomes the older, so a sighting is
+ * remembered for one to two epochs and nothing ever scans for stale entries.
+ */
+public class BinKnowledgeTable {
+    public static final long EPOCH_TICKS = 150;
+
+    // Per bin id; sightedTicks and emptiedTicks are -1 until the first event
+    private int[] xs = new int[0];
+    private int[] ys = new int[0];
+    private double[] capacities = new double[0];
+    private double[] fills = new double[0];
+    private long[] sightedTicks = new long[0];
+    private long[] emptiedTicks = new long[0];
+
+    /**
+     * Record a truck's sighting of a bin.
+     */
+    public void sight(GarbageBin bin, int x, int y, long tick) {
+        int binId = bin.getId();
+        ensureRow(binId);
+        xs[binId] = x;
+        ys[binId] = y;
+        capacities[binId] = bin.getCapacity();
+        fills[binId] = bin.getCurrentFill();
+        sightedTicks[binId] = tick;
+    }
+
+    /**
+     * Record that a truck emptied a bin.
+     */
+    public void emptied(int binId, long tick) {
+        ensureRow(binId);
+        emptiedTicks[binId] = tick;
+    }
+
+    /**
+     * Check whether a bin was emptied less than the given number of ticks ago.
+     */
+    public boolean wasEmptiedWithin(int binId, long tick, long ticks) {
+        return binId < emptiedTicks.length && emptiedTicks[binId] >= 0 && tick - emptiedTicks[binId] < ticks;
+    }
+
+    /**
+     * Check whether any truck has sighted a bin.
+     */
+    public boolean isSighted(int binId) {
+        return binId >= 0 && binId < sightedTicks.length && sightedTicks[binId] >= 0;
+    }
+
+    public int getX(int binId) {
+        return xs[binId];
+    }
+
+    public int getY(int binId) {
+        return ys[binId];
+    }
+
+    /**
+     * Fill of a bin at its latest sighting.
+     */
+    public double getFill(int binId) {
+        return fills[binId];
+    }
+
+    public double getFillPercentage(int binId) {
+        return (fills[binId] / capacities[binId]) * 100.0;
+    }
+
+    /**
+     * Tick of a bin's latest sighting, -1 if never sighted.
+     */
+    public long getSightedTick(int binId) {
+        return isSighted(binId) ? sightedTicks[binId] : -1;
+    }
+
+    private void ensureRow(int binId) {
+        if (binId < xs.length) {
+            return;
+        }
+        int length = Math.max(binId + 1, 2 * xs.length);
+        int oldLength = xs.length;
+        xs = Arrays.copyOf(xs, length);
+        ys = Arrays.copyOf(ys, length);
+        capacities = Arrays.copyOf(capacities, length);
+        fills = Arrays.copyOf(fills, length);
+        sightedTicks = Arrays.copyOf(sightedTicks, length);
+        emptiedTicks = Arrays.copyOf(emptiedTicks, length);
+        Arrays.fill(sightedTicks, oldLength, length, -1);
+        Arrays.fill(emptiedTicks, oldLength, length, -1);
+    }
+
+    /**
+     * The bins one truck knows of.
+     */
+    public static class View {
+        private long epoch = 0;
+        private BitSet current = new BitSet();
+        private BitSet previous = new BitSet();
+
+        /**
+         * Remember that the truck sighted a bin.
+         */
+        public void see(int binId, long tick) {
+            roll(tick);
+            current.set(binId);
+        }
+
+        public boolean knows(int binId, long tick) {
+            roll(tick);
+            return current.get(binId) || previous.get(binId);
+        }
+
+        /**
+         * Lowest known bin id at or above from, or -1 if there is none.
+         */
+        public int nextKnown(int from, long tick) {
+            roll(tick);
+            int a = current.nextSetBit(from);
+            int b = previous.nextSetBit(from);
+            if (a < 0 || b < 0) {
+                return Math.max(a, b);
+            }
+            return Math.min(a, b);
+        }
+
+        /**
+         * Bytes held by the view's bitsets.
+         */
+        public long getMemoryBytes() {
+            return (current.size() + previous.size()) / 8;
+        }
+
+        private void roll(long tick) {
+            long now = tick / EPOCH_TICKS;
+            if (now == epoch) {
+                return;
+            }
+            if (now == epoch + 1) {
+                BitSet older = previous;
+                previous = current;
+                current = older;
+            } else {
+                previous.clear();
+            }
+            current.clear();
+            epoch = now;
+        }
+
+        void writeState(DataOutput out) throws IOException {
+            out.writeLong(epoch);
+            writeBits(out, current);
+            writeBits(out, previous);
+        }
+
+        void readState(DataInput in) throws IOException {
+            epoch = in.readLong();
+            current = readBits(in);
+            previous = readBits(in);
+        }
+
+        private static void writeBits(DataOutput out, BitSet bits) throws IOException {
+            long[] words = bits.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+
+        private static BitSet readBits(DataInput in) throws IOException {
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            return BitSet.valueOf(words);
+        }
+    }
+
+    //----------------------------------------------------------------
+    // Snapshot support
+    //----------------------------------------------------------------
+
+    /**
+     * Write the rows with a sighting or emptying, by bin id.
+     */
+    void writeState(DataOutput out) throws IOException {
+        int count = 0;
+        for (int binId = 0; binId < xs.length; binId++) {
+            if (sightedTicks[binId] >= 0 || emptiedTicks[binId] >= 0) {
+                count++;
+            }
+        }
+        out.writeInt(count);
+        for (int binId = 0; binId < xs.length; binId++) {
+            if (sightedTicks[binId] >= 0 || emptiedTicks[binId] >= 0) {
+                out.writeInt(binId);
+                out.writeInt(xs[binId]);
+                out.writeInt(ys[binId]);
+                out.writeDouble(capacities[binId]);
+                out.writeDouble(fills[binId]);
+                out.writeLong(sightedTicks[binId]);
+                out.writeLong(emptiedTicks[binId]);
+            }
+        }
+    }
+
+    void readState(DataInput in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int binId = in.readInt();
+            ensureRow(binId);
+            xs[binId] = in.readInt();
+            ys[binId] = in.readInt();
+            capacities[binId] = in.readDouble();
+            fills[binId] = in.readDouble();
+            sightedTicks[binId] = in.readLong();
+            emptiedTicks[binId] = in.readLong();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package carSimulaiton;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recursive-bisection partitioner that rebalances regions from a measured cost map.
+ *
+ * The grid is cut in two along its longer side, each half is cut again, and so
+ * on until there is one rectangle per region; a node with k regions gives
+ * floor(k/2) of them to its first half and places its cut so both halves carry
+ * cost in that proportion. The tree's shape and cut axes are fixed when the
+ * balancer is created (from an area-balanced split), and rebalancing only moves
+ * the cuts, each by at most maxShift tiles per call. That bounds how many cells,
+ * and so how many trucks, change owner per epoch.
+ *
+ * Cuts lie on tile boundaries of the CostMap.
+ */
+public class BisectionBalancer {
+    public static final int DEFAULT_TILE_SIZE = 8;
+
+    // A new layout is only worth the migration if it lowers the busiest region's cost by this much
+    private static final double MIN_GAIN = 0.05;
+
+    private static final int HORIZONTAL = 0; // Cut along x: the children are side by side
+    private static final int VERTICAL = 1;   // Cut along y: the children are stacked
+
+    private static class Node {
+        final int regions;
+        final int axis;
+        final Node first;
+        final Node second;
+
+        // Minimum extent in tiles along each axis needed to give every leaf a tile
+        final int minTilesX;
+        final int minTilesY;
+
+        // Cut position in tiles, absolute
+        int cut;
+
+        Node() {
+            this.regions = 1;
+            this.axis = -1;
+            this.first = null;
+            this.second = null;
+            this.minTilesX = 1;
+            this.minTilesY = 1;
+        }
+
+        Node(int regions, int axis, Node first, Node second) {
+            this.regions = regions;
+            this.axis = axis;
+            this.first = first;
+            this.second = second;
+            if (axis == HORIZONTAL) {
+                this.minTilesX = first.minTilesX + second.minTilesX;
+                this.minTilesY = Math.max(first.minTilesY, second.minTilesY);
+            } else {
+                this.minTilesX = Math.max(first.minTilesX, second.minTilesX);
+                this.minTilesY = first.minTilesY + second.minTilesY;
+            }
+        }
+
+        boolean isLeaf() {
+            return first == null;
+        }
+    }
+
+    private final int gridWidth;
+    private final int gridHeight;
+    private final int tileSize;
+    private final int tilesX;
+    private final int tilesY;
+    private final int maxShift;
+    private final Node root;
+
+    private RegionPartition partition;
+    private int rebalances = 0;
+
+    /**
+     * @param regions Number of regions
+     * @param tileSize Cells per tile side; cuts snap to tile boundaries
+     * @param maxShift Largest distance in tiles a cut moves per rebalance
+     */
+    public BisectionBalancer(int gridWidth, int gridHeight, int regions, int tileSize, int maxShift) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.tileSize = tileSize;
+        this.tilesX = (gridWidth + tileSize - 1) / tileSize;
+        this.tilesY = (gridHeight + tileSize - 1) / tileSize;
+        this.maxShift = Math.max(1, maxShift);
+        this.root = buildTree(regions, tilesX, tilesY);
+        if (!fits(root, tilesX, tilesY)) {
+            throw new IllegalArgumentException("Cannot split a " + tilesX + "x" + tilesY + " tile grid into " +
+                                               regions + " regions");
+        }
+
+        // Start from an area-balanced layout
+        placeCuts(root, 0, 0, tilesX, tilesY, null, false);
+        this.partition = toPartition();
+    }
+
+    /**
+     * Balancer with the largest tile size up to DEFAULT_TILE_SIZE that still
+     * leaves every region at least one tile, and cuts moving up to an eighth
+     * of the grid per rebalance.
+     */
+    public static BisectionBalancer forGrid(int gridWidth, int gridHeight, int regions) {
+        int tileSize = DEFAULT_TILE_SIZE;
+        while (tileSize > 1 && !fits(gridWidth, gridHeight, regions, tileSize)) {
+            tileSize /= 2;
+        }
+        // Tile size 1 is tried by the constructor, which reports a grid too small for the regions
+        int tiles = Math.max(gridWidth, gridHeight) / tileSize;
+        return new BisectionBalancer(gridWidth, gridHeight, regions, tileSize, Math.max(1, tiles / 8));
+    }
+
+    /**
+     * Whether tiles of this size leave every region at least one tile.
+     */
+    private static boolean fits(int gridWidth, int gridHeight, int regions, int tileSize) {
+        int tilesX = (gridWidth + tileSize - 1) / tileSize;
+        int tilesY = (gridHeight + tileSize - 1) / tileSize;
+        return fits(buildTree(regions, tilesX, tilesY), tilesX, tilesY);
+    }
+
+    private static boolean fits(Node root, int tilesX, int tilesY) {
+        return root.minTilesX <= tilesX && root.minTilesY <= tilesY;
+    }
+
+    /**
+     * Build the tree shape, halving the longer side of an initially area-balanced split.
+     */
+    private static Node buildTree(int regions, int width, int height) {
+        if (regions == 1) {
+            return new Node();
+        }
+        int firstRegions = regions / 2;
+        if (width >= height) {
+            int firstWidth = Math.max(1, Math.round((float) width * firstRegions / regions));
+            return new Node(regions, HORIZONTAL, buildTree(firstRegions, firstWidth, height),
+                            buildTree(regions - firstRegions, Math.max(1, width - firstWidth), height));
+        }
+        int firstHeight = Math.max(1, Math.round((float) height * firstRegions / regions));
+        return new Node(regions, VERTICAL, buildTree(firstRegions, width, firstHeight),
+                        buildTree(regions - firstRegions, width, Math.max(1, height - firstHeight)));
+    }
+
+    /**
+     * Place the cuts below a node covering tiles [tx0, tx1) x [ty0, ty1).
+     *
+     * @param costs Measured costs, or null to balance by area
+     * @param bounded Whether cuts may only move maxShift tiles from where they are
+     */
+    private void placeCuts(Node node, int tx0, int ty0, int tx1, int ty1, CostMap costs, boolean bounded) {
+        if (node.isLeaf()) {
+            return;
+        }
+
+        boolean horizontal = node.axis == HORIZONTAL;
+        int start = horizontal ? tx0 : ty0;
+        int end = horizontal ? tx1 : ty1;
+        int low = start + (horizontal ? node.first.minTilesX : node.first.minTilesY);
+        int high = end - (horizontal ? node.second.minTilesX : node.second.minTilesY);
+        if (bounded) {
+            // A parent's cut may have moved this node's edge past the old cut
+            int current = Math.max(low, Math.min(high, node.cut));
+            low = Math.max(low, current - maxShift);
+            high = Math.min(high, current + maxShift);
+        }
+
+        double share = (double) node.first.regions / node.regions;
+        double target = share * weight(costs, tx0, ty0, tx1, ty1);
+        int best = low;
+        double bestError = Double.MAX_VALUE;
+        for (int cut = low; cut <= high; cut++) {
+            double firstWeight = horizontal ? weight(costs, tx0, ty0, cut, ty1) : weight(costs, tx0, ty0, tx1, cut);
+            double error = Math.abs(firstWeight - target);
+            if (error < bestError) {
+                bestError = error;
+                best = cut;
+            }
+        }
+        node.cut = best;
+
+        if (horizontal) {
+            placeCuts(node.first, tx0, ty0, best, ty1, costs, bounded);
+            placeCuts(node.second, best, ty0, tx1, ty1, costs, bounded);
+        } else {
+            placeCuts(node.first, tx0, ty0, tx1, best, costs, bounded);
+            placeCuts(node.second, tx0, best, tx1, ty1, costs, bounded);
+        }
+    }
+
+    /**
+     * Cost of a tile rectangle, or its area in cells when there is no cost map.
+     */
+    private double weight(CostMap costs, int tx0, int ty0, int tx1, int ty1) {
+        if (costs != null) {
+            return costs.cost(tx0, ty0, tx1, ty1);
+        }
+        return (double) (cell(tx1, gridWidth) - cell(tx0, gridWidth)) * (cell(ty1, gridHeight) - cell(ty0, gridHeight));
+    }
+
+    private int cell(int tile, int extent) {
+        return Math.min(tile * tileSize, extent);
+    }
+
+    /**
+     * Move the cuts toward the measured costs of the last epoch.
+     *
+     * @param costs Costs of the whole grid, with the same tile size as this balancer
+     * @return true if the partition changed
+     */
+    public boolean rebalance(CostMap costs) {
+        if (costs.getTileSize() != tileSize || costs.getTilesX() != tilesX || costs.getTilesY() != tilesY) {
+            throw new IllegalArgumentException("Cost map does not match the balancer's tiles");
+        }
+        costs.prepare();
+        if (costs.total() == 0) {
+            return false;
+        }
+
+        List<Integer> previous = saveCuts(root, new ArrayList<>());
+        placeCuts(root, 0, 0, tilesX, tilesY, costs, true);
+        RegionPartition candidate = toPartition();
+
+        if (maxRegionCost(candidate, costs) >= maxRegionCost(partition, costs) * (1 - MIN_GAIN)) {
+            // Not worth moving trucks for
+            restoreCuts(root, previous, 0);
+            return false;
+        }
+        partition = candidate;
+        rebalances++;
+        return true;
+    }
+
+    /**
+     * Cost of the busiest region of a partition under a prepared cost map.
+     */
+    public long maxRegionCost(RegionPartition partition, CostMap costs) {
+        long max = 0;
+        for (int r = 0; r < partition.getRegionCount(); r++) {
+            RegionPartition.Region region = partition.getRegion(r);
+            int tx0 = region.getX() / tileSize;
+            int ty0 = region.getY() / tileSize;
+            int tx1 = (region.getX() + region.getWidth() + tileSize - 1) / tileSize;
+            int ty1 = (region.getY() + region.getHeight() + tileSize - 1) / tileSize;
+            max = Math.max(max, costs.cost(tx0, ty0, tx1, ty1));
+        }
+        return max;
+    }
+
+    private List<Integer> saveCuts(Node node, List<Integer> cuts) {
+        if (!node.isLeaf()) {
+            cuts.add(node.cut);
+            saveCuts(node.first, cuts);
+            saveCuts(node.second, cuts);
+        }
+        return cuts;
+    }
+
+    private int restoreCuts(Node node, List<Integer> cuts, int index) {
+        if (node.isLeaf()) {
+            return index;
+        }
+        node.cut = cuts.get(index++);
+        index = restoreCuts(node.first, cuts, index);
+        return restoreCuts(node.second, cuts, index);
+    }
+
+    private RegionPartition toPartition() {
+        List<RegionPartition.Region> regions = new ArrayList<>();
+        collectRegions(root, 0, 0, tilesX, tilesY, regions);
+        return new RegionPartition(gridWidth, gridHeight, regions);
+    }
+
+    private void collectRegions(Node node, int tx0, int ty0, int tx1, int ty1, List<RegionPartition.Region> regions) {
+        if (node.isLeaf()) {
+            int x0 = cell(tx0, gridWidth);
+            int y0 = cell(ty0, gridHeight);
+            regions.add(new RegionPartition.Region(x0, y0, cell(tx1, gridWidth) - x0, cell(ty1, gridHeight) - y0));
+            return;
+        }
+        if (node.axis == HORIZONTAL) {
+            collectRegions(node.first, tx0, ty0, node.cut, ty1, regions);
+            collectRegions(node.second, node.cut, ty0, tx1, ty1, regions);
+        } else {
+            collectRegions(node.first, tx0, ty0, tx1, node.cut, regions);
+            collectRegions(node.second, tx0, node.cut, tx1, ty1, regions);
+        }
+    }
+
+    public RegionPartition getPartition() {
+        return partition;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Number of rebalances that changed the partition.
+     */
+    public int getRebalances() {
+        return rebalances;
+    }
+}
@@ -1,75 +1,125 @@
 package carSimulaiton;
 
-import repast.simphony.engine.schedule.ScheduledMethod;
 import repast.simphony.space.grid.Grid;
 import repast.simphony.space.grid.GridPoint;
-import repast.simphony.random.RandomHelper;
-import repast.simphony.context.Context;
-import repast.simphony.util.ContextUtils;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * Enhanced Car class with improved navigation and deadlock prevention.
+ *
+ * A truck's type, capacity, speed and costs are those of its VehicleClass,
+ * shared by every truck of the class; its own state is kept to primitives,
+ * with -1 for "no bin" and "no cell", and its status text is built on request.
  */
 public class Car {
     private Grid<Object> grid;
+    private int gridWidth;
+    private int gridHeight;
     private Direction currentDirection;
     private int turnsWithoutMove = 0;
-    private static final int MAX_TURNS_WITHOUT_MOVE = 3;
+    static final int MAX_TURNS_WITHOUT_MOVE = 3;
     private static final int TELEPORT_THRESHOLD = 10; // After this many failed yields, teleport the car
     private int yieldsWithoutProgress = 0;
     
     // Garbage collection related attributes
     private int id;
-    private String type = "Standard";
-    private double garbageCapacity = 100.0;
+    private VehicleClass vehicleClass = VehicleClass.STANDARD; // Type, capacity, speed, collection time and cost
     private double currentLoad = 0.0;
     
     // Collection status
     private boolean isCollectingFromBin = false;
     private int collectionCounter = 0;
-    private static final int COLLECTION_DURATION = 5;
     
     // Performance metrics
     private int collectionsCompleted = 0;
     private double totalDistance = 0.0;
     
-    // Target tracking
-    private Integer targetBinId = null;
+    // Target tracking; the previous position is a cell id
+    private static final int NO_BIN = -1;
+    private static final int NO_CELL = -1;
+    private int targetBinId = NO_BIN;
     private GridPoint targetDestination = null;
-    private GridPoint previousPosition = null;
+    private int previousCell = NO_CELL;
     
     // Target cooldown system
-    private Map<Integer, Long> lastEmptyTime = new HashMap<>();
-    private static final long EMPTY_COOLDOWN = 5000; // 5 seconds cooldown
+    private static final long EMPTY_COOLDOWN = 50; // Cooldown in ticks
     
-    // Known garbage bins
-    private Map<Integer, BinInfo> knownBins = new HashMap<>();
+    // Bin sightings shared by the fleet (the kernel's), and the bins this truck knows of
+    private BinKnowledgeTable binKnowledge = null;
+    private final BinKnowledgeTable.View knownBins = new BinKnowledgeTable.View();
     
-    // Status tracking
-    private String status = "idle";
-    private long lastStatusChangeTime = System.currentTimeMillis();
-    private static final long STUCK_THRESHOLD = 10000; // 10 seconds
+    // Full bins the coordinator escalates to trucks this close, unseen or not
+    private static final int ESCALATION_RADIUS = 20;
+    private final int[] escalatedBins = new int[3];
     
-    // Garbage collection depot - center of the map
-    private GridPoint depotLocation = null;
+    // Status tracking; the status is the activity and the bin or depot it concerns (-1 if none)
+    private int statusSubject = -1;
+    private long lastStatusChangeTime = 0; // Tick of the last status change
+    private Status activity = Status.IDLE;
+    private long activitySince = 0; // Tick the current activity started
+    private static final long STUCK_THRESHOLD = 100; // Ticks
+    
+    // Depot chosen for the current unload trip (kernel depot id), -1 if none
+    private int targetDepotId = -1;
     private boolean returningToDepot = false;
     
-    // Bin assignment system (static to be shared among all vehicles)
-    private static Map<Integer, Integer> binAssignments = new ConcurrentHashMap<>(); // binId -> carId
+    // Task coordinator shared by all vehicles of the run (the kernel's)
+    private TaskCoordinator taskCoordinator = null;
     
-    // Route memory to avoid getting stuck in loops
-    private List<GridPoint> recentPositions = new ArrayList<>();
+    // Route memory to avoid getting stuck in loops (packed cell ids)
     private static final int MEMORY_LENGTH = 10; // Remember last 10 positions
+    private CellHistory recentPositions = new CellHistory(MEMORY_LENGTH);
     
     // Anti-deadlock system
-    private List<GridPoint> blockedPositions = new ArrayList<>();
     private static final int MAX_BLOCKED_POSITIONS = 20;
+    private CellHistory blockedPositions = new CellHistory(MAX_BLOCKED_POSITIONS);
+    
+    // Shared wait-for graph used to break gridlock cycles (set by the builder)
+    private DeadlockResolver deadlockResolver = null;
+    
+    // Continuous-time transit along a straight road segment: tick of arrival
+    // (-1 if never in transit) and the cells still to drive before it
+    private long transitArrival = -1;
+    private int transitCells = 0;
+    private static final int MIN_TRANSIT_CELLS = 2;
+    
+    // First and latest tick of the central dispatcher's current run of finding the car free
+    private long freeSince = -1;
+    private long lastFree = -1;
+    
+    // Cells around the truck searched for bins
+    private static final int SCAN_RADIUS = 5;
+    
+    // Kernel driving this run; provides the tick count and agent lookups
+    private SimulationKernel kernel = null;
+    private SimulationRandom random = null;
+
+    /**
+     * Coarse activity of the car, used for fleet metrics. The status string adds
+     * the bin or depot it concerns.
+     */
+    public enum Status {
+        IDLE("idle"),
+        SEEKING_TARGET("seeking target"),
+        HEADING_TO_BIN("heading to bin"),
+        COLLECTING("collecting from bin"),
+        RETURNING_TO_DEPOT("returning to depot"),
+        UNLOADED("unloaded at depot"),
+        UNLOADING("unloading at depot");    // Queued or unloading at a depot
+        
+        private final String description;
+        
+        Status(String description) {
+            this.description = description;
+        }
+        
+        public String getDescription() {
+            return description;
+        }
+    }
 
     public enum Direction {
         NORTH(0, -1),
@@ -87,6 +137,9 @@ public class Car {
 
         public int getDx() { return dx; }
         public int getDy() { return dy; }
+        
+        /** Bit for this direction in a 4-bit direction mask. */
+        public int getMask() { return 1 << ordinal(); }
 
         public Direction getLeft() {
             switch (this) {
@@ -119,48 +172,13 @@ public class Car {
         }
     }
     
-    /**
-     * Class to store information about a known garbage bin.
-     */
-    private class BinInfo {
-        int id;
-        int x;
-        int y;
-        double fillLevel;
-        double capacity;
-        String areaType;
-        boolean isUrgent;
-        long lastUpdated;
-        
-        BinInfo(int id, int x, int y, double fillLevel, double capacity, String areaType, boolean isUrgent) {
-            this.id = id;
-            this.x = x;
-            this.y = y;
-            this.fillLevel = fillLevel;
-            this.capacity = capacity;
-            this.areaType = areaType;
-            this.isUrgent = isUrgent;
-            this.lastUpdated = System.currentTimeMillis();
-        }
-        
-        double getFillPercentage() {
-            return (fillLevel / capacity) * 100;
-        }
-        
-        GridPoint getLocation() {
-            return new GridPoint(x, y);
-        }
-        
-        boolean isStale() {
-            return System.currentTimeMillis() - lastUpdated > 30000; // 30 seconds
-        }
-        
-        @Override
-        public String toString() {
-            return "Bin " + id + " (" + areaType + "): " + String.format("%.1f", getFillPercentage()) + "% full";
-        }
-    }
-
+    // Cached to avoid the array copy made by values()
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final VehicleClass[] VEHICLE_CLASSES = VehicleClass.values();
+    
+    // Per-step console tracing; builds strings on every step, so off by default
+    private static final boolean TRACE_MOVEMENT = false;
+    
     public String toString() {
         // The direction will determine which image to use
         if (currentDirection != null) {
@@ -187,10 +205,9 @@ public class Car {
         // Direction will be set when placed on a road
         this.currentDirection = null;
         
-        // Set depot location to center of grid
-        int width = grid.getDimensions().getWidth();
-        int height = grid.getDimensions().getHeight();
-        this.depotLocation = new GridPoint(width/2, height/2);
+        // Cache grid dimensions for wrap arithmetic and cell ids
+        this.gridWidth = grid.getDimensions().getWidth();
+        this.gridHeight = grid.getDimensions().getHeight();
     }
     
     /**
@@ -201,10 +218,12 @@ public class Car {
         this.id = id;
     }
     
-    public Car(Grid<Object> grid, int id, String type, double garbageCapacity) {
+    /**
+     * Truck of a vehicle class, with the class's label and capacity.
+     */
+    public Car(Grid<Object> grid, int id, VehicleClass vehicleClass) {
         this(grid, id);
-        this.type = type;
-        this.garbageCapacity = garbageCapacity;
+        this.vehicleClass = vehicleClass;
     }
     
     public void setInitialDirection(Direction direction) {
@@ -214,35 +233,67 @@ public class Car {
     public Direction getCurrentDirection() {
         return currentDirection;
     }
+    
+    public void setDeadlockResolver(DeadlockResolver deadlockResolver) {
+        this.deadlockResolver = deadlockResolver;
+    }
+    
+    /**
+     * Attach the car to the kernel that steps it. A car is stepped only once it
+     * has a kernel; ghost cars mirrored from other partitions never get one.
+     */
+    public void setKernel(SimulationKernel kernel) {
+        this.kernel = kernel;
+        this.random = kernel.getRandom();
+        this.taskCoordinator = kernel.getTaskCoordinator();
+        this.binKnowledge = kernel.getBinKnowledge();
+    }
+    
+    /**
+     * Current simulation tick; all cooldowns and ages are measured in ticks so
+     * the model behaves the same however fast it is driven.
+     */
+    private long currentTick() {
+        return kernel.getTick();
+    }
 
-    @ScheduledMethod(start = 1, interval = 1)
+    /**
+     * Advance the car by one tick. Called by the SimulationKernel.
+     */
     public void step() {
         GridPoint currentPos = grid.getLocation(this);
         
         // Track position history for loop detection
         trackPosition(currentPos);
         
-        // Track distance traveled
-        if (previousPosition != null) {
-            totalDistance += getDistance(previousPosition, currentPos);
+        // Track distance traveled and what it cost
+        if (previousCell != NO_CELL) {
+            double distance = getDistance(previousCell % gridWidth, previousCell / gridWidth,
+                                          currentPos.getX(), currentPos.getY());
+            totalDistance += distance;
+            if (distance > 0) {
+                kernel.getMetrics().add(SimulationMetrics.Counter.OPERATING_COST, distance * vehicleClass.getCostPerCell());
+            }
         }
-        previousPosition = currentPos;
+        previousCell = cellId(currentPos.getX(), currentPos.getY());
         
         // Check if collecting from a bin
         if (isCollectingFromBin) {
             collectionCounter++;
-            if (collectionCounter >= COLLECTION_DURATION) {
+            if (collectionCounter >= vehicleClass.getCollectionTicks()) {
                 finishCollection();
             } else {
                 // Skip rest of step while collecting
-                System.out.println("Car " + id + " collecting from bin " + targetBinId + 
-                                 ": " + collectionCounter + "/" + COLLECTION_DURATION);
+                if (TRACE_MOVEMENT) {
+                    System.out.println("Car " + id + " collecting from bin " + targetBinId + 
+                                     ": " + collectionCounter + "/" + vehicleClass.getCollectionTicks());
+                }
                 return;
             }
         }
         
         // Check if need to return to depot (>90% full)
-        if (currentLoad >= garbageCapacity * 0.9 && !returningToDepot) {
+        if (currentLoad >= vehicleClass.getCapacity() * 0.9 && !returningToDepot) {
             returnToDepot();
             return;
         }
@@ -255,21 +306,31 @@ public class Car {
         }
         
         // If we have a target bin, check if we've reached it
-        if (targetBinId != null && !returningToDepot) {
+        if (targetBinId != NO_BIN && !returningToDepot) {
             if (checkBinReached(currentPos)) {
                 return;
             }
         }
         
-        // Clean up stale data periodically
-        cleanStaleData();
-        
-        // Legacy car behavior with deadlock prevention
-        handleCarMovementWithDeadlockPrevention(currentPos);
+        // Legacy car behavior with deadlock prevention, unless we were picked to break a cycle
+        long moveStart = PhaseTimers.start();
+        if (deadlockResolver != null && deadlockResolver.claimYield(this)) {
+            enhancedYieldAtRoadblock();
+        } else {
+            handleCarMovementWithDeadlockPrevention(currentPos);
+        }
+        if (vehicleClass.getSpeed() > 1) {
+            GridPoint moved = grid.getLocation(this);
+            if (!moved.equals(currentPos)) {
+                driveOn(moved.getX(), moved.getY(), vehicleClass.getSpeed() - 1);
+            }
+        }
+        PhaseTimers.stop(PhaseTimers.Phase.MOVE, moveStart);
         
         // If the car has moved after handling car movement, update currentPos
         GridPoint newPos = grid.getLocation(this);
-        if (!newPos.equals(currentPos)) {
+        boolean moved = !newPos.equals(currentPos);
+        if (moved) {
             currentPos = newPos;
             // Reset counter because car moved successfully
             turnsWithoutMove = 0;
@@ -277,50 +338,195 @@ public class Car {
         }
         
         // Try to find a garbage bin to target after normal movement if we don't have one
-        if (targetBinId == null && !returningToDepot && !isCollectingFromBin) {
+        if (targetBinId == NO_BIN && !returningToDepot && !isCollectingFromBin) {
+            long senseStart = PhaseTimers.start();
             scanForGarbageBins(currentPos);
+            PhaseTimers.stop(PhaseTimers.Phase.SENSE, senseStart);
+            
+            long assignStart = PhaseTimers.start();
             findNewTarget();
+            PhaseTimers.stop(PhaseTimers.Phase.ASSIGN, assignStart);
+        }
+        
+        // In continuous time, cover the rest of a straight run as one event
+        if (moved && !isCollectingFromBin && kernel.isContinuousTime()) {
+            startTransit();
         }
     }
     
+    //----------------------------------------------------------------
+    // Continuous-time transit
+    //----------------------------------------------------------------
+    
+    /**
+     * Leave the grid's tick-by-tick stepping until the next decision point on a
+     * straight run: the cell before an intersection, the cell next to the
+     * target, or where the road to the target turns. The run's length is found
+     * from the static road network and the arrival tick is scheduled with the
+     * kernel, which only advances this truck along the run until then. Runs shorter than
+     * MIN_TRANSIT_CELLS are driven step by step as usual.
+     */
+    private void startTransit() {
+        GridPoint pos = grid.getLocation(this);
+        int x = pos.getX();
+        int y = pos.getY();
+        Direction direction = currentDirection;
+        RoadNetwork network = kernel.getRoadNetwork();
+        if (direction == null || network.isIntersection(x, y) || isDecisionPoint(x, y, direction)) {
+            return;
+        }
+        
+        int cells = 0;
+        int limit = Math.max(gridWidth, gridHeight);
+        while (cells < limit) {
+            int nextX = wrapX(x + direction.getDx());
+            int nextY = wrapY(y + direction.getDy());
+            if (!network.canEnter(nextX, nextY, direction) || network.isIntersection(nextX, nextY)) {
+                break;
+            }
+            x = nextX;
+            y = nextY;
+            cells++;
+            if (isDecisionPoint(x, y, direction)) {
+                break;
+            }
+        }
+        if (cells < MIN_TRANSIT_CELLS) {
+            return;
+        }
+        
+        // A truck looking for work senses the whole run now, not cell by cell;
+        // if that turns up a target it steps toward it instead
+        if (targetBinId == NO_BIN && !returningToDepot) {
+            int endX = pos.getX() + direction.getDx() * cells;
+            int endY = pos.getY() + direction.getDy() * cells;
+            scanForGarbageBins(Math.min(pos.getX(), endX) - SCAN_RADIUS, Math.min(pos.getY(), endY) - SCAN_RADIUS,
+                               Math.max(pos.getX(), endX) + SCAN_RADIUS, Math.max(pos.getY(), endY) + SCAN_RADIUS);
+            findNewTarget();
+            if (targetBinId != NO_BIN) {
+                return;
+            }
+        }
+        
+        int speed = vehicleClass.getSpeed();
+        transitCells = cells;
+        transitArrival = currentTick() + (cells + speed - 1) / speed;
+        kernel.scheduleArrival(this);
+    }
+    
+    /**
+     * Drive one tick of a transit, up to the truck's speed, so the cell it holds
+     * moves along the run as it would stepping and the cars behind can follow.
+     * No decisions are made on the way. A truck held back by anything in the
+     * way ends its transit there, to be stepped in the same tick, so it waits,
+     * backs up and joins wait-for cycles like any other.
+     * 
+     * @return false if the transit ended short and the truck is to be stepped
+     */
+    boolean advanceTransit() {
+        GridPoint pos = grid.getLocation(this);
+        int endX = pos.getX();
+        int endY = pos.getY();
+        int cells = Math.min(transitCells, vehicleClass.getSpeed());
+        int driven = 0;
+        while (driven < cells && isValidMove(endX, endY, currentDirection)) {
+            endX = wrapX(endX + currentDirection.getDx());
+            endY = wrapY(endY + currentDirection.getDy());
+            driven++;
+        }
+        if (driven > 0) {
+            grid.moveTo(this, endX, endY);
+            transitCells -= driven;
+        }
+        if (driven < cells) {
+            kernel.cancelArrival(this);
+            transitCells = 0;
+            transitArrival = currentTick() - 1;
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Complete a transit: drive the cells still left in one move. The cells are
+     * checked in one pass against the traffic now on them, so the truck stops
+     * short behind anything in the way and is stepped from there in the same tick.
+     */
+    void arriveFromTransit() {
+        GridPoint pos = grid.getLocation(this);
+        int endX = pos.getX();
+        int endY = pos.getY();
+        int driven = 0;
+        while (driven < transitCells && isValidMove(endX, endY, currentDirection)) {
+            endX = wrapX(endX + currentDirection.getDx());
+            endY = wrapY(endY + currentDirection.getDy());
+            driven++;
+        }
+        if (driven > 0) {
+            grid.moveTo(this, endX, endY);
+        }
+        if (driven < transitCells) {
+            transitArrival = currentTick() - 1;
+        }
+        transitCells = 0;
+    }
+    
+    /**
+     * Check whether the truck is between departure and arrival of a transit,
+     * including its arrival tick; the kernel advances it instead of stepping it then.
+     */
+    boolean isInTransit() {
+        return transitArrival >= currentTick();
+    }
+    
+    /**
+     * Check whether a transit has been scheduled but not yet completed.
+     */
+    boolean hasPendingArrival() {
+        return transitCells > 0;
+    }
+    
+    long getTransitArrival() {
+        return transitArrival;
+    }
+    
     /**
      * Track position history to detect and avoid loops
      */
     private void trackPosition(GridPoint currentPos) {
-        recentPositions.add(currentPos);
-        if (recentPositions.size() > MEMORY_LENGTH) {
-            recentPositions.remove(0); // Remove oldest position
-        }
+        int cell = cellId(currentPos.getX(), currentPos.getY());
+        
+        // Oldest position is overwritten once the history is full
+        recentPositions.add(cell);
         
         // Also track blocked positions
         if (turnsWithoutMove >= MAX_TURNS_WITHOUT_MOVE) {
-            blockedPositions.add(currentPos);
-            if (blockedPositions.size() > MAX_BLOCKED_POSITIONS) {
-                blockedPositions.remove(0); // Remove oldest blocked position
-            }
+            blockedPositions.add(cell);
         }
     }
     
     /**
      * Check if position is in recent history (loop detection)
      */
-    private boolean isPositionInRecentHistory(GridPoint pos) {
-        int occurrences = 0;
-        for (GridPoint p : recentPositions) {
-            if (p.equals(pos)) {
-                occurrences++;
-                if (occurrences >= 2) { // Position appears multiple times
-                    return true;
-                }
-            }
-        }
-        return false;
+    private boolean isPositionInRecentHistory(int cell) {
+        // Position appears multiple times
+        return recentPositions.occursAtLeast(cell, 2);
+    }
+    
+    /**
+     * Pack a grid position into a single int cell id.
+     */
+    private int cellId(int x, int y) {
+        return y * gridWidth + x;
     }
     
     /**
      * Handle the car movement with enhanced deadlock prevention
      */
     private void handleCarMovementWithDeadlockPrevention(GridPoint currentPos) {
+        int x = currentPos.getX();
+        int y = currentPos.getY();
+        
         // If this is a new car without direction, set direction based on road
         if (currentDirection == null) {
             assignDirectionBasedOnRoad(currentPos);
@@ -332,53 +538,51 @@ public class Car {
         
         // Don't follow normal traffic rules if we have a target destination
         if (targetDestination != null) {
-            moveTowardTargetWithAvoidance(currentPos);
+            moveTowardTargetWithAvoidance(x, y);
             return;
         }
         
         // Check if we're at an intersection
-        boolean atIntersection = isAtIntersection(currentPos);
+        boolean atIntersection = isAtIntersection(x, y);
         
         // Get all possible moves from this position
-        List<Direction> possibleMoves = getAllowedMoves(currentPos);
+        int possibleMoves = getAllowedMoves(x, y, atIntersection);
         
         // Filter out recently blocked positions
-        possibleMoves = filterBlockedPositions(currentPos, possibleMoves);
+        possibleMoves = filterBlockedPositions(x, y, possibleMoves);
         
         // Debug output
-        if (atIntersection) {
-            System.out.println("Car " + id + " at intersection (" + currentPos.getX() + ", " + currentPos.getY() + 
-                              "), direction: " + currentDirection + ", possible moves: " + possibleMoves);
+        if (atIntersection && TRACE_MOVEMENT) {
+            System.out.println("Car " + id + " at intersection (" + x + ", " + y + 
+                              "), direction: " + currentDirection + ", possible moves: " + describeMoves(possibleMoves));
         }
 
         // Make a move if possible
-        if (!possibleMoves.isEmpty()) {
+        if (possibleMoves != 0) {
             Direction moveDirection;
             
             if (atIntersection) {
                 // At intersections, make a turning decision
-                moveDirection = decideTurnAtIntersection(possibleMoves);
+                moveDirection = decideTurnAtIntersection(x, y, possibleMoves);
             } else {
-                // On regular roads, prioritize current direction
-                if (possibleMoves.contains(currentDirection)) {
-                    moveDirection = currentDirection;
-                } else {
-                    // If current direction is blocked, use any valid move
-                    moveDirection = possibleMoves.get(0);
-                }
+                // On regular roads, prioritize current direction, otherwise the
+                // first valid move in the order current, left, right, back
+                moveDirection = firstInTurnOrder(possibleMoves);
             }
             
             // Move the car
-            move(currentPos, moveDirection);
+            move(x, y, moveDirection);
             turnsWithoutMove = 0; // Reset the counter
         } else {
             // Car is blocked in all directions
             turnsWithoutMove++;
-            System.out.println("Car " + id + " at (" + currentPos.getX() + ", " + currentPos.getY() + 
-                             ") is blocked. Turns without move: " + turnsWithoutMove);
+            if (TRACE_MOVEMENT) {
+                System.out.println("Car " + id + " at (" + x + ", " + y + 
+                                 ") is blocked. Turns without move: " + turnsWithoutMove);
+            }
             
             // Wait for a fixed number of turns, then just yield the space
-            if (turnsWithoutMove >= MAX_TURNS_WITHOUT_MOVE) {
+            if (!waitOnBlockingCar(x, y, currentDirection) && turnsWithoutMove >= MAX_TURNS_WITHOUT_MOVE) {
                 enhancedYieldAtRoadblock();
             }
         }
@@ -387,38 +591,29 @@ public class Car {
     /**
      * Filter out directions that would lead to recently blocked positions
      */
-    private List<Direction> filterBlockedPositions(GridPoint currentPos, List<Direction> possibleMoves) {
-        List<Direction> filteredMoves = new ArrayList<>();
+    private int filterBlockedPositions(int x, int y, int possibleMoves) {
+        int filteredMoves = 0;
         
-        for (Direction dir : possibleMoves) {
-            // Calculate next position for this direction
-            int newX = currentPos.getX() + dir.getDx();
-            int newY = currentPos.getY() + dir.getDy();
-            
-            // Handle grid wrapping
-            newX = (newX + grid.getDimensions().getWidth()) % grid.getDimensions().getWidth();
-            newY = (newY + grid.getDimensions().getHeight()) % grid.getDimensions().getHeight();
+        for (Direction dir : DIRECTIONS) {
+            if ((possibleMoves & dir.getMask()) == 0) {
+                continue;
+            }
             
-            GridPoint potentialNext = new GridPoint(newX, newY);
+            // Calculate next position for this direction
+            int potentialNext = cellId(wrapX(x + dir.getDx()), wrapY(y + dir.getDy()));
             
             // Skip if this position has been blocked recently
-            boolean recentlyBlocked = false;
-            for (GridPoint blocked : blockedPositions) {
-                if (blocked.equals(potentialNext)) {
-                    recentlyBlocked = true;
-                    break;
-                }
-            }
+            boolean recentlyBlocked = blockedPositions.contains(potentialNext);
             
             // Skip if this would create a loop in recent movement
             if (!recentlyBlocked && !isPositionInRecentHistory(potentialNext)) {
-                filteredMoves.add(dir);
+                filteredMoves |= dir.getMask();
             }
         }
         
-        // If all directions are filtered out, reset and use original list
+        // If all directions are filtered out, reset and use original set
         // (better to move in a loop than not move at all)
-        if (filteredMoves.isEmpty() && !possibleMoves.isEmpty()) {
+        if (filteredMoves == 0) {
             return possibleMoves;
         }
         
@@ -428,102 +623,182 @@ public class Car {
     /**
      * Move towards the target destination with improved pathfinding
      */
-    private void moveTowardTargetWithAvoidance(GridPoint currentPos) {
+    private void moveTowardTargetWithAvoidance(int x, int y) {
         if (targetDestination == null) return;
         
-        // Get direction to target
-        Direction targetDirection = getDirectionToTarget(currentPos, targetDestination);
-        
-        // Prepare list of possible directions in order of preference
-        List<Direction> preferredDirections = new ArrayList<>();
-        
-        // First choice: direct route to target
-        preferredDirections.add(targetDirection);
-        
-        // Alternative routes (perpendicular to target direction)
-        preferredDirections.add(targetDirection.getLeft());
-        preferredDirections.add(targetDirection.getRight());
+        // Get direction to target: follow the road distance field to the depot
+        // or bin, otherwise head straight for the target
+        Direction targetDirection = getRoadDirection(x, y);
+        if (targetDirection == null) {
+            targetDirection = getDirectionToTarget(x, y, targetDestination);
+        }
         
-        // Last resort: reverse direction (away from target)
-        // preferredDirections.add(targetDirection.getOpposite());
+        // Possible directions in order of preference: direct route to target,
+        // then the alternative routes perpendicular to it. Reversing (away from
+        // the target) is not considered here.
+        int preferredDirections = targetDirection.getMask()
+                                | targetDirection.getLeft().getMask()
+                                | targetDirection.getRight().getMask();
         
         // Filter out recently blocked positions
-        preferredDirections = filterBlockedPositions(currentPos, preferredDirections);
+        preferredDirections = filterBlockedPositions(x, y, preferredDirections);
         
         // Try each direction in order of preference
-        for (Direction dir : preferredDirections) {
-            if (isValidMove(currentPos, dir)) {
-                move(currentPos, dir);
-                return;
-            }
+        if (tryPreferredMove(x, y, preferredDirections, targetDirection)
+                || tryPreferredMove(x, y, preferredDirections, targetDirection.getLeft())
+                || tryPreferredMove(x, y, preferredDirections, targetDirection.getRight())) {
+            return;
         }
         
         // If no valid moves, try any possible move
-        List<Direction> allDirections = getAllowedMoves(currentPos);
-        if (!allDirections.isEmpty()) {
-            Direction randomDir = allDirections.get(RandomHelper.nextIntFromTo(0, allDirections.size() - 1));
-            move(currentPos, randomDir);
+        int allDirections = getAllowedMoves(x, y, isAtIntersection(x, y));
+        if (allDirections != 0) {
+            Direction randomDir = pickRandom(allDirections);
+            move(x, y, randomDir);
         } else {
             // If completely stuck, increment counter
             turnsWithoutMove++;
-            if (turnsWithoutMove >= MAX_TURNS_WITHOUT_MOVE) {
+            if (!waitOnBlockingCar(x, y, targetDirection) && turnsWithoutMove >= MAX_TURNS_WITHOUT_MOVE) {
                 enhancedYieldAtRoadblock();
             }
         }
     }
     
-    private void assignDirectionBasedOnRoad(GridPoint pos) {
-        for (Object obj : grid.getObjectsAt(pos.getX(), pos.getY())) {
-            if (obj instanceof Road) {
-                Road road = (Road) obj;
-                
-                // For bidirectional roads, choose a random direction
-                if (road.getDirection() == Road.Direction.BIDIRECTIONAL) {
-                    if (road.getType() == Road.RoadType.HORIZONTAL) {
-                        // For horizontal roads, randomly choose EAST or WEST
-                        currentDirection = (RandomHelper.nextDouble() < 0.5) ? 
-                                         Direction.EAST : Direction.WEST;
-                    } else {
-                        // For vertical roads, randomly choose NORTH or SOUTH
-                        currentDirection = (RandomHelper.nextDouble() < 0.5) ? 
-                                         Direction.NORTH : Direction.SOUTH;
-                    }
-                    return;
-                }
-                
-                // For directional roads, follow the road direction
-                switch (road.getDirection()) {
-                    case EASTBOUND:
-                        currentDirection = Direction.EAST;
-                        return;
-                    case WESTBOUND:
-                        currentDirection = Direction.WEST;
-                        return;
-                    case NORTHBOUND:
-                        currentDirection = Direction.NORTH;
-                        return;
-                    case SOUTHBOUND:
-                        currentDirection = Direction.SOUTH;
-                        return;
-                    case ALL:
-                        // For intersections, choose randomly
-                        Direction[] directions = Direction.values();
-                        currentDirection = directions[RandomHelper.nextIntFromTo(0, directions.length - 1)];
-                        return;
+    /**
+     * Carry on for up to the given number of extra cells this tick, for trucks
+     * faster than one cell per tick. The cells ahead are checked in one pass and
+     * the truck makes a single move to the last one it can reach. It stops early
+     * on entering an intersection (where it must decide again), next to its
+     * target, where the road to the target turns, and before anything in the way.
+     */
+    private void driveOn(int x, int y, int cells) {
+        Direction direction = currentDirection;
+        int endX = x;
+        int endY = y;
+        if (!isAtIntersection(x, y) && !isDecisionPoint(x, y, direction)) {
+            for (int i = 0; i < cells && isValidMove(endX, endY, direction); i++) {
+                endX = wrapX(endX + direction.getDx());
+                endY = wrapY(endY + direction.getDy());
+                if (isAtIntersection(endX, endY) || isDecisionPoint(endX, endY, direction)) {
+                    break;
                 }
             }
         }
+        if (endX != x || endY != y) {
+            grid.moveTo(this, endX, endY);
+        }
+    }
+    
+    /**
+     * Check whether a truck driving in a direction must stop at a cell because
+     * it has reached its target or the road to the target turns there.
+     */
+    private boolean isDecisionPoint(int x, int y, Direction direction) {
+        if (targetDestination == null) {
+            return false;
+        }
+        if (returningToDepot ? kernel.getDepotField().distance(x, y) == 0 :
+            targetBinId != NO_BIN && getRoadDistance(x, y, targetDestination.getX(), targetDestination.getY()) == 0) {
+            return true;
+        }
+        Direction next = getRoadDirection(x, y);
+        return next != null && next != direction;
+    }
+    
+    /**
+     * Move in the given direction if it is among the preferred ones and currently valid.
+     */
+    private boolean tryPreferredMove(int x, int y, int preferredDirections, Direction dir) {
+        if ((preferredDirections & dir.getMask()) != 0 && isValidMove(x, y, dir)) {
+            move(x, y, dir);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * If another car occupies the cell in the given direction, register the wait
+     * with the deadlock resolver instead of yielding on our own.
+     * 
+     * @return true if the wait was handed to the resolver
+     */
+    private boolean waitOnBlockingCar(int x, int y, Direction direction) {
+        if (deadlockResolver == null) {
+            return false;
+        }
+        
+        Car blocker = findCarAt(x, y, direction);
+        if (blocker == null) {
+            return false;
+        }
+        
+        deadlockResolver.recordWait(this, blocker);
+        return true;
+    }
+    
+    /**
+     * Find the car occupying the neighbouring cell in the given direction, if any.
+     */
+    private Car findCarAt(int x, int y, Direction direction) {
+        for (Object obj : grid.getObjectsAt(wrapX(x + direction.getDx()), wrapY(y + direction.getDy()))) {
+            if (obj instanceof Car && obj != this) {
+                return (Car) obj;
+            }
+        }
+        return null;
+    }
+    
+    private void assignDirectionBasedOnRoad(GridPoint pos) {
+        CellMap cells = kernel.getCellMap();
+        Road.RoadType roadType = cells.getRoadType(pos.getX(), pos.getY());
+        if (roadType == null) {
+            return;
+        }
+        Road.Direction roadDirection = cells.getRoadDirection(pos.getX(), pos.getY());
+        
+        // For bidirectional roads, choose a random direction
+        if (roadDirection == Road.Direction.BIDIRECTIONAL) {
+            if (roadType == Road.RoadType.HORIZONTAL) {
+                // For horizontal roads, randomly choose EAST or WEST
+                currentDirection = (random.nextDouble() < 0.5) ? 
+                                 Direction.EAST : Direction.WEST;
+            } else {
+                // For vertical roads, randomly choose NORTH or SOUTH
+                currentDirection = (random.nextDouble() < 0.5) ? 
+                                 Direction.NORTH : Direction.SOUTH;
+            }
+            return;
+        }
+        
+        // For directional roads, follow the road direction
+        switch (roadDirection) {
+            case EASTBOUND:
+                currentDirection = Direction.EAST;
+                return;
+            case WESTBOUND:
+                currentDirection = Direction.WEST;
+                return;
+            case NORTHBOUND:
+                currentDirection = Direction.NORTH;
+                return;
+            case SOUTHBOUND:
+                currentDirection = Direction.SOUTH;
+                return;
+            case ALL:
+                // For intersections, choose randomly
+                currentDirection = DIRECTIONS[random.nextIntFromTo(0, DIRECTIONS.length - 1)];
+                return;
+        }
     }
 
-    private List<Direction> getAllowedMoves(GridPoint currentPos) {
-        List<Direction> allowedMoves = new ArrayList<>();
-        boolean atIntersection = isAtIntersection(currentPos);
+    int getAllowedMoves(int x, int y, boolean atIntersection) {
+        int allowedMoves = 0;
         
         // Try all directions at intersections
         if (atIntersection) {
-            for (Direction dir : Direction.values()) {
-                if (isValidMove(currentPos, dir)) {
-                    allowedMoves.add(dir);
+            for (Direction dir : DIRECTIONS) {
+                if (isValidMove(x, y, dir)) {
+                    allowedMoves |= dir.getMask();
                 }
             }
             return allowedMoves;
@@ -532,77 +807,117 @@ public class Car {
         // On normal roads, prioritize certain directions
         
         // First try current direction
-        if (isValidMove(currentPos, currentDirection)) {
-            allowedMoves.add(currentDirection);
+        if (isValidMove(x, y, currentDirection)) {
+            allowedMoves |= currentDirection.getMask();
         }
         
         // Then try left and right turns
-        if (isValidMove(currentPos, currentDirection.getLeft())) {
-            allowedMoves.add(currentDirection.getLeft());
+        if (isValidMove(x, y, currentDirection.getLeft())) {
+            allowedMoves |= currentDirection.getLeft().getMask();
         }
         
-        if (isValidMove(currentPos, currentDirection.getRight())) {
-            allowedMoves.add(currentDirection.getRight());
+        if (isValidMove(x, y, currentDirection.getRight())) {
+            allowedMoves |= currentDirection.getRight().getMask();
         }
         
         // Only as a last resort, try going backwards
-        if (allowedMoves.isEmpty() && isValidMove(currentPos, currentDirection.getOpposite())) {
-            allowedMoves.add(currentDirection.getOpposite());
+        if (allowedMoves == 0 && isValidMove(x, y, currentDirection.getOpposite())) {
+            allowedMoves |= currentDirection.getOpposite().getMask();
         }
         
         return allowedMoves;
     }
 
-    private Direction decideTurnAtIntersection(List<Direction> possibleMoves) {
+    private Direction decideTurnAtIntersection(int x, int y, int possibleMoves) {
         // Safety check
-        if (possibleMoves.isEmpty()) {
+        if (possibleMoves == 0) {
             return currentDirection;
         }
         
         // If we have a destination, prioritize direction toward it
         if (targetDestination != null) {
-            GridPoint currentPos = grid.getLocation(this);
-            Direction targetDir = getDirectionToTarget(currentPos, targetDestination);
+            Direction targetDir = getDirectionToTarget(x, y, targetDestination);
             
-            if (possibleMoves.contains(targetDir)) {
+            if ((possibleMoves & targetDir.getMask()) != 0) {
                 return targetDir;
             }
         }
         
         // Prefer to continue in same direction if possible
-        if (possibleMoves.contains(currentDirection)) {
+        if ((possibleMoves & currentDirection.getMask()) != 0) {
             // 70% chance to go straight if possible
-            if (RandomHelper.nextDouble() < 0.7) {
+            if (random.nextDouble() < 0.7) {
                 return currentDirection;
             }
         }
         
         // Get turn options (left and right)
-        List<Direction> turnOptions = new ArrayList<>();
-        if (possibleMoves.contains(currentDirection.getLeft())) {
-            turnOptions.add(currentDirection.getLeft());
-        }
-        if (possibleMoves.contains(currentDirection.getRight())) {
-            turnOptions.add(currentDirection.getRight());
-        }
+        int turnOptions = possibleMoves & (currentDirection.getLeft().getMask() | currentDirection.getRight().getMask());
         
         // If we have turn options, randomly choose one
-        if (!turnOptions.isEmpty()) {
-            return turnOptions.get(RandomHelper.nextIntFromTo(0, turnOptions.size() - 1));
+        if (turnOptions != 0) {
+            return pickRandom(turnOptions);
         }
         
         // If we can't turn, pick any valid move
-        return possibleMoves.get(RandomHelper.nextIntFromTo(0, possibleMoves.size() - 1));
+        return pickRandom(possibleMoves);
     }
-
-    private boolean isAtIntersection(GridPoint point) {
-        for (Object obj : grid.getObjectsAt(point.getX(), point.getY())) {
-            if (obj instanceof Road) {
-                Road road = (Road) obj;
-                return road.getType() == Road.RoadType.INTERSECTION;
+    
+    /**
+     * Pick a uniformly random direction from a non-empty direction mask.
+     */
+    private Direction pickRandom(int moves) {
+        int choice = random.nextIntFromTo(0, Integer.bitCount(moves) - 1);
+        for (Direction dir : DIRECTIONS) {
+            if ((moves & dir.getMask()) != 0 && choice-- == 0) {
+                return dir;
             }
         }
-        return false;
+        return currentDirection;
+    }
+    
+    /**
+     * First direction in the mask, preferring straight on, then left, right and back.
+     */
+    private Direction firstInTurnOrder(int moves) {
+        if ((moves & currentDirection.getMask()) != 0) return currentDirection;
+        if ((moves & currentDirection.getLeft().getMask()) != 0) return currentDirection.getLeft();
+        if ((moves & currentDirection.getRight().getMask()) != 0) return currentDirection.getRight();
+        if ((moves & currentDirection.getOpposite().getMask()) != 0) return currentDirection.getOpposite();
+        return null;
+    }
+    
+    /**
+     * First direction in the mask other than the excluded one, in the same order
+     * getAllowedMoves considers them.
+     */
+    private Direction firstAllowedExcept(int moves, boolean atIntersection, Direction excluded) {
+        int candidates = (excluded == null) ? moves : moves & ~excluded.getMask();
+        if (candidates == 0) {
+            return null;
+        }
+        if (!atIntersection) {
+            return firstInTurnOrder(candidates);
+        }
+        return DIRECTIONS[Integer.numberOfTrailingZeros(candidates)];
+    }
+    
+    /**
+     * Render a direction mask for trace output.
+     */
+    private String describeMoves(int moves) {
+        StringBuilder sb = new StringBuilder("[");
+        for (Direction dir : DIRECTIONS) {
+            if ((moves & dir.getMask()) != 0) {
+                if (sb.length() > 1) sb.append(", ");
+                sb.append(dir);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    boolean isAtIntersection(int x, int y) {
+        return kernel.getCellMap().isIntersection(x, y);
     }
 
     /**
@@ -615,6 +930,7 @@ public class Car {
         
         // Increment yield counter for deadlock detection
         yieldsWithoutProgress++;
+        count(SimulationMetrics.Counter.YIELDS);
         
         // If we've tried to yield too many times without success, teleport the car
         if (yieldsWithoutProgress >= TELEPORT_THRESHOLD) {
@@ -625,47 +941,29 @@ public class Car {
         // Try to back up (reverse direction)
         Direction reverseDirection = currentDirection.getOpposite();
         
-        // Check if backing up is possible
-        int backX = currentPos.getX() + reverseDirection.getDx();
-        int backY = currentPos.getY() + reverseDirection.getDy();
-        
-        // Handle grid wrapping
-        backX = (backX + grid.getDimensions().getWidth()) % grid.getDimensions().getWidth();
-        backY = (backY + grid.getDimensions().getHeight()) % grid.getDimensions().getHeight();
-        
-        boolean canBackUp = false;
-        boolean hasRoad = false;
+        // Check if backing up is possible (with grid wrapping)
+        int backX = wrapX(currentPos.getX() + reverseDirection.getDx());
+        int backY = wrapY(currentPos.getY() + reverseDirection.getDy());
         
-        for (Object obj : grid.getObjectsAt(backX, backY)) {
-            if (obj instanceof Road) {
-                hasRoad = true;
-            }
-            if (obj instanceof Car) {
-                // Space is occupied, can't back up
-                canBackUp = false;
-                break;
-            } else if (hasRoad) {
-                canBackUp = true;
-            }
-        }
+        // Possible onto a road cell with no car on it
+        boolean canBackUp = kernel.getCellMap().isRoad(backX, backY) && !hasCarAt(backX, backY);
         
         if (canBackUp) {
             // Back up one space
             grid.moveTo(this, backX, backY);
             
             // After backing up, try to find a new direction
-            List<Direction> possibleMoves = getAllowedMoves(new GridPoint(backX, backY));
-            if (!possibleMoves.isEmpty()) {
-                // Pick a new direction that's not the reverse of our original direction
-                for (Direction dir : possibleMoves) {
-                    if (dir != currentDirection) {
-                        currentDirection = dir;
-                        break;
-                    }
+            boolean backAtIntersection = isAtIntersection(backX, backY);
+            int possibleMoves = getAllowedMoves(backX, backY, backAtIntersection);
+            if (possibleMoves != 0) {
+                // Pick a new direction that's not the one we were blocked in
+                Direction alternative = firstAllowedExcept(possibleMoves, backAtIntersection, currentDirection);
+                if (alternative != null) {
+                    currentDirection = alternative;
                 }
                 // If no alternative, use any direction
-                if (possibleMoves.size() > 0 && currentDirection == reverseDirection) {
-                    currentDirection = possibleMoves.get(0);
+                if (currentDirection == reverseDirection) {
+                    currentDirection = firstAllowedExcept(possibleMoves, backAtIntersection, null);
                 }
             }
             
@@ -673,10 +971,12 @@ public class Car {
             turnsWithoutMove = 0;
         } else {
             // If can't back up, try to turn around in place
-            List<Direction> possibleMoves = getAllowedMoves(currentPos);
-            if (!possibleMoves.isEmpty()) {
+            int x = currentPos.getX();
+            int y = currentPos.getY();
+            int possibleMoves = getAllowedMoves(x, y, isAtIntersection(x, y));
+            if (possibleMoves != 0) {
                 // Change direction without moving
-                currentDirection = possibleMoves.get(RandomHelper.nextIntFromTo(0, possibleMoves.size() - 1));
+                currentDirection = pickRandom(possibleMoves);
                 System.out.println("Car " + id + " couldn't back up, changed direction to " + currentDirection);
                 turnsWithoutMove = 0;
             } else {
@@ -693,48 +993,34 @@ public class Car {
     private void teleportToRandomRoad() {
         System.out.println("Car " + id + " is severely deadlocked. Teleporting to a new location...");
         
-        // Find a random road segment to teleport to
-        Context<Object> context = ContextUtils.getContext(this);
-        List<Road> allRoads = new ArrayList<>();
+        // Find a random road segment (not an intersection) to teleport to
+        int[] roadCells = kernel.getStraightRoadCells();
         
-        for (Object obj : context.getObjects(Road.class)) {
-            Road road = (Road) obj;
-            if (road.getType() != Road.RoadType.INTERSECTION) {
-                allRoads.add(road);
-            }
-        }
-        
-        if (allRoads.isEmpty()) {
+        if (roadCells.length == 0) {
             System.out.println("Error: No road segments found for teleportation");
             return;
         }
         
         // Try up to 20 times to find an unoccupied road position
         for (int i = 0; i < 20; i++) {
-            Road randomRoad = allRoads.get(RandomHelper.nextIntFromTo(0, allRoads.size() - 1));
-            GridPoint roadPos = grid.getLocation(randomRoad);
+            int roadCell = roadCells[random.nextIntFromTo(0, roadCells.length - 1)];
+            int roadX = roadCell % gridWidth;
+            int roadY = roadCell / gridWidth;
             
             // Check if position is available (no car there)
-            boolean hasCar = false;
-            for (Object obj : grid.getObjectsAt(roadPos.getX(), roadPos.getY())) {
-                if (obj instanceof Car && obj != this) {
-                    hasCar = true;
-                    break;
-                }
-            }
-            
-            if (!hasCar) {
+            if (!hasCarAt(roadX, roadY)) {
                 // Position is available, teleport here
-                grid.moveTo(this, roadPos.getX(), roadPos.getY());
+                grid.moveTo(this, roadX, roadY);
+                count(SimulationMetrics.Counter.TELEPORTS);
                 
                 // Set appropriate direction based on road type
-                if (randomRoad.getType() == Road.RoadType.HORIZONTAL) {
-                    currentDirection = (RandomHelper.nextDouble() < 0.5) ? Direction.EAST : Direction.WEST;
+                if (kernel.getCellMap().getRoadType(roadX, roadY) == Road.RoadType.HORIZONTAL) {
+                    currentDirection = (random.nextDouble() < 0.5) ? Direction.EAST : Direction.WEST;
                 } else {
-                    currentDirection = (RandomHelper.nextDouble() < 0.5) ? Direction.NORTH : Direction.SOUTH;
+                    currentDirection = (random.nextDouble() < 0.5) ? Direction.NORTH : Direction.SOUTH;
                 }
                 
-                System.out.println("Car " + id + " teleported to (" + roadPos.getX() + ", " + roadPos.getY() + 
+                System.out.println("Car " + id + " teleported to (" + roadX + ", " + roadY + 
                                  ") and is now facing " + currentDirection);
                 
                 // Reset counters
@@ -752,62 +1038,51 @@ public class Car {
         System.out.println("Failed to find teleport destination for Car " + id + " after 20 attempts");
     }
 
-    private void move(GridPoint currentPos, Direction direction) {
-        int newX = currentPos.getX() + direction.getDx();
-        int newY = currentPos.getY() + direction.getDy();
-
-        // Handle grid wrapping
-        newX = (newX + grid.getDimensions().getWidth()) % grid.getDimensions().getWidth();
-        newY = (newY + grid.getDimensions().getHeight()) % grid.getDimensions().getHeight();
-
-        // Move the car
-        grid.moveTo(this, newX, newY);
+    private void move(int x, int y, Direction direction) {
+        // Move the car (with grid wrapping)
+        grid.moveTo(this, wrapX(x + direction.getDx()), wrapY(y + direction.getDy()));
         currentDirection = direction; // Update the current direction
     }
 
-    private boolean isValidMove(GridPoint currentPos, Direction direction) {
-        int newX = currentPos.getX() + direction.getDx();
-        int newY = currentPos.getY() + direction.getDy();
+    boolean isValidMove(int x, int y, Direction direction) {
+        int newX = wrapX(x + direction.getDx());
+        int newY = wrapY(y + direction.getDy());
 
-        // Handle grid wrapping
-        newX = (newX + grid.getDimensions().getWidth()) % grid.getDimensions().getWidth();
-        newY = (newY + grid.getDimensions().getHeight()) % grid.getDimensions().getHeight();
-
-        // Check for traffic light state
-        boolean hasRedLight = false;
-        for (Object obj : grid.getObjectsAt(newX, newY)) {
-            if (obj instanceof TrafficLight) {
-                TrafficLight light = (TrafficLight) obj;
-                if (light.getState() == TrafficLight.LightState.RED) {
-                    hasRedLight = true;
-                    break;
-                }
-            }
+        // Roads and lights come from the cell map; only the traffic is on the grid
+        CellMap cells = kernel.getCellMap();
+        if (!cells.canEnter(newX, newY, direction)) {
+            return false;
         }
-        
-        // If red light is present, cannot move
-        if (hasRedLight) {
+        int light = cells.getLight(newX, newY);
+        if (light >= 0 && kernel.getTrafficLight(light).getState() == TrafficLight.LightState.RED) {
             return false;
         }
-
-        // Check if there's a road at this location that allows this direction
-        boolean validRoad = false;
-        boolean hasCarInPath = false;
-        
         for (Object obj : grid.getObjectsAt(newX, newY)) {
-            if (obj instanceof Road) {
-                Road road = (Road) obj;
-                if (road.allowsDirection(direction) || road.getType() == Road.RoadType.INTERSECTION) {
-                    validRoad = true;
-                }
-            }
             if (obj instanceof Car) {
-                hasCarInPath = true;
+                return false;
             }
         }
-        
-        // Return true if there's a valid road and no car in the way
-        return validRoad && !hasCarInPath;
+        return true;
+    }
+    
+    /**
+     * Check whether another car stands on a cell.
+     */
+    private boolean hasCarAt(int x, int y) {
+        for (Object obj : grid.getObjectsAt(x, y)) {
+            if (obj instanceof Car && obj != this) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private int wrapX(int x) {
+        return (x + gridWidth) % gridWidth;
+    }
+    
+    private int wrapY(int y) {
+        return (y + gridHeight) % gridHeight;
     }
     
     //----------------------------------------------------------------
@@ -819,165 +1094,236 @@ public class Car {
      */
     private void scanForGarbageBins(GridPoint currentPos) {
         // Look for garbage bins in immediate vicinity (5 cell radius)
-        int scanRadius = 5;
         int centerX = currentPos.getX();
         int centerY = currentPos.getY();
-        
-        for (int x = centerX - scanRadius; x <= centerX + scanRadius; x++) {
-            for (int y = centerY - scanRadius; y <= centerY + scanRadius; y++) {
+        scanForGarbageBins(centerX - SCAN_RADIUS, centerY - SCAN_RADIUS, centerX + SCAN_RADIUS, centerY + SCAN_RADIUS);
+    }
+    
+    /**
+     * Scan a rectangle of cells for garbage bins; bounds are inclusive and may
+     * lie outside the grid, which wraps.
+     */
+    private void scanForGarbageBins(int minX, int minY, int maxX, int maxY) {
+        CellMap cells = kernel.getCellMap();
+        FillForecaster forecaster = kernel.getForecaster();
+        long tick = currentTick();
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
                 // Handle grid wrapping
-                int gridX = (x + grid.getDimensions().getWidth()) % grid.getDimensions().getWidth();
-                int gridY = (y + grid.getDimensions().getHeight()) % grid.getDimensions().getHeight();
+                int gridX = Math.floorMod(x, gridWidth);
+                int gridY = Math.floorMod(y, gridHeight);
                 
-                for (Object obj : grid.getObjectsAt(gridX, gridY)) {
-                    if (obj instanceof GarbageBin) {
-                        GarbageBin bin = (GarbageBin) obj;
-                        
-                        // Only track bins that are at least 70% full
-                        if (bin.getFillPercentage() >= 70.0) {
-                            boolean isUrgent = bin.getFillPercentage() >= 90.0;
-                            
-                            // Add/update bin info
-                            BinInfo binInfo = new BinInfo(
-                                bin.getId(),
-                                gridX,
-                                gridY,
-                                bin.getCurrentFill(),
-                                bin.getCapacity(),
-                                bin.getAreaType(),
-                                isUrgent
-                            );
-                            
-                            knownBins.put(bin.getId(), binInfo);
-                        }
-                    }
+                int binId = cells.getBin(gridX, gridY);
+                GarbageBin bin = (binId >= 0) ? kernel.getBin(binId) : null;
+                if (bin == null) {
+                    continue;
+                }
+                
+                // Every bin passed is a sensor reading; only those at least 70% full are tracked
+                forecaster.sense(bin, tick);
+                if (bin.getFillPercentage() >= 70.0) {
+                    rememberBin(bin, gridX, gridY);
                 }
             }
         }
     }
     
     /**
-     * Remove stale data from vehicle's knowledge base.
+     * Record a sighting of a bin in the fleet's table and in what this truck knows.
      */
-    private void cleanStaleData() {
-        // Remove stale bin information
-        List<Integer> staleBins = new ArrayList<>();
-        for (Map.Entry<Integer, BinInfo> entry : knownBins.entrySet()) {
-            if (entry.getValue().isStale()) {
-                staleBins.add(entry.getKey());
-            }
+    void rememberBin(GarbageBin bin, int x, int y) {
+        long tick = currentTick();
+        binKnowledge.sight(bin, x, y, tick);
+        knownBins.see(bin.getId(), tick);
+    }
+    
+    /**
+     * Find a new garbage bin to target based on distance and fill level.
+     */
+    void findNewTarget() {
+        if (returningToDepot || isCollectingFromBin || targetBinId != NO_BIN) {
+            return;
         }
         
-        for (Integer binId : staleBins) {
-            knownBins.remove(binId);
+        // Under central dispatch the kernel's dispatcher picks targets for us
+        if (kernel.getDispatchPolicy() != DispatchPolicy.GREEDY) {
+            return;
         }
         
-        // Remove old entries from lastEmptyTime
-        List<Integer> oldEntries = new ArrayList<>();
-        long currentTime = System.currentTimeMillis();
-        for (Map.Entry<Integer, Long> entry : lastEmptyTime.entrySet()) {
-            if (currentTime - entry.getValue() > EMPTY_COOLDOWN) {
-                oldEntries.add(entry.getKey());
+        // Target the best bin if found
+        int bestBinId = chooseTargetBin();
+        if (bestBinId >= 0) {
+            // Try to get assignment
+            if (assignBin(bestBinId)) {
+                targetBin(bestBinId, new GridPoint(binKnowledge.getX(bestBinId), binKnowledge.getY(bestBinId)));
             }
         }
-        
-        for (Integer binId : oldEntries) {
-            lastEmptyTime.remove(binId);
-        }
     }
     
     /**
-     * Find a new garbage bin to target based on distance and fill level.
+     * Score the known bins by distance and fill level.
+     * 
+     * The candidates are the truck's own view, not the coordinator's urgency
+     * index: a truck knows a few percent of the bins (about 60 of 2000 on a
+     * 200x200 grid), fewer than the index holds within any useful radius, and
+     * full bins nearby already join the view through the escalation below.
+     * 
+     * @return ID of the best bin to target, or -1 if none qualifies
      */
-    private void findNewTarget() {
-        if (returningToDepot || isCollectingFromBin || targetBinId != null) {
-            return;
-        }
-        
+    int chooseTargetBin() {
         // Get current position
         GridPoint myPoint = grid.getLocation(this);
         
-        // Find best bin to target
-        BinInfo bestBin = null;
-        double bestScore = Double.NEGATIVE_INFINITY;
+        // Full bins nearby count as seen, so they are not missed for lack of a drive-by;
+        // checked once per sample interval, and the view keeps what was escalated
+        if (kernel.getTick() % FillForecaster.SAMPLE_INTERVAL == 0) {
+            int escalated = taskCoordinator.getUrgentBinsNear(myPoint.getX(), myPoint.getY(), ESCALATION_RADIUS,
+                                                              TaskCoordinator.URGENCY_FULL, escalatedBins);
+            for (int i = 0; i < escalated; i++) {
+                GarbageBin bin = kernel.getBin(escalatedBins[i]);
+                GridPoint binPoint = (bin != null) ? bin.getLocation() : null;
+                if (binPoint != null) {
+                    rememberBin(bin, binPoint.getX(), binPoint.getY());
+                }
+            }
+        }
         
-        for (BinInfo bin : knownBins.values()) {
+        // Bound every eligible bin's score from the wrapped grid steps; road
+        // distance is at least the steps to a cell beside the bin, wrap edge included
+        TargetCandidates candidates = kernel.getTargetCandidates();
+        candidates.clear();
+        long tick = currentTick();
+        
+        for (int bin = knownBins.nextKnown(0, tick); bin >= 0; bin = knownBins.nextKnown(bin + 1, tick)) {
+            // Skip bins this kernel's table has no sighting of (e.g. after a handoff)
+            if (!binKnowledge.isSighted(bin)) {
+                continue;
+            }
+            
             // Skip if bin is assigned to another car
-            if (isBinAssigned(bin.id) && !isBinAssignedToMe(bin.id)) {
+            if (isBinAssigned(bin) && !isBinAssignedToMe(bin)) {
                 continue;
             }
             
             // Skip if we don't have capacity
-            if (!hasCapacityFor(bin.fillLevel)) {
+            if (!hasCapacityFor(binKnowledge.getFill(bin))) {
                 continue;
             }
             
             // Skip if recently emptied
-            if (lastEmptyTime.containsKey(bin.id) && 
-                System.currentTimeMillis() - lastEmptyTime.get(bin.id) < EMPTY_COOLDOWN) {
+            if (binKnowledge.wasEmptiedWithin(bin, tick, EMPTY_COOLDOWN)) {
                 continue;
             }
             
-            // Calculate distance using grid distance (Manhattan distance)
-            double distance = getDistance(myPoint, bin.getLocation());
-            
-            // Calculate score (prioritizing closer bins and higher fill levels)
-            double distanceScore = 1000.0 / (distance * distance + 1.0); // Inverse square distance
-            double fillScore = bin.getFillPercentage() / 100.0;  // 0.0 - 1.0
-            double urgencyBonus = bin.isUrgent ? 1.5 : 1.0;      // 50% bonus for urgent bins
+            int straight = getSteps(binKnowledge.getX(bin), binKnowledge.getY(bin), myPoint.getX(), myPoint.getY());
+            candidates.add(bin, targetScore(Math.max(0, straight - 1), binKnowledge.getFillPercentage(bin)));
+        }
+        
+        // Look up road distances, highest bound first, only while a bin can still win;
+        // ties go to the lowest bin id
+        candidates.sortByBound();
+        int bestBin = -1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < candidates.size(); i++) {
+            int bin = candidates.getBin(i);
+            double bound = candidates.getBound(i);
+            if (bound < bestScore || (bound == bestScore && bin > bestBin)) {
+                continue;
+            }
             
-            double score = distanceScore * (0.7 + 0.3 * fillScore) * urgencyBonus;
+            // Driving distance along the roads; skip bins the roads don't lead to
+            double distance = getRoadDistance(myPoint.getX(), myPoint.getY(), binKnowledge.getX(bin), binKnowledge.getY(bin));
+            if (distance >= DistanceField.UNREACHABLE) {
+                continue;
+            }
             
-            if (score > bestScore) {
+            double score = targetScore(distance, binKnowledge.getFillPercentage(bin));
+            if (score > bestScore || (score == bestScore && bin < bestBin)) {
                 bestScore = score;
                 bestBin = bin;
             }
         }
         
-        // Target the best bin if found
-        if (bestBin != null) {
-            // Try to get assignment
-            if (assignBin(bestBin.id)) {
-                targetBin(bestBin.id, bestBin.getLocation());
-            }
+        return bestBin;
+    }
+    
+    /**
+     * Score of a bin (prioritizing closer bins and higher fill levels); never
+     * higher for a longer distance.
+     */
+    private static double targetScore(double distance, double fillPercentage) {
+        double distanceScore = 1000.0 / (distance * distance + 1.0); // Inverse square distance
+        double fillScore = fillPercentage / 100.0;                    // 0.0 - 1.0
+        double urgencyBonus = (fillScore >= 0.9) ? 1.5 : 1.0;         // 50% bonus for urgent bins
+        
+        return distanceScore * (0.7 + 0.3 * fillScore) * urgencyBonus;
+    }
+    
+    /**
+     * Steps along the roads to a cell beside a target, from the target's cached
+     * distance field.
+     * 
+     * @return The distance, 0 next to the target, or DistanceField.UNREACHABLE
+     */
+    private double getRoadDistance(int fromX, int fromY, int targetX, int targetY) {
+        return kernel.getDistanceFields().distance(targetX, targetY, fromX, fromY);
+    }
+    
+    /**
+     * Direction one step closer by road to the depot or target bin, or null
+     * if there is no such step (no target, at the target, or no road to it).
+     */
+    private Direction getRoadDirection(int x, int y) {
+        if (targetDestination == null) {
+            return null;
         }
+        if (returningToDepot) {
+            return kernel.getDepotField().downhill(x, y);
+        }
+        if (targetBinId != NO_BIN) {
+            return kernel.getDistanceFields().get(targetDestination.getX(), targetDestination.getY()).downhill(x, y);
+        }
+        return null;
     }
     
     /**
-     * Calculate grid distance between two points (Manhattan distance)
+     * Straight-line distance between two points on the wrap-around grid.
      */
-    private double getDistance(GridPoint p1, GridPoint p2) {
-        int dx = Math.abs(p1.getX() - p2.getX());
-        int dy = Math.abs(p1.getY() - p2.getY());
+    private double getDistance(int x1, int y1, int x2, int y2) {
+        int dx = Math.abs(x1 - x2);
+        int dy = Math.abs(y1 - y2);
         
         // Account for grid wrapping - take the shorter distance
-        int width = grid.getDimensions().getWidth();
-        int height = grid.getDimensions().getHeight();
-        
-        dx = Math.min(dx, width - dx);
-        dy = Math.min(dy, height - dy);
+        dx = Math.min(dx, gridWidth - dx);
+        dy = Math.min(dy, gridHeight - dy);
         
         return Math.sqrt(dx * dx + dy * dy);
     }
     
+    /**
+     * Get the number of grid steps between two positions, across the wrap edge
+     * when that is shorter
+     */
+    private int getSteps(int x1, int y1, int x2, int y2) {
+        int dx = Math.abs(x1 - x2);
+        int dy = Math.abs(y1 - y2);
+        return Math.min(dx, gridWidth - dx) + Math.min(dy, gridHeight - dy);
+    }
+    
     /**
      * Get the direction to a target position
      */
-    private Direction getDirectionToTarget(GridPoint current, GridPoint target) {
+    private Direction getDirectionToTarget(int x, int y, GridPoint target) {
         // Calculate the delta
-        int dx = target.getX() - current.getX();
-        int dy = target.getY() - current.getY();
+        int dx = target.getX() - x;
+        int dy = target.getY() - y;
         
-        // Handle grid wrapping
-        int width = grid.getDimensions().getWidth();
-        int height = grid.getDimensions().getHeight();
-        
-        // Check if wrapping would be shorter
-        if (Math.abs(dx) > width / 2) {
-            dx = (dx > 0) ? dx - width : dx + width;
+        // Handle grid wrapping: check if wrapping would be shorter
+        if (Math.abs(dx) > gridWidth / 2) {
+            dx = (dx > 0) ? dx - gridWidth : dx + gridWidth;
         }
-        if (Math.abs(dy) > height / 2) {
-            dy = (dy > 0) ? dy - height : dy + height;
+        if (Math.abs(dy) > gridHeight / 2) {
+            dy = (dy > 0) ? dy - gridHeight : dy + gridHeight;
         }
         
         // Determine the dominant direction
@@ -997,16 +1343,17 @@ public class Car {
         targetDestination = binLocation;
         
         // Update status
-        BinInfo binInfo = knownBins.get(binId);
-        String areaType = (binInfo != null) ? binInfo.areaType : "UNKNOWN";
-        boolean isUrgent = (binInfo != null) && binInfo.isUrgent;
-        double distance = getDistance(grid.getLocation(this), binLocation);
+        GarbageBin bin = kernel.getBin(binId);
+        String areaType = (bin != null) ? bin.getAreaType().name() : "UNKNOWN";
+        boolean isUrgent = binKnowledge.isSighted(binId) && binKnowledge.getFillPercentage(binId) >= 90.0;
+        GridPoint myPoint = grid.getLocation(this);
+        double distance = getRoadDistance(myPoint.getX(), myPoint.getY(), binLocation.getX(), binLocation.getY());
         
         System.out.println("Car " + id + " targeting bin " + binId + 
                           " (" + areaType + ")" + (isUrgent ? " (URGENT)" : "") + 
-                          " at distance " + String.format("%.2f", distance));
+                          " at distance " + String.format("%.0f", distance));
         
-        updateStatus("heading to bin " + binId);
+        updateStatus(Status.HEADING_TO_BIN, binId);
         
         // Clear movement history to avoid loop detection interfering with targeting
         recentPositions.clear();
@@ -1017,20 +1364,26 @@ public class Car {
      * Check if vehicle has reached its target bin.
      */
     private boolean checkBinReached(GridPoint currentPos) {
-        if (targetBinId == null || targetDestination == null) {
+        if (targetBinId == NO_BIN || targetDestination == null) {
+            return false;
+        }
+        
+        // Only the bin's own cell and its four neighbours are beside it; no field needed elsewhere
+        if (getSteps(currentPos.getX(), currentPos.getY(), targetDestination.getX(), targetDestination.getY()) > 1) {
             return false;
         }
         
-        double distance = getDistance(currentPos, targetDestination);
+        double distance = getRoadDistance(currentPos.getX(), currentPos.getY(),
+                                          targetDestination.getX(), targetDestination.getY());
         
-        // If we're close enough to the bin (adjacent)
-        if (distance <= 1.0) {
+        // If we're on a road cell next to the bin
+        if (distance == 0) {
             System.out.println("Car " + id + " reached bin " + targetBinId);
             
             // Start collection process
             isCollectingFromBin = true;
             collectionCounter = 0;
-            updateStatus("collecting from bin " + targetBinId);
+            updateStatus(Status.COLLECTING, targetBinId);
             
             // Reset counters and history on successful bin reach
             turnsWithoutMove = 0;
@@ -1051,9 +1404,9 @@ public class Car {
         isCollectingFromBin = false;
         collectionCounter = 0;
         
-        if (targetBinId == null) {
+        if (targetBinId == NO_BIN) {
             System.out.println("Car " + id + " finished collecting but has no target bin ID");
-            updateStatus("idle");
+            updateStatus(Status.IDLE, -1);
             return;
         }
         
@@ -1062,31 +1415,33 @@ public class Car {
             double collectedAmount = emptyTargetBin();
             
             // Update our load (cap at capacity)
-            currentLoad = Math.min(garbageCapacity, currentLoad + collectedAmount);
+            currentLoad = Math.min(vehicleClass.getCapacity(), currentLoad + collectedAmount);
             
             // Track completion
             collectionsCompleted++;
+            count(SimulationMetrics.Counter.COLLECTIONS);
+            kernel.getMetrics().add(SimulationMetrics.Counter.GARBAGE_COLLECTED, collectedAmount);
             
             // Record last empty time
-            lastEmptyTime.put(targetBinId, System.currentTimeMillis());
+            binKnowledge.emptied(targetBinId, currentTick());
             
             // Release target
             releaseTargetBin();
             
             // Check if we need to return to depot
-            if (currentLoad >= garbageCapacity * 0.9) {
+            if (currentLoad >= vehicleClass.getCapacity() * 0.9) {
                 returnToDepot();
             } else {
                 // Immediately look for a new target if we're not returning to depot
                 findNewTarget();
             }
         } catch (Exception e) {
-            System.out.println("Vehicle " + id + " (" + type + ") encountered error during collection: " + e.getMessage());
+            System.out.println("Vehicle " + id + " (" + vehicleClass.getLabel() + ") encountered error during collection: " + e.getMessage());
             // Ensure we clean up properly even if there's an error
-            if (targetBinId != null) {
+            if (targetBinId != NO_BIN) {
                 releaseTargetBin();
             }
-            updateStatus("idle");
+            updateStatus(Status.IDLE, -1);
         }
     }
     
@@ -1098,27 +1453,25 @@ public class Car {
     private double emptyTargetBin() {
         double collectedAmount = 0;
         
-        Context<Object> context = ContextUtils.getContext(this);
-        for (Object obj : context.getObjects(GarbageBin.class)) {
-            GarbageBin bin = (GarbageBin) obj;
-            if (bin.getId() == targetBinId) {
-                double fillLevel = bin.getCurrentFill();
-                double availableCapacity = garbageCapacity - currentLoad;
-                
-                if (fillLevel <= availableCapacity) {
-                    // Can completely empty the bin
-                    collectedAmount = bin.getCurrentFill();
-                    bin.empty();
-                    System.out.println("Vehicle " + id + " (" + type + ") completely emptied bin " + targetBinId);
-                } else {
-                    // Can only partially empty the bin
-                    collectedAmount = availableCapacity;
-                    bin.reduceBy(availableCapacity);
-                    System.out.println("Vehicle " + id + " (" + type + ") partially emptied bin " + targetBinId + 
-                                     " - vehicle now at " + String.format("%.1f", (currentLoad/garbageCapacity*100)) + "% capacity");
-                }
-                break;
+        GarbageBin bin = kernel.getBin(targetBinId);
+        if (bin != null) {
+            double fillLevel = bin.getCurrentFill();
+            double availableCapacity = vehicleClass.getCapacity() - currentLoad;
+            
+            if (fillLevel <= availableCapacity) {
+                // Can completely empty the bin
+                collectedAmount = bin.getCurrentFill();
+                bin.empty();
+                System.out.println("Vehicle " + id + " (" + vehicleClass.getLabel() + ") completely emptied bin " + targetBinId);
+            } else {
+                // Can only partially empty the bin
+                collectedAmount = availableCapacity;
+                bin.reduceBy(availableCapacity);
+                System.out.println("Vehicle " + id + " (" + vehicleClass.getLabel() + ") partially emptied bin " + targetBinId + 
+                                 " - vehicle now at " + String.format("%.1f", (currentLoad/vehicleClass.getCapacity()*100)) + "% capacity");
             }
+            taskCoordinator.recordCollection(id, targetBinId, collectedAmount);
+            kernel.getForecaster().observe(bin, kernel.getTick());
         }
         
         return collectedAmount;
@@ -1127,34 +1480,72 @@ public class Car {
     /**
      * Release the currently targeted bin.
      */
-    private void releaseTargetBin() {
-        if (targetBinId == null) return;
+    void releaseTargetBin() {
+        if (targetBinId == NO_BIN) return;
         
         releaseBinAssignment(targetBinId);
         
-        System.out.println("Vehicle " + id + " (" + type + ") releasing target bin " + targetBinId);
+        System.out.println("Vehicle " + id + " (" + vehicleClass.getLabel() + ") releasing target bin " + targetBinId);
         
-        targetBinId = null;
+        targetBinId = NO_BIN;
         targetDestination = null;
-        updateStatus("seeking target");
+        updateStatus(Status.SEEKING_TARGET, -1);
     }
     
     /**
-     * Start returning to the depot.
+     * Drop the target bin after another vehicle won it, without releasing the
+     * assignment (it belongs to the winner now).
+     */
+    void revokeTargetBin(int binId) {
+        if (targetBinId != binId) return;
+        
+        System.out.println("Vehicle " + id + " (" + vehicleClass.getLabel() + ") lost bin " + binId + " to another vehicle");
+        dropTargetBin();
+    }
+    
+    /**
+     * Drop the target bin after the coordinator revoked the assignment for
+     * taking too long; the bin is open to every vehicle again.
+     */
+    void expireTargetBin(int binId) {
+        if (targetBinId != binId) return;
+        
+        System.out.println("Vehicle " + id + " (" + vehicleClass.getLabel() + ") assignment of bin " + binId + " expired");
+        dropTargetBin();
+    }
+    
+    private void dropTargetBin() {
+        isCollectingFromBin = false;
+        collectionCounter = 0;
+        targetBinId = NO_BIN;
+        targetDestination = null;
+        updateStatus(Status.SEEKING_TARGET, -1);
+    }
+    
+    /**
+     * Start returning to the depot nearest by road.
      */
     private void returnToDepot() {
         // Clear any current target
-        if (targetBinId != null) {
+        if (targetBinId != NO_BIN) {
             releaseTargetBin();
         }
         
-        // Set depot as destination
-        targetDestination = depotLocation;
+        // Set the nearest depot as destination
+        GridPoint currentPos = grid.getLocation(this);
+        Depot depot = kernel.getNearestDepot(currentPos.getX(), currentPos.getY());
+        targetDepotId = (depot != null) ? depot.getId() : -1;
+        targetDestination = (depot != null) ? grid.getLocation(depot) : null;
         returningToDepot = true;
-        updateStatus("returning to depot");
+        updateStatus(Status.RETURNING_TO_DEPOT, -1);
         
-        System.out.println("Car " + id + " returning to depot with " + 
-                         String.format("%.1f", (currentLoad/garbageCapacity*100)) + "% load");
+        if (depot == null) {
+            System.out.println("Car " + id + " is full but there is no depot to return to");
+            return;
+        }
+        System.out.println("Car " + id + " returning to depot " + targetDepotId + " with " + 
+                         String.format("%.1f", (currentLoad/vehicleClass.getCapacity()*100)) + "% load, " +
+                         kernel.getDepotField().distance(currentPos.getX(), currentPos.getY()) + " steps away");
                          
         // Clear movement history to avoid loop detection interfering with depot return
         recentPositions.clear();
@@ -1162,108 +1553,265 @@ public class Car {
     }
     
     /**
-     * Check if vehicle has reached the depot.
+     * Check if vehicle has reached a depot, and wait there for a bay and the unload.
+     * 
+     * @return true while the vehicle is at the depot, so the rest of the step is skipped
      */
     private boolean checkDepotReached(GridPoint currentPos) {
         if (!returningToDepot) return false;
         
-        double distance = getDistance(currentPos, depotLocation);
+        // Any depot we reach will do, even if the field led us to an equally near one
+        Depot depot = kernel.getDepotServing(currentPos.getX(), currentPos.getY());
+        if (depot == null) {
+            return false;
+        }
         
-        if (distance <= 1.0) {
-            System.out.println("Car " + id + " reached depot - unloading " + 
-                             String.format("%.1f", currentLoad) + " units");
-            
-            // Empty the vehicle
-            currentLoad = 0.0;
-            returningToDepot = false;
-            targetDestination = null;
-            updateStatus("unloaded at depot");
+        if (activity != Status.UNLOADING) {
+            System.out.println("Car " + id + " reached depot " + depot.getId() + " - " + 
+                             depot.getQueueLength() + " trucks waiting");
+            targetDepotId = depot.getId();
+            updateStatus(Status.UNLOADING, targetDepotId);
             
             // Reset counters and history on successful depot reach
             turnsWithoutMove = 0;
             yieldsWithoutProgress = 0;
             recentPositions.clear();
             blockedPositions.clear();
-            
-            // Immediately look for a new target
-            findNewTarget();
+        }
+        
+        if (!depot.unload(id, currentTick(), currentLoad)) {
+            // Waiting for a bay or still unloading
             return true;
         }
         
-        return false;
+        System.out.println("Car " + id + " unloaded " + String.format("%.1f", currentLoad) + 
+                         " units at depot " + targetDepotId);
+        
+        // Empty the vehicle
+        currentLoad = 0.0;
+        count(SimulationMetrics.Counter.DEPOT_UNLOADS);
+        returningToDepot = false;
+        targetDepotId = -1;
+        targetDestination = null;
+        updateStatus(Status.UNLOADED, -1);
+        
+        // Immediately look for a new target
+        findNewTarget();
+        return true;
     }
     
     /**
      * Update the status of the car and record the time of status change.
      */
-    private void updateStatus(String newStatus) {
-        if (!this.status.equals(newStatus)) {
-            this.status = newStatus;
-            this.lastStatusChangeTime = System.currentTimeMillis();
+    private void updateStatus(Status newActivity, int newSubject) {
+        if (newActivity != activity || newSubject != statusSubject) {
+            this.statusSubject = newSubject;
+            this.lastStatusChangeTime = currentTick();
+        }
+        if (newActivity != activity) {
+            kernel.getMetrics().recordStatusDuration(activity, currentTick() - activitySince);
+            activity = newActivity;
+            activitySince = currentTick();
         }
     }
     
+    /**
+     * Count an event in the run's metrics.
+     */
+    private void count(SimulationMetrics.Counter counter) {
+        kernel.getMetrics().increment(counter);
+    }
+    
     /**
      * Check if vehicle has capacity for a given amount.
      */
     private boolean hasCapacityFor(double amount) {
-        return (currentLoad + amount <= garbageCapacity);
+        return (currentLoad + amount <= vehicleClass.getCapacity());
+    }
+    
+    /**
+     * Check if the car is free to take a bin from the central dispatcher.
+     */
+    boolean isAvailableForDispatch() {
+        return targetBinId == NO_BIN && !returningToDepot && !isCollectingFromBin && !isInTransit() &&
+               currentLoad < vehicleClass.getCapacity() * 0.9;
+    }
+    
+    /**
+     * Note that the central dispatcher found the car free this tick.
+     * 
+     * @return Ticks the car has been free without a break
+     */
+    long noteFree(long tick) {
+        if (lastFree != tick - 1) {
+            freeSince = tick;
+        }
+        lastFree = tick;
+        return tick - freeSince;
+    }
+    
+    /**
+     * Send the car to a bin chosen by the central dispatcher.
+     * 
+     * @return true if the bin was assigned to this car
+     */
+    boolean dispatchTo(GarbageBin bin, GridPoint binLocation) {
+        if (!isAvailableForDispatch() || !assignBin(bin.getId())) {
+            return false;
+        }
+        targetBin(bin.getId(), binLocation);
+        return true;
     }
     
     //----------------------------------------------------------------
-    // Bin Assignment System (Static, shared across all cars)
+    // Bin Assignment System (shared across all cars of a run)
     //----------------------------------------------------------------
     
     /**
-     * Assign a bin to this car.
+     * Assign a bin to this car through the run's task coordinator.
      */
     private boolean assignBin(int binId) {
-        synchronized (binAssignments) {
-            if (binAssignments.containsKey(binId)) {
-                // Already assigned to some car
-                int assignedCarId = binAssignments.get(binId);
-                if (assignedCarId == this.id) {
-                    // Already assigned to us
-                    return true;
-                }
-                return false;
-            }
-            
-            // Not assigned, claim it
-            binAssignments.put(binId, this.id);
-            System.out.println("Car " + id + " assigned to bin " + binId);
+        if (taskCoordinator.isBinAssignedToVehicle(id, binId)) {
+            // Already assigned to us
+            return true;
+        }
+        if (taskCoordinator.requestBinAssignment(id, binId)) {
+            count(SimulationMetrics.Counter.ASSIGNMENTS);
             return true;
         }
+        count(SimulationMetrics.Counter.ASSIGNMENT_REJECTIONS);
+        return false;
     }
     
     /**
      * Release assignment of a bin.
      */
     private void releaseBinAssignment(int binId) {
-        synchronized (binAssignments) {
-            // Only remove if it's assigned to us
-            if (binAssignments.containsKey(binId) && binAssignments.get(binId) == this.id) {
-                binAssignments.remove(binId);
-                System.out.println("Car " + id + " released assignment to bin " + binId);
-            }
-        }
+        // The coordinator only releases the bin if it's assigned to us
+        taskCoordinator.releaseBin(id, binId);
     }
     
     /**
      * Check if a bin is already assigned to any car.
      */
     private boolean isBinAssigned(int binId) {
-        synchronized (binAssignments) {
-            return binAssignments.containsKey(binId);
-        }
+        return taskCoordinator.isBinAssigned(binId);
     }
     
     /**
      * Check if a bin is assigned to this car.
      */
     private boolean isBinAssignedToMe(int binId) {
-        synchronized (binAssignments) {
-            return binAssignments.containsKey(binId) && binAssignments.get(binId) == this.id;
+        return taskCoordinator.isBinAssignedToVehicle(id, binId);
+    }
+    
+    //----------------------------------------------------------------
+    // Snapshot support
+    //----------------------------------------------------------------
+    
+    /**
+     * Write the car's full state (everything but its grid position) for a snapshot.
+     */
+    void writeState(DataOutput out) throws IOException {
+        out.writeInt(id);
+        out.writeByte(vehicleClass.ordinal());
+        out.writeDouble(currentLoad);
+        out.writeByte(currentDirection != null ? currentDirection.ordinal() : -1);
+        out.writeInt(turnsWithoutMove);
+        out.writeInt(yieldsWithoutProgress);
+        
+        out.writeBoolean(isCollectingFromBin);
+        out.writeInt(collectionCounter);
+        out.writeInt(collectionsCompleted);
+        out.writeDouble(totalDistance);
+        
+        out.writeInt(targetBinId);
+        writePoint(out, targetDestination);
+        out.writeInt(previousCell);
+        out.writeInt(targetDepotId);
+        out.writeBoolean(returningToDepot);
+        
+        // Which bins the truck knows of; what is known of them is the kernel's table
+        knownBins.writeState(out);
+        
+        out.writeInt(statusSubject);
+        out.writeLong(lastStatusChangeTime);
+        out.writeByte(activity.ordinal());
+        out.writeLong(activitySince);
+        
+        writeHistory(out, recentPositions);
+        writeHistory(out, blockedPositions);
+        
+        out.writeLong(transitArrival);
+        out.writeInt(transitCells);
+        out.writeLong(freeSince);
+        out.writeLong(lastFree);
+    }
+    
+    /**
+     * Create a car from state written by writeState(). The caller places it on the grid.
+     */
+    static Car readState(DataInput in, Grid<Object> grid) throws IOException {
+        Car car = new Car(grid, in.readInt());
+        car.vehicleClass = VEHICLE_CLASSES[in.readByte()];
+        car.currentLoad = in.readDouble();
+        int direction = in.readByte();
+        car.currentDirection = (direction >= 0) ? DIRECTIONS[direction] : null;
+        car.turnsWithoutMove = in.readInt();
+        car.yieldsWithoutProgress = in.readInt();
+        
+        car.isCollectingFromBin = in.readBoolean();
+        car.collectionCounter = in.readInt();
+        car.collectionsCompleted = in.readInt();
+        car.totalDistance = in.readDouble();
+        
+        car.targetBinId = in.readInt();
+        car.targetDestination = readPoint(in);
+        car.previousCell = in.readInt();
+        car.targetDepotId = in.readInt();
+        car.returningToDepot = in.readBoolean();
+        
+        car.knownBins.readState(in);
+        
+        car.statusSubject = in.readInt();
+        car.lastStatusChangeTime = in.readLong();
+        car.activity = Status.values()[in.readByte()];
+        car.activitySince = in.readLong();
+        
+        readHistory(in, car.recentPositions);
+        readHistory(in, car.blockedPositions);
+        
+        car.transitArrival = in.readLong();
+        car.transitCells = in.readInt();
+        car.freeSince = in.readLong();
+        car.lastFree = in.readLong();
+        return car;
+    }
+    
+    private static void writePoint(DataOutput out, GridPoint point) throws IOException {
+        out.writeBoolean(point != null);
+        if (point != null) {
+            out.writeInt(point.getX());
+            out.writeInt(point.getY());
+        }
+    }
+    
+    private static GridPoint readPoint(DataInput in) throws IOException {
+        return in.readBoolean() ? new GridPoint(in.readInt(), in.readInt()) : null;
+    }
+    
+    private static void writeHistory(DataOutput out, CellHistory history) throws IOException {
+        out.writeByte(history.size());
+        for (int i = 0; i < history.size(); i++) {
+            out.writeInt(history.get(i));
+        }
+    }
+    
+    private static void readHistory(DataInput in, CellHistory history) throws IOException {
+        history.clear();
+        int size = in.readByte();
+        for (int i = 0; i < size; i++) {
+            history.add(in.readInt());
         }
     }
     
@@ -1276,11 +1824,25 @@ public class Car {
     }
     
     public String getType() {
-        return type;
+        return vehicleClass.getLabel();
+    }
+    
+    /**
+     * Consecutive steps the car has been unable to move.
+     */
+    int getTurnsWithoutMove() {
+        return turnsWithoutMove;
     }
     
+    /**
+     * Status text, e.g. "heading to bin 12".
+     */
     public String getStatus() {
-        return status;
+        return (statusSubject >= 0) ? activity.getDescription() + " " + statusSubject : activity.getDescription();
+    }
+    
+    public Status getActivity() {
+        return activity;
     }
     
     public double getCurrentLoad() {
@@ -1288,7 +1850,11 @@ public class Car {
     }
     
     public double getCapacity() {
-        return garbageCapacity;
+        return vehicleClass.getCapacity();
+    }
+    
+    public VehicleClass getVehicleClass() {
+        return vehicleClass;
     }
     
     public int getCollectionsCompleted() {
@@ -1,8 +1,13 @@
 package carSimulaiton;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 import repast.simphony.context.Context;
 import repast.simphony.context.space.grid.GridFactory;
@@ -12,69 +17,251 @@ import repast.simphony.space.grid.Grid;
 import repast.simphony.space.grid.GridBuilderParameters;
 import repast.simphony.space.grid.SimpleGridAdder;
 import repast.simphony.space.grid.WrapAroundBorders;
-import repast.simphony.random.RandomHelper;
 
 public class CarSimulationBuilder implements ContextBuilder<Object> {
+    // Distance between parallel roads
+    private static final int ROAD_SPACING = 10;
+    
+    private final int width;
+    private final int height;
+    private final int numBins;
+    private final int numCars;
+    
+    // Kernel driving the most recently built context, and its random stream
+    private SimulationKernel kernel;
+    private SimulationRandom random;
+    
+    // CSV file receiving the per-tick metrics, or null to keep them in memory only
+    private String metricsFile = null;
+    
+    // Binary file receiving every truck's trajectory, or null to record none
+    private String trajectoryFile = null;
+    
+    // Declared depots as {x, y, bays, unloadTicks}; one at the centre if none
+    private List<int[]> depotSpecs = new ArrayList<>();
+    
+    // Map to build on instead of generating the road grid, or null
+    private CellMap prebuiltMap = null;
+    
+    // Compiled scenario whose agents are loaded instead of placed, or null
+    private ScenarioFile scenario = null;
+    
+    // Whether roads are also added to the context as Road agents, for display
+    private boolean roadAgents = false;
+    
+    // Map of the context being built
+    private CellMap cells;
+    
+    // Relative share of each vehicle class in the fleet; all STANDARD if empty
+    private Map<VehicleClass, Integer> fleetMix = new EnumMap<>(VehicleClass.class);
+    
+    /**
+     * Default scenario used by the Repast launcher: 50x50 grid, 5 bins, 5 cars.
+     * Per-tick metrics are written to output/metrics.csv.
+     */
+    public CarSimulationBuilder() {
+        this(50, 50, 5, 5);
+        this.metricsFile = "output/metrics.csv";
+        this.roadAgents = true;
+    }
+    
+    /**
+     * Scenario with a custom grid size and population, used by benchmarks and batch sweeps.
+     * 
+     * @param width Grid width in cells
+     * @param height Grid height in cells
+     * @param numBins Number of garbage bins to place
+     * @param numCars Number of cars to place
+     */
+    public CarSimulationBuilder(int width, int height, int numBins, int numCars) {
+        this.width = width;
+        this.height = height;
+        this.numBins = numBins;
+        this.numCars = numCars;
+    }
+    
     @Override
     public Context<Object> build(Context<Object> context) {
         context.setId("CarSimulation");
 
-        // Create a 50x50 grid
-        GridFactory gridFactory = GridFactoryFinder.createGridFactory(null);
-        Grid<Object> grid = gridFactory.createGrid("Grid", context,
-                new GridBuilderParameters<Object>(
-                        new WrapAroundBorders(),
-                        new SimpleGridAdder<Object>(),
-                        true, // Prevent multiple occupancy
-                        50, 50));
+        // Create the grid (50x50 by default)
+        Grid<Object> grid = createGrid(context, width, height);
 
-        // Create roads and intersections with bidirectional support
-        createBidirectionalRoadNetwork(context, grid);
+        // The kernel steps every agent; it is the only object Repast schedules.
+        // All layout randomness comes from its stream so a seed reproduces the run.
+        kernel = new SimulationKernel(grid);
+        random = kernel.getRandom();
+        context.add(kernel);
+        if (metricsFile != null) {
+            kernel.getMetrics().setOutput(metricsFile);
+        }
+        if (trajectoryFile != null) {
+            try {
+                kernel.setTrajectoryRecorder(new TrajectoryRecorder(trajectoryFile, grid));
+                System.out.println("Recording truck trajectories to " + trajectoryFile);
+            } catch (IOException e) {
+                System.out.println("Cannot record trajectories to " + trajectoryFile + ": " + e.getMessage());
+            }
+        }
+
+        if (prebuiltMap != null) {
+            // Roads and lights of a prebuilt map
+            cells = prebuiltMap;
+            kernel.setCellMap(cells);
+            addMapRoadsAndLights(context, grid);
+        } else {
+            cells = new CellMap(width, height);
+            kernel.setCellMap(cells);
+            
+            // Create roads and intersections with bidirectional support
+            createBidirectionalRoadNetwork(context, grid);
+            
+            // Add traffic lights at intersections
+            addTrafficLights(context, grid);
+        }
         
-        // Add traffic lights at intersections
-        addTrafficLights(context, grid);
+        if (scenario != null) {
+            // Bins, depots and cars exactly as the scenario was saved
+            try {
+                scenario.populate(context, kernel);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read the scenario's agents", e);
+            }
+            return context;
+        }
+        
+        // Add the depots beside the roads, before the bins take the spots
+        addDepots(context, grid);
         
-        // Add garbage bins on the sides of roads (reduced to 5)
-        addLimitedGarbageBins(context, grid, 5);
+        // Add garbage bins on the sides of roads (5 by default)
+        addLimitedGarbageBins(context, grid, numBins);
         
-        // Add cars, starting on roads (reduced from 10 to 5 to decrease congestion)
-        addCars(context, grid, 5);  
+        // Add cars, starting on roads (5 by default to limit congestion)
+        addCars(context, grid, numCars);  
 
         return context;
     }
     
+    /**
+     * Write the per-tick metrics of the next build to a CSV file (null to disable).
+     */
+    public void setMetricsFile(String metricsFile) {
+        this.metricsFile = metricsFile;
+    }
+    
+    /**
+     * Record truck trajectories of the next build to a binary file (null to disable).
+     * The file can be read back with TrajectoryReader.
+     */
+    public void setTrajectoryFile(String trajectoryFile) {
+        this.trajectoryFile = trajectoryFile;
+    }
+    
+    /**
+     * Declare a depot for the next builds. It is placed on the free cell beside a
+     * road nearest to (x, y). Without any declaration the scenario gets a single
+     * depot at the centre of the grid.
+     * 
+     * @param bays Trucks that can unload at the same time
+     * @param unloadTicks Ticks one unload takes
+     */
+    public void addDepot(int x, int y, int bays, int unloadTicks) {
+        depotSpecs.add(new int[] { x, y, bays, unloadTicks });
+    }
+    
+    /**
+     * Declare a depot with the default number of bays and unload time.
+     */
+    public void addDepot(int x, int y) {
+        addDepot(x, y, Depot.DEFAULT_BAYS, Depot.DEFAULT_UNLOAD_TICKS);
+    }
+    
+    /**
+     * Mix of vehicle classes for the next builds, as relative weights, e.g.
+     * {COMPACTOR: 1, SMALL_VAN: 3} for a quarter compactors. The car count is
+     * split by largest remainder.
+     */
+    public void setFleetMix(Map<VehicleClass, Integer> weights) {
+        fleetMix = new EnumMap<>(VehicleClass.class);
+        fleetMix.putAll(weights);
+    }
+    
+    /**
+     * Build on a prebuilt map (see CellMap.load) instead of generating the road
+     * grid. The map must have the builder's size; bins and cars are placed
+     * beside and on its straight roads.
+     */
+    public void setCellMap(CellMap map) {
+        this.prebuiltMap = map;
+    }
+    
+    /**
+     * Load a compiled scenario (see ScenarioFile) instead of placing bins,
+     * depots and cars; it also provides the map. The builder must have the
+     * map's size, and the bin and car counts are ignored.
+     */
+    public void setScenario(ScenarioFile scenario) {
+        this.scenario = scenario;
+        this.prebuiltMap = (scenario != null) ? scenario.getCellMap() : null;
+    }
+    
+    /**
+     * Whether roads are also added to the context as Road agents, which only
+     * displays need. On by default for the Repast launcher's scenario, off otherwise.
+     */
+    public void setRoadAgents(boolean roadAgents) {
+        this.roadAgents = roadAgents;
+    }
+    
+    /**
+     * Kernel created by the last call to build(), for headless runs and benchmarks.
+     */
+    public SimulationKernel getKernel() {
+        return kernel;
+    }
+    
+    /**
+     * Create the wrap-around, single-occupancy grid the model runs on.
+     */
+    static Grid<Object> createGrid(Context<Object> context, int width, int height) {
+        GridFactory gridFactory = GridFactoryFinder.createGridFactory(null);
+        return gridFactory.createGrid("Grid", context,
+                new GridBuilderParameters<Object>(
+                        new WrapAroundBorders(),
+                        new SimpleGridAdder<Object>(),
+                        true, // Prevent multiple occupancy
+                        width, height));
+    }
+    
     /**
      * Creates a road network with bidirectional roads instead of one-way roads.
      */
     private void createBidirectionalRoadNetwork(Context<Object> context, Grid<Object> grid) {
-        int[] roadPositions = {10, 20, 30, 40};
+        // Horizontal roads use y positions, vertical roads x positions
+        int[] rowPositions = getRoadPositions(height);
+        int[] columnPositions = getRoadPositions(width);
         
         // Add horizontal roads - all bidirectional
-        for (int i = 0; i < roadPositions.length; i++) {
-            int y = roadPositions[i];
+        for (int i = 0; i < rowPositions.length; i++) {
+            int y = rowPositions[i];
             
-            for (int x = 0; x < 50; x++) {
-                Road road;
-                if (isIntersection(x, y, roadPositions)) {
-                    road = new Road(Road.RoadType.INTERSECTION, Road.Direction.ALL);
+            for (int x = 0; x < width; x++) {
+                if (isIntersection(x, y, columnPositions, rowPositions)) {
+                    layRoad(context, grid, x, y, Road.RoadType.INTERSECTION, Road.Direction.ALL);
                 } else {
-                    road = new Road(Road.RoadType.HORIZONTAL, Road.Direction.BIDIRECTIONAL);
+                    layRoad(context, grid, x, y, Road.RoadType.HORIZONTAL, Road.Direction.BIDIRECTIONAL);
                 }
-                context.add(road);
-                grid.moveTo(road, x, y);
             }
         }
         
         // Add vertical roads - all bidirectional
-        for (int i = 0; i < roadPositions.length; i++) {
-            int x = roadPositions[i];
+        for (int i = 0; i < columnPositions.length; i++) {
+            int x = columnPositions[i];
             
-            for (int y = 0; y < 50; y++) {
+            for (int y = 0; y < height; y++) {
                 // Skip intersections as they were already added
-                if (!isIntersection(x, y, roadPositions)) {
-                    Road road = new Road(Road.RoadType.VERTICAL, Road.Direction.BIDIRECTIONAL);
-                    context.add(road);
-                    grid.moveTo(road, x, y);
+                if (!isIntersection(x, y, columnPositions, rowPositions)) {
+                    layRoad(context, grid, x, y, Road.RoadType.VERTICAL, Road.Direction.BIDIRECTIONAL);
                 }
             }
         }
@@ -82,20 +269,72 @@ public class CarSimulationBuilder implements ContextBuilder<Object> {
         System.out.println("Road network created with bidirectional roads and intersections.");
     }
     
-    private boolean isIntersection(int x, int y, int[] roadPositions) {
-        boolean xIsRoadPos = false;
-        boolean yIsRoadPos = false;
+    /**
+     * Put a road on the map, and on the grid as an agent if roads are displayed.
+     */
+    private void layRoad(Context<Object> context, Grid<Object> grid, int x, int y,
+                         Road.RoadType type, Road.Direction direction) {
+        cells.setRoad(x, y, type, direction);
+        if (roadAgents) {
+            Road road = new Road(type, direction);
+            context.add(road);
+            grid.moveTo(road, x, y);
+        }
+    }
+    
+    /**
+     * Add the lights of a prebuilt map in light id order, cycling their initial
+     * states like addTrafficLights(), and its roads as agents if they are displayed.
+     */
+    private void addMapRoadsAndLights(Context<Object> context, Grid<Object> grid) {
+        if (roadAgents) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    Road road = cells.createRoad(x, y);
+                    if (road != null) {
+                        context.add(road);
+                        grid.moveTo(road, x, y);
+                    }
+                }
+            }
+        }
         
-        for (int pos : roadPositions) {
-            if (x == pos) xIsRoadPos = true;
-            if (y == pos) yIsRoadPos = true;
+        TrafficLight.LightState[] states = TrafficLight.LightState.values();
+        for (int id = 0; id < cells.getLightCount(); id++) {
+            int cell = cells.getLightCell(id);
+            TrafficLight light = new TrafficLight(states[id % states.length]);
+            context.add(light);
+            kernel.addTrafficLight(light);
+            grid.moveTo(light, cell % width, cell / width);
         }
         
-        return xIsRoadPos && yIsRoadPos;
+        System.out.println("Map loaded with " + cells.getLightCount() + " traffic lights.");
+    }
+    
+    /**
+     * Road positions along one axis: every ROAD_SPACING cells, e.g. {10, 20, 30, 40} for 50 cells.
+     */
+    private int[] getRoadPositions(int size) {
+        int count = Math.max(0, (size - 1) / ROAD_SPACING);
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = (i + 1) * ROAD_SPACING;
+        }
+        return positions;
+    }
+    
+    private boolean isIntersection(int x, int y, int[] columnPositions, int[] rowPositions) {
+        return isRoadPosition(x, columnPositions) && isRoadPosition(y, rowPositions);
+    }
+    
+    private boolean isRoadPosition(int pos, int[] roadPositions) {
+        // Road positions are evenly spaced, so no search is needed
+        return pos > 0 && pos % ROAD_SPACING == 0 && pos / ROAD_SPACING <= roadPositions.length;
     }
     
     private void addTrafficLights(Context<Object> context, Grid<Object> grid) {
-        int[] roadPositions = {10, 20, 30, 40};
+        int[] rowPositions = getRoadPositions(height);
+        int[] columnPositions = getRoadPositions(width);
         
         // Add traffic lights at intersections with different initial states
         // to avoid all lights being synchronized
@@ -108,10 +347,11 @@ public class CarSimulationBuilder implements ContextBuilder<Object> {
         int stateIndex = 0;
         
         // Add traffic lights at intersections
-        for (int x : roadPositions) {
-            for (int y : roadPositions) {
+        for (int x : columnPositions) {
+            for (int y : rowPositions) {
                 TrafficLight light = new TrafficLight(states[stateIndex % states.length]);
                 context.add(light);
+                kernel.addTrafficLight(light);
                 grid.moveTo(light, x, y);
                 stateIndex++;
             }
@@ -120,16 +360,75 @@ public class CarSimulationBuilder implements ContextBuilder<Object> {
         System.out.println("Traffic lights added at all intersections with varied initial states.");
     }
     
+    /**
+     * Place the declared depots, or the default one at the centre of the grid.
+     */
+    private void addDepots(Context<Object> context, Grid<Object> grid) {
+        List<int[]> specs = depotSpecs;
+        if (specs.isEmpty()) {
+            specs = new ArrayList<>();
+            specs.add(new int[] { width / 2, height / 2, Depot.DEFAULT_BAYS, Depot.DEFAULT_UNLOAD_TICKS });
+        }
+        
+        for (int[] spec : specs) {
+            int[] cell = findDepotCell(grid, spec[0], spec[1]);
+            if (cell == null) {
+                System.out.println("No room for a depot near (" + spec[0] + ", " + spec[1] + ")");
+                continue;
+            }
+            Depot depot = new Depot(kernel.getDepots().size(), spec[2], spec[3]);
+            context.add(depot);
+            grid.moveTo(depot, cell[0], cell[1]);
+            kernel.addDepot(depot);
+            System.out.println("Depot " + depot.getId() + " placed at (" + cell[0] + ", " + cell[1] + ") with " +
+                             spec[2] + " bays");
+        }
+    }
+    
+    /**
+     * Free off-road cell beside a road nearest to a position, searching square
+     * rings of growing radius; null if the grid has none.
+     */
+    private int[] findDepotCell(Grid<Object> grid, int x, int y) {
+        int maxRadius = Math.max(width, height) / 2;
+        for (int radius = 0; radius <= maxRadius; radius++) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                for (int dx = -radius; dx <= radius; dx++) {
+                    if (Math.max(Math.abs(dx), Math.abs(dy)) != radius) {
+                        continue;
+                    }
+                    int cx = Math.floorMod(x + dx, width);
+                    int cy = Math.floorMod(y + dy, height);
+                    if (isPositionAvailable(grid, cx, cy) && isBesideRoad(grid, cx, cy)) {
+                        return new int[] { cx, cy };
+                    }
+                }
+            }
+        }
+        return null;
+    }
+    
+    private boolean isBesideRoad(Grid<Object> grid, int x, int y) {
+        int[][] neighbours = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 } };
+        for (int[] n : neighbours) {
+            if (cells.isRoad(x + n[0], y + n[1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * Add a limited number of garbage bins to the simulation.
-     * This method adds exactly the specified number of bins, strategically placed.
+     * The first bins use fixed strategic positions (default 50x50 map); any further
+     * bins are placed at random free cells next to a horizontal road.
      * 
      * @param context The simulation context
      * @param grid The simulation grid
      * @param numBins The target number of bins to add
      */
     private void addLimitedGarbageBins(Context<Object> context, Grid<Object> grid, int numBins) {
-        int[] roadPositions = {10, 20, 30, 40};
+        int[] rowPositions = getRoadPositions(height);
         int binCounter = 1;
         
         // Fixed bin positions to distribute them across different areas
@@ -154,33 +453,71 @@ public class CarSimulationBuilder implements ContextBuilder<Object> {
             int x = strategicPositions[i][0];
             int y = strategicPositions[i][1];
             
-            // Check if position is available
+            // Check if position is on the grid and available (and, on a map, beside a road)
+            if (x < width && y < height && isPositionAvailable(grid, x, y) &&
+                (prebuiltMap == null || isBesideRoad(grid, x, y))) {
+                binCounter = addGarbageBin(context, grid, binCounter, x, y);
+            }
+        }
+        
+        // Add any remaining bins beside randomly chosen horizontal roads
+        int attempts = 0;
+        int maxAttempts = numBins * 20;
+        while (prebuiltMap == null && binCounter <= numBins && rowPositions.length > 0 && attempts++ < maxAttempts) {
+            int roadY = rowPositions[random.nextIntFromTo(0, rowPositions.length - 1)];
+            int x = random.nextIntFromTo(0, width - 1);
+            int y = (random.nextDouble() < 0.5) ? roadY - 1 : roadY + 1;
+            
+            if (y >= 0 && y < height && isPositionAvailable(grid, x, y)) {
+                binCounter = addGarbageBin(context, grid, binCounter, x, y);
+            }
+        }
+        
+        // On a prebuilt map, beside randomly chosen straight road cells
+        int[] roadCells = (prebuiltMap != null) ? kernel.getStraightRoadCells() : new int[0];
+        while (binCounter <= numBins && roadCells.length > 0 && attempts++ < maxAttempts) {
+            int roadCell = roadCells[random.nextIntFromTo(0, roadCells.length - 1)];
+            int side = (random.nextDouble() < 0.5) ? -1 : 1;
+            boolean horizontal = cells.getRoadType(roadCell % width, roadCell / width) == Road.RoadType.HORIZONTAL;
+            int x = Math.floorMod(roadCell % width + (horizontal ? 0 : side), width);
+            int y = Math.floorMod(roadCell / width + (horizontal ? side : 0), height);
+            
             if (isPositionAvailable(grid, x, y)) {
-                // Choose area type based on quadrant
-                String areaType = getAreaTypeByLocation(x, y);
-                double capacity = RandomHelper.nextDoubleFromTo(60.0, 150.0);
-                
-                GarbageBin bin = new GarbageBin(grid, binCounter++, capacity, areaType);
-                context.add(bin);
-                grid.moveTo(bin, x, y);
+                binCounter = addGarbageBin(context, grid, binCounter, x, y);
             }
         }
         
         System.out.println("Added " + (binCounter - 1) + " garbage bins along the sides of roads.");
     }
     
+    /**
+     * Create a bin at the given position with an area type based on its quadrant.
+     * 
+     * @return The next free bin id
+     */
+    private int addGarbageBin(Context<Object> context, Grid<Object> grid, int binId, int x, int y) {
+        GarbageBin.AreaType areaType = getAreaTypeByLocation(x, y);
+        double capacity = random.nextDoubleFromTo(60.0, 150.0);
+        
+        GarbageBin bin = new GarbageBin(binId, capacity, areaType, random);
+        context.add(bin);
+        kernel.addGarbageBin(bin);
+        grid.moveTo(bin, x, y);
+        return binId + 1;
+    }
+    
     /**
      * Determines if a position is near an intersection (including the intersection itself).
      */
-    private boolean isNearIntersection(int x, int y, int[] roadPositions) {
+    private boolean isNearIntersection(int x, int y, int[] columnPositions, int[] rowPositions) {
         // Check if this is an intersection
-        if (isIntersection(x, y, roadPositions)) {
+        if (isIntersection(x, y, columnPositions, rowPositions)) {
             return true;
         }
         
         // Check if it's within 2 units of an intersection
-        for (int xPos : roadPositions) {
-            for (int yPos : roadPositions) {
+        for (int xPos : columnPositions) {
+            for (int yPos : rowPositions) {
                 if (Math.abs(x - xPos) <= 2 && Math.abs(y - yPos) <= 2) {
                     return true;
                 }
@@ -194,91 +531,141 @@ public class CarSimulationBuilder implements ContextBuilder<Object> {
      * Checks if a position is available (no road or other object).
      */
     private boolean isPositionAvailable(Grid<Object> grid, int x, int y) {
-        return ((Collection<Object>) grid.getObjectsAt(x, y)).isEmpty();
+        return !cells.isRoad(x, y) && ((Collection<Object>) grid.getObjectsAt(x, y)).isEmpty();
     }
     
     /**
      * Determines an area type based on the position in the grid.
      */
-    private String getAreaTypeByLocation(int x, int y) {
+    private GarbageBin.AreaType getAreaTypeByLocation(int x, int y) {
         // Dividing the grid into four quadrants
-        // Upper right (x > 25, y > 25): Commercial
-        if (x > 25 && y > 25) {
-            return "COMMERCIAL";
+        int midX = width / 2;
+        int midY = height / 2;
+        
+        // Upper right (x > 25, y > 25 on the default map): Commercial
+        if (x > midX && y > midY) {
+            return GarbageBin.AreaType.COMMERCIAL;
         }
-        // Bottom left (x < 25, y < 25): Residential
-        else if (x < 25 && y < 25) {
-            return "RESIDENTIAL";
+        // Bottom left (x < 25, y < 25 on the default map): Residential
+        else if (x < midX && y < midY) {
+            return GarbageBin.AreaType.RESIDENTIAL;
         }
         // Others: Low density
         else {
-            return "LOW_DENSITY";
+            return GarbageBin.AreaType.LOW_DENSITY;
+        }
+    }
+    
+    /**
+     * Vehicle class of every car, split from the fleet mix by largest remainder
+     * and grouped by class in declaration order.
+     */
+    private VehicleClass[] getVehicleClasses(int numCars) {
+        VehicleClass[] classes = new VehicleClass[numCars];
+        Arrays.fill(classes, VehicleClass.STANDARD);
+        
+        int totalWeight = 0;
+        for (int weight : fleetMix.values()) {
+            totalWeight += Math.max(0, weight);
+        }
+        if (totalWeight == 0) {
+            return classes;
+        }
+        
+        VehicleClass[] all = VehicleClass.values();
+        int[] counts = new int[all.length];
+        double[] remainders = new double[all.length];
+        int assigned = 0;
+        for (VehicleClass vehicleClass : all) {
+            double exact = (double) numCars * Math.max(0, fleetMix.getOrDefault(vehicleClass, 0)) / totalWeight;
+            counts[vehicleClass.ordinal()] = (int) exact;
+            remainders[vehicleClass.ordinal()] = exact - (int) exact;
+            assigned += (int) exact;
+        }
+        for (; assigned < numCars; assigned++) {
+            int largest = 0;
+            for (int c = 1; c < all.length; c++) {
+                if (remainders[c] > remainders[largest]) {
+                    largest = c;
+                }
+            }
+            counts[largest]++;
+            remainders[largest] = -1;
+        }
+        
+        int next = 0;
+        for (VehicleClass vehicleClass : all) {
+            for (int i = 0; i < counts[vehicleClass.ordinal()]; i++) {
+                classes[next++] = vehicleClass;
+            }
         }
+        return classes;
     }
     
+    private String describeFleet(VehicleClass[] classes) {
+        int[] counts = new int[VehicleClass.values().length];
+        for (VehicleClass vehicleClass : classes) {
+            counts[vehicleClass.ordinal()]++;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (VehicleClass vehicleClass : VehicleClass.values()) {
+            if (counts[vehicleClass.ordinal()] > 0) {
+                if (sb.length() > 0) sb.append(", ");
+                sb.append(counts[vehicleClass.ordinal()]).append(' ').append(vehicleClass.getLabel());
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Place the cars on random free straight road cells (not at intersections).
+     * The free cells are the first freeCount entries of a copy of the map's
+     * straight road cells; a car takes one at random and the last free entry
+     * moves into its slot, so every car is placed with a single draw however
+     * full the roads are.
+     */
     private void addCars(Context<Object> context, Grid<Object> grid, int numCars) {
-        int[] roadPositions = {10, 20, 30, 40};
+        VehicleClass[] classes = getVehicleClasses(numCars);
+        int[] freeCells = kernel.getStraightRoadCells().clone();
+        int freeCount = freeCells.length;
         
-        for (int i = 0; i < numCars; i++) {
-            Car car = new Car(grid);
+        int added = 0;
+        for (; added < numCars; added++) {
+            if (freeCount == 0) {
+                System.out.println("No free road cell left for car " + (added + 1));
+                break;
+            }
+            Car car = new Car(grid, added + 1, classes[added]);
+            car.setDeadlockResolver(kernel.getDeadlockResolver());
+            car.setKernel(kernel);
             context.add(car);
+            kernel.addCar(car);
             
-            // Place cars randomly on roads (not at intersections)
-            boolean placed = false;
-            while (!placed) {
-                // Choose random road segment
-                boolean isHorizontal = RandomHelper.nextIntFromTo(0, 1) == 0;
-                int roadIndex = RandomHelper.nextIntFromTo(0, roadPositions.length - 1);
-                int roadPos = roadPositions[roadIndex];
-                
-                // Choose a position along the road
-                int otherPos = RandomHelper.nextIntFromTo(0, 49);
-                
-                // Determine x and y based on road orientation
-                int x = isHorizontal ? otherPos : roadPos;
-                int y = isHorizontal ? roadPos : otherPos;
-                
-                // Skip intersections
-                if (isIntersection(x, y, roadPositions)) {
-                    continue;
-                }
-                
-                // Check if location is available (has road but no car)
-                Road foundRoad = null;
-                boolean hasCar = false;
-                
-                for (Object obj : grid.getObjectsAt(x, y)) {
-                    if (obj instanceof Road) {
-                        foundRoad = (Road) obj;
-                    }
-                    if (obj instanceof Car) {
-                        hasCar = true;
-                    }
-                }
-                
-                if (foundRoad != null && !hasCar) {
-                    grid.moveTo(car, x, y);
-                    
-                    // Set initial direction based on road type
-                    Car.Direction carDirection;
-                    
-                    if (foundRoad.getType() == Road.RoadType.HORIZONTAL) {
-                        // For horizontal roads, randomly choose EAST or WEST
-                        carDirection = (RandomHelper.nextDouble() < 0.5) ? 
-                                      Car.Direction.EAST : Car.Direction.WEST;
-                    } else {
-                        // For vertical roads, randomly choose NORTH or SOUTH
-                        carDirection = (RandomHelper.nextDouble() < 0.5) ? 
-                                      Car.Direction.NORTH : Car.Direction.SOUTH;
-                    }
-                    
-                    car.setInitialDirection(carDirection);
-                    placed = true;
-                    System.out.println("Car placed at (" + x + ", " + y + ") with direction " + carDirection);
-                }
+            int slot = random.nextIntFromTo(0, freeCount - 1);
+            int cell = freeCells[slot];
+            freeCells[slot] = freeCells[--freeCount];
+            int x = cell % width;
+            int y = cell / width;
+            grid.moveTo(car, x, y);
+            
+            // Set initial direction based on road type
+            Car.Direction carDirection;
+            
+            if (cells.getRoadType(x, y) == Road.RoadType.HORIZONTAL) {
+                // For horizontal roads, randomly choose EAST or WEST
+                carDirection = (random.nextDouble() < 0.5) ? 
+                              Car.Direction.EAST : Car.Direction.WEST;
+            } else {
+                // For vertical roads, randomly choose NORTH or SOUTH
+                carDirection = (random.nextDouble() < 0.5) ? 
+                              Car.Direction.NORTH : Car.Direction.SOUTH;
             }
+            
+            car.setInitialDirection(carDirection);
+            System.out.println("Car placed at (" + x + ", " + y + ") with direction " + carDirection);
         }
         
-        System.out.println("Added " + numCars + " cars to the simulation.");
+        System.out.println("Added " + added + " cars to the simulation: " +
+                         describeFleet(Arrays.copyOf(classes, added)));
     }
 }
\ No newline at end of file
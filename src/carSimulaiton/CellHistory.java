@@ -0,0 +1,115 @@
+package carSimulaiton;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size history of grid cells kept as packed int ids (y * width + x).
+ *
+ * Cells live in a ring buffer so recording a position never shifts or allocates.
+ * A small counting table indexed by a hash of the cell id acts as a bloom-style
+ * filter: a zero (or too small) count proves the cell is absent, so the exact
+ * scan of the ring only happens on a possible hit.
+ */
+public class CellHistory {
+    private final int[] cells;
+    private int head = 0; // Index of the oldest entry
+    private int size = 0;
+
+    // Counting filter; a slot never exceeds the ring capacity
+    private final byte[] counts;
+    private final int shift;
+
+    /**
+     * Creates an empty history.
+     *
+     * @param capacity Maximum number of cells remembered (at most 127)
+     */
+    public CellHistory(int capacity) {
+        if (capacity < 1 || capacity > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Capacity must be between 1 and " + Byte.MAX_VALUE);
+        }
+        this.cells = new int[capacity];
+
+        // Four slots per entry keeps false positives rare
+        int bits = 32 - Integer.numberOfLeadingZeros(capacity * 4 - 1);
+        this.counts = new byte[1 << bits];
+        this.shift = 32 - bits;
+    }
+
+    /**
+     * Record a cell, evicting the oldest one when the history is full.
+     */
+    public void add(int cell) {
+        if (size == cells.length) {
+            counts[slot(cells[head])]--;
+            cells[head] = cell;
+            head = (head + 1) % cells.length;
+        } else {
+            cells[(head + size) % cells.length] = cell;
+            size++;
+        }
+        counts[slot(cell)]++;
+    }
+
+    /**
+     * Check if a cell is in the history.
+     */
+    public boolean contains(int cell) {
+        return occursAtLeast(cell, 1);
+    }
+
+    /**
+     * Check if a cell appears at least the given number of times.
+     */
+    public boolean occursAtLeast(int cell, int times) {
+        // The slot count is an upper bound on the real count
+        if (counts[slot(cell)] < times) {
+            return false;
+        }
+
+        int occurrences = 0;
+        for (int i = 0; i < size; i++) {
+            if (cells[(head + i) % cells.length] == cell) {
+                occurrences++;
+                if (occurrences >= times) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forget all recorded cells.
+     */
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(counts, (byte) 0);
+            head = 0;
+            size = 0;
+        }
+    }
+
+    /**
+     * Cell at a position in the history, 0 being the oldest.
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of " + size);
+        }
+        return cells[(head + index) % cells.length];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return cells.length;
+    }
+
+    private int slot(int cell) {
+        // Fibonacci hashing spreads neighbouring cell ids across the table
+        return (cell * 0x9E3779B9) >>> shift;
+    }
+}
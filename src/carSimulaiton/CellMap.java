@@ -0,0 +1,352 @@
+package carSimulaiton;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The static layer of a map, one packed record per cell outside the Java heap.
+ *
+ * Each cell holds its road (type, direction, and the directions in which a
+ * truck may drive into it), the id of the traffic light standing on it, and
+ * the bin or depot occupying it. Records live in a direct or memory-mapped
+ * buffer, so a 2000x2000 map is 48 MB the garbage collector never traces, and
+ * a map saved with save() is loaded by mapping the file read-only rather than
+ * by creating a Road per cell. Occupants belong to a run, not to the map, so
+ * they are kept in a direct buffer of their own (16 MB more at 2000x2000) and
+ * registering a run's bins never writes to the mapping. Road objects are only
+ * made, with createRoad(), for display. Moving agents (cars) stay on the
+ * Repast grid.
+ *
+ * Map file layout (big-endian): magic, version, width, height, light count,
+ * the cell id of each light by light id, then the records in cell id order.
+ */
+public class CellMap {
+    private static final long MAGIC = 0x43534D4150303031L; // "CSMAP001"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+
+    // Record: entry mask, road type + 1 (0 off-road), road direction, a byte and
+    // an int once used for the occupant (zero in every file), light id + 1 (0 none)
+    static final int RECORD_BYTES = 12;
+    private static final int ENTRIES = 0;
+    private static final int ROAD_TYPE = 1;
+    private static final int ROAD_DIRECTION = 2;
+    private static final int LIGHT = 4;
+
+    /** Entry mask bit marking an intersection; the low bits are Car.Direction masks. */
+    public static final int INTERSECTION = 1 << 4;
+
+    public static final byte OCCUPANT_NONE = 0;
+    public static final byte OCCUPANT_BIN = 1;
+    public static final byte OCCUPANT_DEPOT = 2;
+
+    private static final Road.RoadType[] ROAD_TYPES = Road.RoadType.values();
+    private static final Road.Direction[] ROAD_DIRECTIONS = Road.Direction.values();
+
+    private final int width;
+    private final int height;
+    // Read-only while a loaded map's records still match its file
+    private ByteBuffer cells;
+
+    // Per cell: bin id + 1, -(depot id + 1), or 0 when nothing occupies it
+    private final ByteBuffer occupants;
+
+    // Cell id of each light, by light id
+    private int[] lightCells = new int[0];
+    private int lightCount = 0;
+
+    /**
+     * An empty map (no roads, lights or occupants) in a direct buffer.
+     */
+    public CellMap(int width, int height) {
+        this(width, height, ByteBuffer.allocateDirect(Math.multiplyExact(Math.multiplyExact(width, height), RECORD_BYTES)));
+    }
+
+    private CellMap(int width, int height, ByteBuffer cells) {
+        this.width = width;
+        this.height = height;
+        this.cells = cells.order(ByteOrder.BIG_ENDIAN);
+        this.occupants = ByteBuffer.allocateDirect(Math.multiplyExact(width * height, 4));
+    }
+
+    /**
+     * Map a file written by save(). The mapping is read-only, so the file may
+     * be too: occupants go to their own buffer, and a road or light that really
+     * changes first copies the records off the file (see writableCells()).
+     */
+    public static CellMap load(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            return read(channel, file);
+        }
+    }
+
+    /**
+     * Map the map at the start of an open channel; the mapping stays valid
+     * after the channel is closed.
+     */
+    static CellMap read(FileChannel channel, String file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getLong() != MAGIC) {
+            throw new IOException(file + " is not a map file");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported map version " + version + " (expected " + VERSION + ")");
+        }
+        int width = header.getInt();
+        int height = header.getInt();
+        int lights = header.getInt();
+
+        ByteBuffer lightBuffer = ByteBuffer.allocate(4 * lights);
+        readFully(channel, lightBuffer, HEADER_BYTES);
+        lightBuffer.flip();
+
+        long offset = HEADER_BYTES + 4L * lights;
+        long length = (long) width * height * RECORD_BYTES;
+        if (channel.size() < offset + length) {
+            throw new IOException(file + " is truncated");
+        }
+        CellMap map = new CellMap(width, height, channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+        map.lightCells = new int[lights];
+        for (int id = 0; id < lights; id++) {
+            map.lightCells[id] = lightBuffer.getInt();
+        }
+        map.lightCount = lights;
+        return map;
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of map file");
+            }
+        }
+    }
+
+    /**
+     * Write the roads and lights to a map file; occupants are left out, they
+     * belong to a scenario rather than to the map.
+     */
+    public void save(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(channel);
+        }
+    }
+
+    /**
+     * Write the map at the channel's position, as save() does.
+     */
+    void write(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + 4 * lightCount);
+        header.putLong(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(lightCount);
+        for (int id = 0; id < lightCount; id++) {
+            header.putInt(lightCells[id]);
+        }
+        header.flip();
+        writeFully(channel, header);
+
+        // One row at a time through a staging buffer; occupants are not in the records
+        ByteBuffer row = ByteBuffer.allocateDirect(width * RECORD_BYTES);
+        for (int y = 0; y < height; y++) {
+            ByteBuffer source = cells.duplicate();
+            source.position(y * width * RECORD_BYTES).limit((y + 1) * width * RECORD_BYTES);
+            row.clear();
+            row.put(source);
+            row.flip();
+            writeFully(channel, row);
+        }
+    }
+
+    /**
+     * Bytes the map takes in a file: header, light table and records.
+     */
+    long getFileBytes() {
+        return HEADER_BYTES + 4L * lightCount + (long) width * height * RECORD_BYTES;
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    //----------------------------------------------------------------
+    // Roads
+    //----------------------------------------------------------------
+
+    /**
+     * Lay a road on a cell. Intersections may be entered from any direction.
+     */
+    public void setRoad(int x, int y, Road.RoadType type, Road.Direction direction) {
+        Road road = new Road(type, direction);
+        int mask = (type == Road.RoadType.INTERSECTION) ? INTERSECTION : 0;
+        for (Car.Direction carDirection : Car.Direction.values()) {
+            if (type == Road.RoadType.INTERSECTION || road.allowsDirection(carDirection)) {
+                mask |= carDirection.getMask();
+            }
+        }
+        int at = cell(x, y) * RECORD_BYTES;
+        ByteBuffer records = writableCells();
+        records.put(at + ENTRIES, (byte) mask);
+        records.put(at + ROAD_TYPE, (byte) (type.ordinal() + 1));
+        records.put(at + ROAD_DIRECTION, (byte) road.getDirection().ordinal());
+    }
+
+    public boolean isRoad(int x, int y) {
+        return getEntries(cell(x, y)) != 0;
+    }
+
+    public boolean isIntersection(int x, int y) {
+        return (getEntries(cell(x, y)) & INTERSECTION) != 0;
+    }
+
+    /**
+     * Check whether a truck may drive into a cell heading in the given direction.
+     */
+    public boolean canEnter(int x, int y, Car.Direction direction) {
+        return (getEntries(cell(x, y)) & direction.getMask()) != 0;
+    }
+
+    /**
+     * Entry mask of a cell id: Car.Direction masks plus INTERSECTION, 0 off-road.
+     */
+    public int getEntries(int cell) {
+        return cells.get(cell * RECORD_BYTES + ENTRIES);
+    }
+
+    /**
+     * Type of the road on a cell, or null off-road.
+     */
+    public Road.RoadType getRoadType(int x, int y) {
+        int type = cells.get(cell(x, y) * RECORD_BYTES + ROAD_TYPE);
+        return (type > 0) ? ROAD_TYPES[type - 1] : null;
+    }
+
+    /**
+     * Direction of the road on a cell, or null off-road.
+     */
+    public Road.Direction getRoadDirection(int x, int y) {
+        int at = cell(x, y) * RECORD_BYTES;
+        return (cells.get(at + ROAD_TYPE) > 0) ? ROAD_DIRECTIONS[cells.get(at + ROAD_DIRECTION)] : null;
+    }
+
+    /**
+     * A Road object for the cell, for display; null off-road.
+     */
+    public Road createRoad(int x, int y) {
+        Road.RoadType type = getRoadType(x, y);
+        return (type != null) ? new Road(type, getRoadDirection(x, y)) : null;
+    }
+
+    /**
+     * Count the road cells.
+     */
+    public int countRoads() {
+        int count = 0;
+        for (int cell = 0; cell < width * height; cell++) {
+            if (getEntries(cell) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //----------------------------------------------------------------
+    // Lights and occupants
+    //----------------------------------------------------------------
+
+    /**
+     * Stand a traffic light with the given id on a cell. Writes nothing if the
+     * cell already has that light, so re-registering a loaded map's lights
+     * keeps the records mapped from the file.
+     */
+    public void setLight(int x, int y, int lightId) {
+        int cell = cell(x, y);
+        if (cells.getInt(cell * RECORD_BYTES + LIGHT) != lightId + 1) {
+            writableCells().putInt(cell * RECORD_BYTES + LIGHT, lightId + 1);
+        }
+        if (lightId >= lightCells.length) {
+            lightCells = Arrays.copyOf(lightCells, Math.max(lightId + 1, 2 * lightCells.length));
+        }
+        lightCells[lightId] = cell;
+        lightCount = Math.max(lightCount, lightId + 1);
+    }
+
+    /**
+     * Id of the traffic light on a cell, or -1 if there is none.
+     */
+    public int getLight(int x, int y) {
+        return cells.getInt(cell(x, y) * RECORD_BYTES + LIGHT) - 1;
+    }
+
+    public int getLightCount() {
+        return lightCount;
+    }
+
+    /**
+     * Cell id of a light.
+     */
+    public int getLightCell(int lightId) {
+        return lightCells[lightId];
+    }
+
+    /**
+     * Record the bin or depot occupying a cell.
+     */
+    public void setOccupant(int x, int y, byte kind, int id) {
+        int occupant = (kind == OCCUPANT_BIN) ? id + 1 : (kind == OCCUPANT_DEPOT) ? -(id + 1) : 0;
+        occupants.putInt(cell(x, y) * 4, occupant);
+    }
+
+    /**
+     * Id of the bin on a cell, or -1 if there is none.
+     */
+    public int getBin(int x, int y) {
+        int occupant = occupants.getInt(cell(x, y) * 4);
+        return (occupant > 0) ? occupant - 1 : -1;
+    }
+
+    /**
+     * Id of the depot on a cell, or -1 if there is none.
+     */
+    public int getDepot(int x, int y) {
+        int occupant = occupants.getInt(cell(x, y) * 4);
+        return (occupant < 0) ? -occupant - 1 : -1;
+    }
+
+    /**
+     * The records, copied off a read-only file mapping into a direct buffer the
+     * first time a loaded map's road or light changes.
+     */
+    private ByteBuffer writableCells() {
+        if (cells.isReadOnly()) {
+            ByteBuffer copy = ByteBuffer.allocateDirect(cells.capacity()).order(ByteOrder.BIG_ENDIAN);
+            copy.put(cells.duplicate().clear());
+            cells = copy;
+        }
+        return cells;
+    }
+
+    /**
+     * Cell id of a position; coordinates wrap around like the grid.
+     */
+    public int cell(int x, int y) {
+        return Math.floorMod(y, height) * width + Math.floorMod(x, width);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
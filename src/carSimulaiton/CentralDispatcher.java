@@ -0,0 +1,198 @@
+package carSimulaiton;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import repast.simphony.space.grid.Grid;
+import repast.simphony.space.grid.GridPoint;
+
+/**
+ * Central bin dispatch, used by the kernel under DispatchPolicy.CENTRAL and
+ * DispatchPolicy.PREDICTIVE.
+ *
+ * Once per tick, before the cars move, the open bins above the dispatch
+ * threshold are considered from fullest to emptiest and each handed to the free
+ * truck that can take its contents and would finish it soonest, counting its
+ * speed and collection time. Between equally quick trucks the one left with the
+ * least spare capacity wins, keeping the big trucks free for the big bins.
+ * When no free truck has room for a bin, a truck left free for PARTIAL_AFTER
+ * ticks is sent to take what it can of the fullest such bin, so partly loaded
+ * trucks do not sit idle for good beside bins none of them can take whole.
+ * Unlike greedy targeting, the dispatcher sees every bin's fill sensor, not just
+ * the bins trucks have driven past: fill levels are those of the fill
+ * forecaster's latest readings, which fall due as a bin crosses the threshold.
+ *
+ * Under PREDICTIVE the candidates are instead the task coordinator's urgent
+ * open bins (full, above 70% or forecast to overflow soon), most urgent and
+ * then soonest to overflow first.
+ *
+ * Either way the candidates are read off one of the coordinator's heaps, at
+ * most CANDIDATES_PER_TRUCK per free truck, so a tick costs no scan of the bins.
+ */
+public class CentralDispatcher {
+    // Bins below this fill percentage are left alone
+    static final double DISPATCH_THRESHOLD = 30.0;
+
+    // Bins considered per free truck each tick; the rest wait for a later tick
+    private static final int CANDIDATES_PER_TRUCK = 4;
+
+    // Ticks a truck waits free before it takes part of a bin too big for it
+    private static final long PARTIAL_AFTER = 60;
+
+    private final Grid<Object> grid;
+
+    // Take candidates from the coordinator's urgency heap (PREDICTIVE) rather than by fill level
+    private boolean predictive = false;
+
+    // Scratch lists reused every tick
+    private final List<Car> freeCars = new ArrayList<>();
+    private final List<Car> waitingCars = new ArrayList<>();
+    private final List<GarbageBin> candidates = new ArrayList<>();
+    private int[] candidateIds = new int[64];
+    private GarbageBin[] binsById = new GarbageBin[0];
+    private int indexedBins = -1;
+
+    public CentralDispatcher(Grid<Object> grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Pick candidate bins by urgency and forecast overflow instead of current fill.
+     */
+    public void setPredictive(boolean predictive) {
+        this.predictive = predictive;
+    }
+
+    /**
+     * Assign free trucks to the bins that need them most.
+     *
+     * @param cars All trucks of the run
+     * @param bins All bins of the run
+     * @param coordinator The run's task coordinator
+     * @param fields Road distance fields of the run
+     */
+    public void dispatch(List<Car> cars, List<GarbageBin> bins, TaskCoordinator coordinator,
+                         DistanceFieldCache fields) {
+        long tick = coordinator.getCurrentTick();
+        freeCars.clear();
+        waitingCars.clear();
+        double largest = 0;
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = cars.get(i);
+            if (car.isAvailableForDispatch()) {
+                freeCars.add(car);
+                largest = Math.max(largest, car.getCapacity());
+                if (car.noteFree(tick) >= PARTIAL_AFTER) {
+                    waitingCars.add(car);
+                }
+            }
+        }
+        if (freeCars.isEmpty()) {
+            return;
+        }
+
+        addCandidates(bins, coordinator, largest);
+
+        // Fullest candidate no free truck had room for
+        GarbageBin skipped = null;
+
+        for (int i = 0; i < candidates.size() && !freeCars.isEmpty(); i++) {
+            GarbageBin bin = candidates.get(i);
+            if (!anyCanTake(bin)) {
+                // Skip the field lookup (a search on a cache miss) for a bin no free truck can empty
+                if (skipped == null) {
+                    skipped = bin;
+                }
+                continue;
+            }
+            GridPoint binLocation = grid.getLocation(bin);
+            DistanceField field = fields.get(binLocation.getX(), binLocation.getY());
+
+            int nearest = -1;
+            int bestTicks = Integer.MAX_VALUE;
+            double bestSpare = Double.MAX_VALUE;
+            for (int c = 0; c < freeCars.size(); c++) {
+                Car car = freeCars.get(c);
+                double spare = car.getCapacity() - car.getCurrentLoad() - bin.getCurrentFill();
+                if (spare < 0) {
+                    continue;
+                }
+                GridPoint carLocation = grid.getLocation(car);
+                int distance = field.distance(carLocation.getX(), carLocation.getY());
+                if (distance == DistanceField.UNREACHABLE) {
+                    continue;
+                }
+                VehicleClass vehicleClass = car.getVehicleClass();
+                int ticks = (distance + vehicleClass.getSpeed() - 1) / vehicleClass.getSpeed() +
+                            vehicleClass.getCollectionTicks();
+                if (ticks < bestTicks || (ticks == bestTicks && spare < bestSpare)) {
+                    bestTicks = ticks;
+                    bestSpare = spare;
+                    nearest = c;
+                }
+            }
+
+            if (nearest >= 0 && freeCars.get(nearest).dispatchTo(bin, binLocation)) {
+                // Swap-remove keeps this O(1)
+                freeCars.set(nearest, freeCars.get(freeCars.size() - 1));
+                freeCars.remove(freeCars.size() - 1);
+            }
+        }
+
+        for (int c = 0; skipped != null && c < waitingCars.size(); c++) {
+            if (waitingCars.get(c).dispatchTo(skipped, grid.getLocation(skipped))) {
+                break;
+            }
+        }
+    }
+
+    private boolean anyCanTake(GarbageBin bin) {
+        for (int c = 0; c < freeCars.size(); c++) {
+            Car car = freeCars.get(c);
+            if (car.getCapacity() - car.getCurrentLoad() - bin.getCurrentFill() >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add the coordinator's open bins that need a truck and that the largest
+     * free truck could take once emptied, in the order they should get one.
+     */
+    private void addCandidates(List<GarbageBin> bins, TaskCoordinator coordinator, double largest) {
+        if (indexedBins != bins.size()) {
+            indexBins(bins);
+        }
+        candidates.clear();
+        int limit = CANDIDATES_PER_TRUCK * freeCars.size();
+        int count = predictive
+                    ? coordinator.getUrgentBins(TaskCoordinator.URGENCY_SOON, largest, candidateIds, limit)
+                    : coordinator.getFullestBins(DISPATCH_THRESHOLD / 100.0, largest, candidateIds, limit);
+        for (int i = 0; i < count; i++) {
+            int binId = candidateIds[i];
+            GarbageBin bin = (binId < binsById.length) ? binsById[binId] : null;
+            if (bin != null && isFree(bin, coordinator)) {
+                candidates.add(bin);
+            }
+        }
+    }
+
+    private void indexBins(List<GarbageBin> bins) {
+        int maxId = 0;
+        for (int i = 0; i < bins.size(); i++) {
+            maxId = Math.max(maxId, bins.get(i).getId());
+        }
+        binsById = new GarbageBin[maxId + 1];
+        for (int i = 0; i < bins.size(); i++) {
+            binsById[bins.get(i).getId()] = bins.get(i);
+        }
+        candidateIds = new int[Math.max(1, bins.size())];
+        indexedBins = bins.size();
+    }
+
+    private static boolean isFree(GarbageBin bin, TaskCoordinator coordinator) {
+        return !bin.isBeingServiced() && coordinator.isBinAvailable(bin.getId()) &&
+               !coordinator.wasRecentlyEmptied(bin.getId());
+    }
+}
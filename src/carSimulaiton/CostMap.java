@@ -0,0 +1,131 @@
+package carSimulaiton;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Measured step cost per tile of the grid, used to rebalance partitions.
+ *
+ * The grid is divided into square tiles of tileSize cells (the last row and
+ * column may be partial). The kernel adds the time spent stepping each truck to
+ * the tile it started from; a worker ships its non-zero tiles to the
+ * coordinating process once per balancing epoch. Rectangle sums are answered
+ * from a prefix-sum table built by prepare().
+ */
+public class CostMap {
+    private final int gridWidth;
+    private final int gridHeight;
+    private final int tileSize;
+    private final int tilesX;
+    private final int tilesY;
+    private final long[] costs;
+
+    // Prefix sums over tiles, (tilesX + 1) x (tilesY + 1); valid after prepare()
+    private final long[] sums;
+
+    public CostMap(int gridWidth, int gridHeight, int tileSize) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.tileSize = tileSize;
+        this.tilesX = (gridWidth + tileSize - 1) / tileSize;
+        this.tilesY = (gridHeight + tileSize - 1) / tileSize;
+        this.costs = new long[tilesX * tilesY];
+        this.sums = new long[(tilesX + 1) * (tilesY + 1)];
+    }
+
+    /**
+     * Charge cost to the tile holding a cell.
+     */
+    public void add(int x, int y, long nanos) {
+        costs[(y / tileSize) * tilesX + x / tileSize] += nanos;
+    }
+
+    public void clear() {
+        Arrays.fill(costs, 0);
+    }
+
+    /**
+     * Build the prefix sums; call after the last add() and before cost().
+     */
+    public void prepare() {
+        int stride = tilesX + 1;
+        for (int ty = 0; ty < tilesY; ty++) {
+            long row = 0;
+            for (int tx = 0; tx < tilesX; tx++) {
+                row += costs[ty * tilesX + tx];
+                sums[(ty + 1) * stride + tx + 1] = sums[ty * stride + tx + 1] + row;
+            }
+        }
+    }
+
+    /**
+     * Total cost of the tiles [tx0, tx1) x [ty0, ty1), from the last prepare().
+     */
+    public long cost(int tx0, int ty0, int tx1, int ty1) {
+        int stride = tilesX + 1;
+        return sums[ty1 * stride + tx1] - sums[ty0 * stride + tx1] - sums[ty1 * stride + tx0] + sums[ty0 * stride + tx0];
+    }
+
+    /**
+     * Total cost of the whole grid, from the last prepare().
+     */
+    public long total() {
+        return cost(0, 0, tilesX, tilesY);
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    public int getGridWidth() {
+        return gridWidth;
+    }
+
+    public int getGridHeight() {
+        return gridHeight;
+    }
+
+    //----------------------------------------------------------------
+    // Wire format: non-zero tiles only
+    //----------------------------------------------------------------
+
+    public void write(DataOutput out) throws IOException {
+        int count = 0;
+        for (long cost : costs) {
+            if (cost != 0) {
+                count++;
+            }
+        }
+        out.writeInt(count);
+        for (int i = 0; i < costs.length; i++) {
+            if (costs[i] != 0) {
+                out.writeInt(i);
+                out.writeLong(costs[i]);
+            }
+        }
+    }
+
+    /**
+     * Add tiles written by write() to this map.
+     */
+    public void readAndAdd(DataInput in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int index = in.readInt();
+            costs[index] += in.readLong();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package carSimulaiton;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import repast.simphony.space.grid.Grid;
+import repast.simphony.space.grid.GridPoint;
+
+/**
+ * Resolves gridlock between cars using a per-tick wait-for graph.
+ *
+ * Every car that fails to move because another car occupies the cell it wants
+ * to enter records a single edge (waiter -> blocker). At the end of the tick
+ * the graph is scanned for cycles; since each car waits on at most one other
+ * car the scan is linear in the number of edges. Exactly one car per cycle is
+ * chosen (lowest id, then lowest cell) to yield on the next tick, while the
+ * remaining cars in the cycle simply wait. Cars held up outside any cycle (in a
+ * queue behind a truck that is collecting, say) keep the old fallback: once
+ * they have waited Car.MAX_TURNS_WITHOUT_MOVE steps they yield as well.
+ */
+public class DeadlockResolver {
+    // Scan states: on the current path, done, done and part of a cycle
+    private static final int ON_PATH = 1;
+    private static final int DONE = 2;
+    private static final int IN_CYCLE = 3;
+    
+    // Console line per detected cycle; off by default as it runs every tick
+    private static final boolean TRACE_CYCLES = false;
+    
+    private Grid<Object> grid;
+
+    // Edges recorded during the current tick: waiting car -> blocking car
+    private Map<Car, Car> waitsFor = new IdentityHashMap<>();
+
+    // Cars chosen to yield on the next tick
+    private Map<Car, Boolean> victims = new IdentityHashMap<>();
+
+    // Scan state reused between ticks; cars not in it are unvisited
+    private Map<Car, Integer> visitState = new IdentityHashMap<>();
+    private List<Car> path = new ArrayList<>();
+
+    // Statistics
+    private int cyclesDetected = 0;
+
+    public DeadlockResolver(Grid<Object> grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Record that a car could not move because another car holds the cell it wants.
+     *
+     * @param waiter The blocked car
+     * @param blocker The car occupying the wanted cell
+     */
+    public void recordWait(Car waiter, Car blocker) {
+        if (waiter != blocker) {
+            waitsFor.put(waiter, blocker);
+        }
+    }
+
+    /**
+     * Check whether a car was chosen to break a cycle, consuming the decision.
+     *
+     * @param car The car about to move
+     * @return true if the car should yield this tick
+     */
+    public boolean claimYield(Car car) {
+        return victims.remove(car) != null;
+    }
+
+    /**
+     * Detect wait-for cycles among the cars blocked this tick and pick one victim per cycle.
+     * Called by the SimulationKernel after all cars have stepped.
+     */
+    public void resolve() {
+        victims.clear();
+        visitState.clear();
+
+        for (Car start : waitsFor.keySet()) {
+            if (visitState.containsKey(start)) {
+                continue;
+            }
+
+            // Follow the single outgoing edge until we leave the graph or revisit a car
+            path.clear();
+            Car current = start;
+            while (current != null && !visitState.containsKey(current)) {
+                visitState.put(current, ON_PATH);
+                path.add(current);
+                current = waitsFor.get(current);
+            }
+
+            // Revisiting a car on the current path closes a cycle
+            int cycleStart = path.size();
+            if (current != null && visitState.get(current) == ON_PATH) {
+                cycleStart = path.indexOf(current);
+                chooseVictim(path.subList(cycleStart, path.size()));
+            }
+
+            for (int i = 0; i < path.size(); i++) {
+                visitState.put(path.get(i), (i >= cycleStart) ? IN_CYCLE : DONE);
+            }
+        }
+
+        // Blocked long enough outside a cycle: yield as before the resolver
+        for (Car waiter : waitsFor.keySet()) {
+            if (visitState.get(waiter) != IN_CYCLE && waiter.getTurnsWithoutMove() >= Car.MAX_TURNS_WITHOUT_MOVE) {
+                victims.put(waiter, Boolean.TRUE);
+            }
+        }
+
+        waitsFor.clear();
+    }
+
+    /**
+     * Pick the car that yields for a cycle: lowest id, ties broken by grid position.
+     */
+    private void chooseVictim(List<Car> cycle) {
+        Car victim = null;
+        for (Car car : cycle) {
+            if (victim == null || compareForVictim(car, victim) < 0) {
+                victim = car;
+            }
+        }
+
+        victims.put(victim, Boolean.TRUE);
+        cyclesDetected++;
+        if (TRACE_CYCLES) {
+            System.out.println("DeadlockResolver: cycle of " + cycle.size() + " cars detected, Car " +
+                             victim.getId() + " yields");
+        }
+    }
+
+    private int compareForVictim(Car a, Car b) {
+        if (a.getId() != b.getId()) {
+            return Integer.compare(a.getId(), b.getId());
+        }
+        GridPoint pa = grid.getLocation(a);
+        GridPoint pb = grid.getLocation(b);
+        if (pa.getY() != pb.getY()) {
+            return Integer.compare(pa.getY(), pb.getY());
+        }
+        return Integer.compare(pa.getX(), pb.getX());
+    }
+
+    /**
+     * Cars chosen to yield on the next tick, by id, for snapshots.
+     */
+    List<Car> getPendingYields() {
+        List<Car> yields = new ArrayList<>(victims.keySet());
+        yields.sort(Comparator.comparingInt(Car::getId));
+        return yields;
+    }
+
+    /**
+     * Restore a pending yield decision from a snapshot.
+     */
+    void addPendingYield(Car car) {
+        victims.put(car, Boolean.TRUE);
+    }
+
+    public int getCyclesDetected() {
+        return cyclesDetected;
+    }
+}
@@ -0,0 +1,211 @@
+package carSimulaiton;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Waste generation rates by area type and hour of the week.
+ *
+ * Each area type has a Curve of 168 hourly rates (Monday 00:00 first, in fill
+ * units per tick), constant within the hour. Tick 0 is Monday midnight and
+ * ticksPerHour ticks make an hour. A curve keeps the running total of its
+ * rates, so the waste generated between any two ticks is two lookups, however
+ * far apart they are; bins use that to compute their fill when read instead
+ * of being stepped every tick.
+ */
+public class DemandProfile {
+    public static final int HOURS_PER_DAY = 24;
+    public static final int HOURS_PER_WEEK = 7 * HOURS_PER_DAY;
+    public static final int DEFAULT_TICKS_PER_HOUR = 60;
+
+    // Mean rates per tick of each area type, as the bins have always filled
+    private static final double COMMERCIAL_RATE = 2.0;
+    private static final double RESIDENTIAL_RATE = 1.0;
+    private static final double LOW_DENSITY_RATE = 0.5;
+
+    // Relative demand by hour of day, and by day of week (Monday first)
+    private static final double[] COMMERCIAL_HOURS = {
+        0.2, 0.2, 0.2, 0.2, 0.2, 0.3, 0.5, 0.9, 1.3, 1.6, 1.8, 2.0,
+        2.2, 2.0, 1.8, 1.7, 1.7, 1.6, 1.4, 1.1, 0.8, 0.5, 0.3, 0.2 };
+    private static final double[] COMMERCIAL_DAYS = { 1.0, 1.0, 1.0, 1.0, 1.1, 0.7, 0.3 };
+    private static final double[] RESIDENTIAL_HOURS = {
+        0.3, 0.2, 0.2, 0.2, 0.2, 0.4, 1.0, 1.6, 1.5, 0.9, 0.7, 0.7,
+        0.8, 0.7, 0.7, 0.8, 1.0, 1.4, 1.8, 1.9, 1.6, 1.2, 0.8, 0.5 };
+    private static final double[] RESIDENTIAL_DAYS = { 0.9, 0.9, 0.9, 0.9, 1.0, 1.2, 1.3 };
+    private static final double[] LOW_DENSITY_HOURS = {
+        0.4, 0.3, 0.3, 0.3, 0.3, 0.4, 0.7, 1.0, 1.1, 1.1, 1.1, 1.2,
+        1.2, 1.1, 1.1, 1.1, 1.2, 1.3, 1.3, 1.2, 1.0, 0.8, 0.6, 0.5 };
+    private static final double[] LOW_DENSITY_DAYS = { 1.0, 1.0, 1.0, 1.0, 1.0, 1.1, 1.1 };
+    
+    private static final GarbageBin.AreaType[] AREA_TYPES = GarbageBin.AreaType.values();
+
+    private final int ticksPerHour;
+
+    // Curves by area type ordinal, null where a type has none
+    private final Curve[] curves = new Curve[AREA_TYPES.length];
+
+    public DemandProfile(int ticksPerHour) {
+        if (ticksPerHour < 1) {
+            throw new IllegalArgumentException("An hour needs at least one tick");
+        }
+        this.ticksPerHour = ticksPerHour;
+    }
+
+    /**
+     * The same rate for every hour: commercial 2.0, residential 1.0 and low
+     * density 0.5 units per tick.
+     */
+    public static DemandProfile flat() {
+        DemandProfile profile = new DemandProfile(DEFAULT_TICKS_PER_HOUR);
+        profile.setRates(GarbageBin.AreaType.COMMERCIAL, new double[] { COMMERCIAL_RATE });
+        profile.setRates(GarbageBin.AreaType.RESIDENTIAL, new double[] { RESIDENTIAL_RATE });
+        profile.setRates(GarbageBin.AreaType.LOW_DENSITY, new double[] { LOW_DENSITY_RATE });
+        return profile;
+    }
+
+    /**
+     * Working-week demand with the flat profile's weekly means: commercial
+     * areas peak around midday on weekdays and are quiet at weekends,
+     * residential areas peak mornings and evenings and most at weekends, low
+     * density areas follow daylight.
+     */
+    public static DemandProfile weekly(int ticksPerHour) {
+        DemandProfile profile = new DemandProfile(ticksPerHour);
+        profile.setRates(GarbageBin.AreaType.COMMERCIAL, shape(COMMERCIAL_RATE, COMMERCIAL_HOURS, COMMERCIAL_DAYS));
+        profile.setRates(GarbageBin.AreaType.RESIDENTIAL, shape(RESIDENTIAL_RATE, RESIDENTIAL_HOURS, RESIDENTIAL_DAYS));
+        profile.setRates(GarbageBin.AreaType.LOW_DENSITY, shape(LOW_DENSITY_RATE, LOW_DENSITY_HOURS, LOW_DENSITY_DAYS));
+        return profile;
+    }
+
+    /**
+     * Hourly rates for a week whose mean is meanRate, shaped by hour and day.
+     */
+    private static double[] shape(double meanRate, double[] hours, double[] days) {
+        double[] rates = new double[HOURS_PER_WEEK];
+        double total = 0;
+        for (int hour = 0; hour < HOURS_PER_WEEK; hour++) {
+            rates[hour] = hours[hour % HOURS_PER_DAY] * days[hour / HOURS_PER_DAY];
+            total += rates[hour];
+        }
+        for (int hour = 0; hour < HOURS_PER_WEEK; hour++) {
+            rates[hour] *= meanRate * HOURS_PER_WEEK / total;
+        }
+        return rates;
+    }
+
+    /**
+     * Set an area type's rates in units per tick: one value for every hour,
+     * 24 repeated each day, or 168 for the whole week.
+     */
+    public void setRates(GarbageBin.AreaType areaType, double[] rates) {
+        double[] week = new double[HOURS_PER_WEEK];
+        if (rates.length != 1 && rates.length != HOURS_PER_DAY && rates.length != HOURS_PER_WEEK) {
+            throw new IllegalArgumentException("Need 1, 24 or 168 rates, got " + rates.length);
+        }
+        for (int hour = 0; hour < HOURS_PER_WEEK; hour++) {
+            week[hour] = rates[hour % rates.length];
+            if (week[hour] < 0) {
+                throw new IllegalArgumentException("Negative rate for " + areaType + " at hour " + hour);
+            }
+        }
+        curves[areaType.ordinal()] = new Curve(week, ticksPerHour);
+    }
+
+    /**
+     * Curve of an area type; types without rates fill like low density areas.
+     */
+    public Curve getCurve(GarbageBin.AreaType areaType) {
+        Curve curve = curves[areaType.ordinal()];
+        if (curve == null) {
+            curve = curves[GarbageBin.AreaType.LOW_DENSITY.ordinal()];
+        }
+        return (curve != null) ? curve : new Curve(new double[HOURS_PER_WEEK], ticksPerHour);
+    }
+
+    public int getTicksPerHour() {
+        return ticksPerHour;
+    }
+
+    /**
+     * Hourly rates of one area type across a week, with their running total.
+     */
+    public static class Curve {
+        private final double[] rates;
+        private final int ticksPerHour;
+
+        // Waste generated from the start of the week to the start of each hour
+        private final double[] before;
+        private final double weekTotal;
+
+        Curve(double[] rates, int ticksPerHour) {
+            this.rates = rates;
+            this.ticksPerHour = ticksPerHour;
+            this.before = new double[HOURS_PER_WEEK];
+            double total = 0;
+            for (int hour = 0; hour < HOURS_PER_WEEK; hour++) {
+                before[hour] = total;
+                total += rates[hour] * ticksPerHour;
+            }
+            this.weekTotal = total;
+        }
+
+        /**
+         * Rate per tick during a tick.
+         */
+        public double rateAt(long tick) {
+            return rates[(int) ((tick / ticksPerHour) % HOURS_PER_WEEK)];
+        }
+
+        /**
+         * Waste generated by ticks from..to-1.
+         */
+        public double between(long from, long to) {
+            return cumulative(to) - cumulative(from);
+        }
+
+        private double cumulative(long tick) {
+            long hours = tick / ticksPerHour;
+            int hour = (int) (hours % HOURS_PER_WEEK);
+            return (hours / HOURS_PER_WEEK) * weekTotal + before[hour] +
+                   (tick - hours * ticksPerHour) * rates[hour];
+        }
+    }
+
+    //----------------------------------------------------------------
+    // Snapshot support
+    //----------------------------------------------------------------
+
+    void writeState(DataOutput out) throws IOException {
+        out.writeInt(ticksPerHour);
+        int count = 0;
+        for (Curve curve : curves) {
+            if (curve != null) {
+                count++;
+            }
+        }
+        out.writeInt(count);
+        for (int type = 0; type < curves.length; type++) {
+            if (curves[type] != null) {
+                out.writeByte(type);
+                for (double rate : curves[type].rates) {
+                    out.writeDouble(rate);
+                }
+            }
+        }
+    }
+
+    static DemandProfile readState(DataInput in) throws IOException {
+        DemandProfile profile = new DemandProfile(in.readInt());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            GarbageBin.AreaType areaType = AREA_TYPES[in.readByte()];
+            double[] rates = new double[HOURS_PER_WEEK];
+            for (int hour = 0; hour < HOURS_PER_WEEK; hour++) {
+                rates[hour] = in.readDouble();
+            }
+            profile.setRates(areaType, rates);
+        }
+        return profile;
+    }
+}
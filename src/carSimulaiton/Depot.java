@@ -0,0 +1,201 @@
+package carSimulaiton;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A depot or transfer station where trucks unload.
+ *
+ * A depot sits on an off-road cell beside a road; trucks unload from the road
+ * cells next to it. It has a fixed number of bays, each taking unloadTicks to
+ * empty a truck. Trucks that arrive while every bay is busy wait in a FIFO
+ * queue on the road where they stopped.
+ *
+ * A waiting or unloading truck calls unload() every tick. One that misses a
+ * whole tick has left (it was moved off, handed to another partition or
+ * removed) and loses its place in the queue or its bay.
+ */
+public class Depot {
+    public static final int DEFAULT_BAYS = 2;
+    public static final int DEFAULT_UNLOAD_TICKS = 5;
+
+    private final int id;
+    private final int bays;
+    private final int unloadTicks;
+
+    // Truck in each bay (-1 when free) and the tick its unload completes
+    private final int[] bayCars;
+    private final long[] bayDone;
+
+    // Ids of the trucks waiting for a bay, in arrival order
+    private final ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+    // Last tick each queued or unloading truck called unload()
+    private final Map<Integer, Long> lastCalls = new HashMap<>();
+
+    // Statistics
+    private int unloads = 0;
+    private double unloaded = 0.0;
+
+    /**
+     * @param id Index of the depot in its kernel
+     * @param bays Trucks that can unload at the same time
+     * @param unloadTicks Ticks one unload takes; 0 unloads on arrival
+     */
+    public Depot(int id, int bays, int unloadTicks) {
+        if (bays < 1) {
+            throw new IllegalArgumentException("A depot needs at least one bay");
+        }
+        this.id = id;
+        this.bays = bays;
+        this.unloadTicks = Math.max(0, unloadTicks);
+        this.bayCars = new int[bays];
+        this.bayDone = new long[bays];
+        Arrays.fill(bayCars, -1);
+    }
+
+    /**
+     * Advance a truck waiting at this depot: queue it on first arrival, move it
+     * into a free bay when it reaches the head of the queue, and report when its
+     * unload is done. Call once per tick while the truck is at the depot.
+     *
+     * @return true if the truck's unload completed this tick
+     */
+    public boolean unload(int carId, long tick, double load) {
+        dropDeparted(tick);
+        lastCalls.put(carId, tick);
+        int bay = bayOf(carId);
+        if (bay < 0) {
+            if (!queue.contains(carId)) {
+                queue.addLast(carId);
+            }
+            if (queue.peekFirst() != carId) {
+                return false;
+            }
+            bay = bayOf(-1);
+            if (bay < 0) {
+                return false;
+            }
+            queue.removeFirst();
+            bayCars[bay] = carId;
+            bayDone[bay] = tick + unloadTicks;
+        }
+        if (tick < bayDone[bay]) {
+            return false;
+        }
+        bayCars[bay] = -1;
+        lastCalls.remove(carId);
+        unloads++;
+        unloaded += load;
+        return true;
+    }
+
+    /**
+     * Free the bays and queue places of trucks that did not call unload() last tick.
+     */
+    private void dropDeparted(long tick) {
+        for (int i = 0; i < bays; i++) {
+            if (bayCars[i] >= 0 && lastCalls.get(bayCars[i]) < tick - 1) {
+                lastCalls.remove(bayCars[i]);
+                bayCars[i] = -1;
+            }
+        }
+        for (Iterator<Integer> it = queue.iterator(); it.hasNext(); ) {
+            int carId = it.next();
+            if (lastCalls.get(carId) < tick - 1) {
+                lastCalls.remove(carId);
+                it.remove();
+            }
+        }
+    }
+
+    private int bayOf(int carId) {
+        for (int i = 0; i < bays; i++) {
+            if (bayCars[i] == carId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getBays() {
+        return bays;
+    }
+
+    public int getUnloadTicks() {
+        return unloadTicks;
+    }
+
+    /**
+     * Trucks currently waiting for a bay.
+     */
+    public int getQueueLength() {
+        return queue.size();
+    }
+
+    public int getUnloads() {
+        return unloads;
+    }
+
+    public double getUnloaded() {
+        return unloaded;
+    }
+
+    @Override
+    public String toString() {
+        return "depot";
+    }
+
+    //----------------------------------------------------------------
+    // Snapshot support
+    //----------------------------------------------------------------
+
+    void writeState(DataOutput out) throws IOException {
+        out.writeInt(id);
+        out.writeInt(bays);
+        out.writeInt(unloadTicks);
+        for (int i = 0; i < bays; i++) {
+            out.writeInt(bayCars[i]);
+            out.writeLong(bayDone[i]);
+            out.writeLong(bayCars[i] >= 0 ? lastCalls.get(bayCars[i]) : 0);
+        }
+        out.writeInt(queue.size());
+        for (int carId : queue) {
+            out.writeInt(carId);
+            out.writeLong(lastCalls.get(carId));
+        }
+        out.writeInt(unloads);
+        out.writeDouble(unloaded);
+    }
+
+    static Depot readState(DataInput in) throws IOException {
+        Depot depot = new Depot(in.readInt(), in.readInt(), in.readInt());
+        for (int i = 0; i < depot.bays; i++) {
+            depot.bayCars[i] = in.readInt();
+            depot.bayDone[i] = in.readLong();
+            long lastCall = in.readLong();
+            if (depot.bayCars[i] >= 0) {
+                depot.lastCalls.put(depot.bayCars[i], lastCall);
+            }
+        }
+        int queued = in.readInt();
+        for (int i = 0; i < queued; i++) {
+            int carId = in.readInt();
+            depot.queue.addLast(carId);
+            depot.lastCalls.put(carId, in.readLong());
+        }
+        depot.unloads = in.readInt();
+        depot.unloaded = in.readDouble();
+        return depot;
+    }
+}
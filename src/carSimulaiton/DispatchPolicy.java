@@ -0,0 +1,15 @@
+package carSimulaiton;
+
+/**
+ * How trucks get their next bin.
+ */
+public enum DispatchPolicy {
+    /** Each truck scores the bins it has seen and claims the best free one. */
+    GREEDY,
+
+    /** A central dispatcher with a view of all bins sends the nearest free truck to the fullest bins. */
+    CENTRAL,
+
+    /** Like CENTRAL, but serves the task coordinator's most urgent bins first, by forecast overflow. */
+    PREDICTIVE
+}
@@ -0,0 +1,132 @@
+package carSimulaiton;
+
+import java.util.Arrays;
+
+/**
+ * Driving distance from every road cell to the nearest of a set of goal cells.
+ *
+ * Built by one breadth-first search over the road network run backwards from
+ * all goals at once, so with several groups of goals (e.g. depots) each cell
+ * also records which group is nearest. After that a lookup is an array read.
+ * Distances are in steps and stored as shorts; cells that cannot reach a goal,
+ * including all off-road cells, read UNREACHABLE.
+ */
+public class DistanceField {
+    public static final int UNREACHABLE = Short.MAX_VALUE;
+
+    private static final Car.Direction[] DIRECTIONS = Car.Direction.values();
+
+    private final RoadNetwork network;
+    private final short[] distances;
+
+    // Index of the nearest goal group per cell, -1 where unreachable; null with one group
+    private final short[] nearest;
+
+    /**
+     * @param network Road cells to search
+     * @param goals Cell ids (RoadNetwork.cell) of the goals, one array per group
+     */
+    public DistanceField(RoadNetwork network, int[][] goals) {
+        if (goals.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many goal groups: " + goals.length);
+        }
+        this.network = network;
+        int cells = network.getWidth() * network.getHeight();
+        this.distances = new short[cells];
+        this.nearest = (goals.length > 1) ? new short[cells] : null;
+        Arrays.fill(distances, (short) UNREACHABLE);
+        if (nearest != null) {
+            Arrays.fill(nearest, (short) -1);
+        }
+
+        int[] queue = new int[cells];
+        int head = 0;
+        int tail = 0;
+        for (int group = 0; group < goals.length; group++) {
+            for (int cell : goals[group]) {
+                if (distances[cell] == UNREACHABLE) {
+                    distances[cell] = 0;
+                    if (nearest != null) {
+                        nearest[cell] = (short) group;
+                    }
+                    queue[tail++] = cell;
+                }
+            }
+        }
+
+        int width = network.getWidth();
+        while (head < tail) {
+            int cell = queue[head++];
+            int x = cell % width;
+            int y = cell / width;
+            int next = distances[cell] + 1;
+            if (next >= UNREACHABLE) {
+                continue;
+            }
+            // A truck at the previous cell reaches this one by driving in direction d
+            for (Car.Direction direction : DIRECTIONS) {
+                if (!network.canEnter(x, y, direction)) {
+                    continue;
+                }
+                int px = x - direction.getDx();
+                int py = y - direction.getDy();
+                int previous = network.cell(px, py);
+                if (distances[previous] == UNREACHABLE && network.isRoad(px, py)) {
+                    distances[previous] = (short) next;
+                    if (nearest != null) {
+                        nearest[previous] = nearest[cell];
+                    }
+                    queue[tail++] = previous;
+                }
+            }
+        }
+    }
+
+    /**
+     * Steps from a cell to the nearest goal, or UNREACHABLE.
+     */
+    public int distance(int x, int y) {
+        return distances[network.cell(x, y)];
+    }
+
+    /**
+     * Group of the goal nearest to a cell, or -1 if none can be reached.
+     */
+    public int nearest(int x, int y) {
+        if (nearest == null) {
+            return (distance(x, y) != UNREACHABLE) ? 0 : -1;
+        }
+        return nearest[network.cell(x, y)];
+    }
+
+    /**
+     * Direction of the neighbouring cell that is one step closer to a goal,
+     * ignoring traffic; null at a goal or where no goal can be reached. Ties
+     * go to the first direction in Car.Direction order.
+     */
+    public Car.Direction downhill(int x, int y) {
+        int current = distance(x, y);
+        if (current == 0 || current == UNREACHABLE) {
+            return null;
+        }
+        for (Car.Direction direction : DIRECTIONS) {
+            int nx = x + direction.getDx();
+            int ny = y + direction.getDy();
+            if (network.canEnter(nx, ny, direction) && distance(nx, ny) == current - 1) {
+                return direction;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Bytes held by the field's tables.
+     */
+    public long getMemoryBytes() {
+        return 2L * distances.length + ((nearest != null) ? 2L * nearest.length : 0);
+    }
+
+    public RoadNetwork getNetwork() {
+        return network;
+    }
+}
@@ -0,0 +1,137 @@
+package carSimulaiton;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Road distance fields to single targets (bins, depots), built on first use.
+ *
+ * A target's field has the road cells beside it as goals, so a truck has
+ * reached the target when its cell reads 0, the same as being next to it.
+ * Fields are kept in least-recently-used order and evicted once their tables
+ * exceed the memory budget; an evicted field is simply searched again when it
+ * is next needed. Targets never move, so a field stays valid for the whole run.
+ *
+ * A field costs two bytes per cell (8 MB at 2000x2000), so a fixed budget that
+ * suits a small grid makes a large one search a field on almost every lookup.
+ * The kernel sizes the budget with budgetFor() unless it is given one.
+ */
+public class DistanceFieldCache {
+    public static final long DEFAULT_BUDGET = 16L << 20; // Bytes
+
+    // Largest share of the heap budgetFor() gives the fields
+    private static final int HEAP_SHARE_DIVISOR = 4;
+
+    private final RoadNetwork network;
+    private long budget;
+    private final long fieldBytes;
+
+    // Fields by target cell id, least recently used first
+    private final LinkedHashMap<Integer, DistanceField> fields;
+
+    // Statistics
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param budget Bytes of field tables to keep; at least one field is always kept
+     */
+    public DistanceFieldCache(RoadNetwork network, long budget) {
+        this.network = network;
+        this.budget = budget;
+        this.fieldBytes = 2L * network.getWidth() * network.getHeight();
+        this.fields = new LinkedHashMap<Integer, DistanceField>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, DistanceField> eldest) {
+                if (size() > 1 && size() * fieldBytes > DistanceFieldCache.this.budget) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Budget that keeps one field per target: at least DEFAULT_BUDGET and at
+     * most a quarter of the maximum heap.
+     */
+    public static long budgetFor(RoadNetwork network, int targets) {
+        long wanted = (long) targets * 2L * network.getWidth() * network.getHeight();
+        long heapShare = Runtime.getRuntime().maxMemory() / HEAP_SHARE_DIVISOR;
+        return Math.max(DEFAULT_BUDGET, Math.min(wanted, heapShare));
+    }
+
+    /**
+     * Change the budget; fields over a smaller budget go with the next miss.
+     */
+    public void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Field leading to the target at a cell.
+     */
+    public DistanceField get(int targetX, int targetY) {
+        int key = network.cell(targetX, targetY);
+        DistanceField field = fields.get(key);
+        if (field != null) {
+            hits++;
+            return field;
+        }
+        misses++;
+        field = new DistanceField(network, new int[][] { goalsBeside(targetX, targetY) });
+        fields.put(key, field);
+        return field;
+    }
+
+    /**
+     * Steps from a cell to the target, or DistanceField.UNREACHABLE.
+     */
+    public int distance(int targetX, int targetY, int fromX, int fromY) {
+        return get(targetX, targetY).distance(fromX, fromY);
+    }
+
+    /**
+     * Road cells a truck can serve a target from: the target's own cell and its
+     * four neighbours, where they are roads.
+     */
+    public int[] goalsBeside(int x, int y) {
+        int[] cells = new int[5];
+        int count = 0;
+        if (network.isRoad(x, y)) {
+            cells[count++] = network.cell(x, y);
+        }
+        for (Car.Direction direction : Car.Direction.values()) {
+            int nx = x + direction.getDx();
+            int ny = y + direction.getDy();
+            if (network.isRoad(nx, ny)) {
+                cells[count++] = network.cell(nx, ny);
+            }
+        }
+        int[] goals = new int[count];
+        System.arraycopy(cells, 0, goals, 0, count);
+        return goals;
+    }
+
+    public int size() {
+        return fields.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+}
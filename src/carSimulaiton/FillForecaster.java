@@ -0,0 +1,288 @@
+package carSimulaiton;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import repast.simphony.space.grid.GridPoint;
+
+/**
+ * Learns each bin's fill rate from its observed fill levels and predicts when
+ * it will overflow.
+ *
+ * Bins report their fill like a fill sensor would, on three occasions: when a
+ * truck drives past (at most once per SAMPLE_INTERVAL ticks), right after a
+ * truck empties it, and when its own forecast says it is due. A bin is due when
+ * it should cross a fill level something acts on (the dispatch threshold, 70%,
+ * full, overflowing) or come within the urgent horizon of overflowing, and at
+ * least once per MAX_READING_INTERVAL ticks so a changing fill rate is noticed;
+ * a bin whose rate is still unknown is read again after SAMPLE_INTERVAL ticks.
+ * The due ticks are kept in a heap, so a tick only touches the bins due then.
+ *
+ * The growth between two readings is one rate sample, folded into an
+ * exponential moving average per bin; readings across an emptying, while the
+ * bin is full or while it is being serviced are not samples and only restart
+ * the measurement. Every reading passes the bin's fill and predicted overflow
+ * tick on to the run's TaskCoordinator, which ranks the bins by urgency.
+ *
+ * The number of full bins and the total fill percentage of the latest readings
+ * are kept up to date as readings come in, for the run's metrics.
+ */
+public class FillForecaster {
+    public static final int SAMPLE_INTERVAL = 10; // Ticks between readings of a bin while learning or driven past
+    static final int MAX_READING_INTERVAL = 60; // Ticks; an hour of the default demand profile
+
+    // Fill levels, as fractions of capacity, at which a bin's reading falls due
+    private static final double[] LEVELS = {
+        CentralDispatcher.DISPATCH_THRESHOLD / 100.0, 0.7, GarbageBin.FULL_FRACTION, 1.0
+    };
+
+    // Weight of the newest rate sample in the moving average
+    private static final double ALPHA = 0.2;
+
+    // Bins by id, then per bin id: the last reading and its tick (-1 before the
+    // first), and the learned rate in units per tick (NaN until the first sample)
+    private GarbageBin[] bins = new GarbageBin[16];
+    private long[] lastTicks = new long[16];
+    private double[] lastFills = new double[16];
+    private double[] rates = new double[16];
+
+    // Tracked bins by the tick their next reading is due
+    private final IndexedMinHeap due = new IndexedMinHeap(16);
+
+    // Aggregates of the latest readings: bins read, bins full, sum of fill percentages
+    private int binsRead = 0;
+    private int binsFull = 0;
+    private double fillPercentSum = 0;
+
+    // Receives every forecast
+    private final TaskCoordinator coordinator;
+
+    public FillForecaster(TaskCoordinator coordinator) {
+        this.coordinator = coordinator;
+        Arrays.fill(lastTicks, -1);
+        Arrays.fill(rates, Double.NaN);
+    }
+
+    /**
+     * Start forecasting a bin; its first reading is due SAMPLE_INTERVAL ticks on.
+     */
+    public void track(GarbageBin bin, long tick) {
+        int id = bin.getId();
+        if (id >= bins.length) {
+            int length = Math.max(id + 1, bins.length * 2);
+            int oldLength = bins.length;
+            bins = Arrays.copyOf(bins, length);
+            lastTicks = Arrays.copyOf(lastTicks, length);
+            lastFills = Arrays.copyOf(lastFills, length);
+            rates = Arrays.copyOf(rates, length);
+            Arrays.fill(lastTicks, oldLength, length, -1);
+            Arrays.fill(rates, oldLength, length, Double.NaN);
+        }
+        bins[id] = bin;
+        due.put(id, tick + SAMPLE_INTERVAL);
+    }
+
+    /**
+     * Take the readings due by this tick, in bin id order.
+     */
+    public void observeDue(long tick) {
+        while (!due.isEmpty() && due.getKey(due.peek()) <= tick) {
+            int id = due.poll();
+            observe(bins[id], tick);
+        }
+    }
+
+    /**
+     * Take a reading of a bin a truck is driving past, unless it was read
+     * less than SAMPLE_INTERVAL ticks ago.
+     */
+    public void sense(GarbageBin bin, long tick) {
+        int id = bin.getId();
+        if (lastTicks[id] < 0 || tick - lastTicks[id] >= SAMPLE_INTERVAL) {
+            observe(bin, tick);
+        }
+    }
+
+    /**
+     * Take a reading of one bin's fill level, update its forecast and schedule
+     * its next reading.
+     */
+    public void observe(GarbageBin bin, long tick) {
+        int id = bin.getId();
+        if (lastTicks[id] >= 0) {
+            addToAggregates(id, -1);
+        }
+        double fill = bin.getCurrentFill();
+        if (lastTicks[id] >= 0 && tick > lastTicks[id] && fill >= lastFills[id] &&
+            lastFills[id] < bin.getCapacity() && fill < bin.getCapacity() && !bin.isBeingServiced()) {
+            double sample = (fill - lastFills[id]) / (tick - lastTicks[id]);
+            rates[id] = Double.isNaN(rates[id]) ? sample : ALPHA * sample + (1 - ALPHA) * rates[id];
+        }
+        lastTicks[id] = tick;
+        lastFills[id] = fill;
+        addToAggregates(id, 1);
+        due.put(id, nextReading(id, tick));
+        GridPoint location = bin.getLocation();
+        if (location != null) {
+            coordinator.updateUrgency(id, location.getX(), location.getY(), fill, fill / bin.getCapacity(),
+                                      getPredictedOverflow(id));
+        }
+    }
+
+    /**
+     * Tick the next reading of a bin falls due, from its reading at this tick.
+     */
+    private long nextReading(int id, long tick) {
+        double rate = rates[id];
+        if (Double.isNaN(rate)) {
+            return tick + SAMPLE_INTERVAL;
+        }
+        double next = tick + MAX_READING_INTERVAL;
+        double capacity = bins[id].getCapacity();
+        double fill = lastFills[id];
+        if (rate > 0 && fill < capacity) {
+            for (double level : LEVELS) {
+                if (fill < level * capacity) {
+                    next = Math.min(next, tick + (level * capacity - fill) / rate);
+                    break;
+                }
+            }
+            double urgent = tick + (capacity - fill) / rate - TaskCoordinator.URGENT_HORIZON;
+            if (urgent > tick) {
+                next = Math.min(next, urgent);
+            }
+        }
+        return Math.max(tick + 1, (long) Math.ceil(next));
+    }
+
+    /**
+     * Learned fill rate of a bin in units per tick, or NaN if not yet known.
+     */
+    public double getRate(int binId) {
+        return (binId >= 0 && binId < rates.length) ? rates[binId] : Double.NaN;
+    }
+
+    /**
+     * Tick at which a bin is predicted to be full, from its last reading; the
+     * reading's tick if it was full then, infinity if it is not filling.
+     */
+    public double getPredictedOverflow(int binId) {
+        GarbageBin bin = getBin(binId);
+        if (bin == null || lastTicks[binId] < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double remaining = bin.getCapacity() - lastFills[binId];
+        if (remaining <= 0) {
+            return lastTicks[binId];
+        }
+        double rate = rates[binId];
+        if (Double.isNaN(rate) || rate <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return lastTicks[binId] + remaining / rate;
+    }
+
+    public GarbageBin getBin(int binId) {
+        return (binId >= 0 && binId < bins.length) ? bins[binId] : null;
+    }
+
+    /**
+     * Number of bins with at least one reading.
+     */
+    public int getBinsRead() {
+        return binsRead;
+    }
+
+    /**
+     * Bins full (GarbageBin.isFull()) at their latest reading.
+     */
+    public int getBinsFull() {
+        return binsFull;
+    }
+
+    /**
+     * Mean fill percentage of the bins at their latest readings, 0 before any reading.
+     */
+    public double getMeanFillPercentage() {
+        return (binsRead == 0) ? 0 : fillPercentSum / binsRead;
+    }
+
+    /**
+     * Add (sign 1) or remove (sign -1) a bin's latest reading in the aggregates.
+     */
+    private void addToAggregates(int id, int sign) {
+        double capacity = bins[id].getCapacity();
+        binsRead += sign;
+        if (lastFills[id] >= capacity * GarbageBin.FULL_FRACTION) {
+            binsFull += sign;
+        }
+        fillPercentSum += sign * (lastFills[id] / capacity) * 100.0;
+    }
+
+    //----------------------------------------------------------------
+    // Snapshot support
+    //----------------------------------------------------------------
+
+    /**
+     * Write the readings, learned rates and due ticks of the tracked bins, by bin id.
+     */
+    void writeState(DataOutput out) throws IOException {
+        int count = 0;
+        for (int id = 0; id < bins.length; id++) {
+            if (bins[id] != null && lastTicks[id] >= 0) {
+                count++;
+            }
+        }
+        out.writeInt(count);
+        for (int id = 0; id < bins.length; id++) {
+            if (bins[id] != null && lastTicks[id] >= 0) {
+                out.writeInt(id);
+                out.writeLong(lastTicks[id]);
+                out.writeDouble(lastFills[id]);
+                out.writeDouble(rates[id]);
+            }
+        }
+        int scheduled = 0;
+        for (int id = 0; id < bins.length; id++) {
+            if (bins[id] != null && due.contains(id)) {
+                scheduled++;
+            }
+        }
+        out.writeInt(scheduled);
+        for (int id = 0; id < bins.length; id++) {
+            if (bins[id] != null && due.contains(id)) {
+                out.writeInt(id);
+                out.writeLong((long) due.getKey(id));
+            }
+        }
+    }
+
+    /**
+     * Restore state written by writeState(); the bins must be tracked already.
+     * The coordinator restores its own ranking.
+     */
+    void readState(DataInput in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int id = in.readInt();
+            lastTicks[id] = in.readLong();
+            lastFills[id] = in.readDouble();
+            rates[id] = in.readDouble();
+        }
+        due.clear();
+        int scheduled = in.readInt();
+        for (int i = 0; i < scheduled; i++) {
+            due.put(in.readInt(), in.readLong());
+        }
+        binsRead = 0;
+        binsFull = 0;
+        fillPercentSum = 0;
+        for (int id = 0; id < bins.length; id++) {
+            if (bins[id] != null && lastTicks[id] >= 0) {
+                addToAggregates(id, 1);
+            }
+        }
+    }
+}
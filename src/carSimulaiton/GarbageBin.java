@@ -1,89 +1,130 @@
 package carSimulaiton;
 
-import repast.simphony.engine.schedule.ScheduledMethod;
-import repast.simphony.space.grid.Grid;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import repast.simphony.space.grid.GridPoint;
 import repast.simphony.random.RandomHelper;
 
 /**
  * Represents a garbage bin placed along the roads in the car simulation.
  * Adapted for a grid environment with visual representation based on fill level.
+ *
+ * A bin is not stepped: its fill is worked out when read, from the fill it had
+ * at its last anchor (creation, a collection, the start of a service) plus the
+ * waste its area's demand curve generated since, scaled by the bin's own share
+ * of that demand. Reads therefore never change the bin.
+ *
+ * Runs may hold a million bins, so a bin keeps only primitives and references
+ * to state it shares: its area type is an enum, its demand curve is its area's,
+ * and its cell comes from the kernel's grid rather than a grid of its own.
  */
 public class GarbageBin {
-    // Area type constants
-    public static final String AREA_COMMERCIAL = "COMMERCIAL";
-    public static final String AREA_RESIDENTIAL = "RESIDENTIAL";
-    public static final String AREA_LOW_DENSITY = "LOW_DENSITY";
+    /**
+     * Kind of area a bin stands in, which sets how fast it fills.
+     */
+    public enum AreaType {
+        COMMERCIAL,
+        RESIDENTIAL,
+        LOW_DENSITY
+    }
+    
+    private static final AreaType[] AREA_TYPES = AreaType.values();
+    
+    // Fraction of capacity at which a bin counts as full
+    static final double FULL_FRACTION = 0.9;
     
     // Bin properties
     private int id;
     private double capacity;
-    private double currentFill;
-    private String areaType;
-    private Grid<Object> grid;
+    private AreaType areaType;
+    
+    // Fill at the anchor tick; the fill at any later tick follows from the demand
+    private double anchorFill;
+    private long anchorTick = 0;
     
-    // Fill rate per tick based on area type
-    private double fillRate;
+    // Demand of the bin's area, and this bin's share of it (around 1)
+    private DemandProfile.Curve demand = null;
+    private double demandScale;
     
-    // Status
+    // Status; a bin being serviced does not fill
     private boolean beingServiced = false;
     
+    // Kernel whose tick is the bin's clock and whose grid holds the bin; null
+    // keeps the bin at its anchor fill and off the grid
+    private SimulationKernel kernel = null;
+    
     /**
      * Creates a new garbage bin.
      * 
-     * @param grid The simulation grid
      * @param id Unique identifier for the bin
      * @param capacity Maximum capacity of the bin
      * @param areaType Type of area where the bin is located
      */
-    public GarbageBin(Grid<Object> grid, int id, double capacity, String areaType) {
-        this.grid = grid;
+    public GarbageBin(int id, double capacity, AreaType areaType) {
+        this(id, capacity, areaType, new SimulationRandom(RandomHelper.nextInt()));
+    }
+    
+    /**
+     * Creates a new garbage bin drawing from a run's random stream.
+     * 
+     * @param id Unique identifier for the bin
+     * @param capacity Maximum capacity of the bin
+     * @param areaType Type of area where the bin is located
+     * @param random Random stream of the simulation run
+     */
+    public GarbageBin(int id, double capacity, AreaType areaType, SimulationRandom random) {
         this.id = id;
         this.capacity = capacity;
         this.areaType = areaType;
         
         // Start with a random fill level between 0 and 50% of capacity
-        this.currentFill = RandomHelper.nextDoubleFromTo(0, capacity * 0.5);
+        this.anchorFill = random.nextDoubleFromTo(0, capacity * 0.5);
         
-        // Set fill rate based on area type
-        if (AREA_COMMERCIAL.equals(areaType)) {
-            this.fillRate = 2.0; // Commercial areas fill up faster
-        } else if (AREA_RESIDENTIAL.equals(areaType)) {
-            this.fillRate = 1.0; // Residential areas fill at a medium rate
-        } else {
-            this.fillRate = 0.5; // Low density areas fill up slower
-        }
+        // Busier and quieter spots within the same area
+        this.demandScale = random.nextDoubleFromTo(0.8, 1.2);
     }
     
     /**
-     * Simulates garbage accumulation over time.
-     * This method should be called on each tick of the simulation.
+     * Take the bin's clock from a kernel; called when the bin joins it. A bin
+     * joining after tick 0 starts filling then.
      */
-    @ScheduledMethod(start = 1, interval = 1)
-    public void step() {
-        // Don't accumulate garbage while being serviced
-        if (beingServiced) {
-            return;
-        }
-        
-        // Add some randomness to the fill rate
-        double actualFillRate = fillRate * RandomHelper.nextDoubleFromTo(0.8, 1.2);
-        
-        // Increase the current fill level
-        currentFill += actualFillRate;
-        
-        // Cap at maximum capacity
-        if (currentFill > capacity) {
-            currentFill = capacity;
+    void setKernel(SimulationKernel kernel) {
+        this.kernel = kernel;
+        if (anchorTick < kernel.getTick()) {
+            anchorTick = kernel.getTick();
         }
     }
     
+    /**
+     * Fill from now on at the given demand; what was generated so far is kept.
+     */
+    void setDemand(DemandProfile.Curve demand) {
+        anchor();
+        this.demand = demand;
+    }
+    
+    private long now() {
+        return (kernel != null) ? kernel.getTick() : anchorTick;
+    }
+    
+    /**
+     * Move the anchor to the current tick.
+     */
+    private void anchor() {
+        anchorFill = getCurrentFill();
+        anchorTick = Math.max(anchorTick, now());
+    }
+    
     /**
      * Empties the bin (simulating a garbage truck collection).
      * @return The amount of garbage collected
      */
     public double empty() {
-        double collected = currentFill;
-        currentFill = 0;
+        anchor();
+        double collected = anchorFill;
+        anchorFill = 0;
         beingServiced = false;
         return collected;
     }
@@ -94,8 +135,9 @@ public class GarbageBin {
      * @return The actual amount removed
      */
     public double reduceBy(double amount) {
-        double toRemove = Math.min(currentFill, amount);
-        currentFill -= toRemove;
+        anchor();
+        double toRemove = Math.min(anchorFill, amount);
+        anchorFill -= toRemove;
         beingServiced = false;
         return toRemove;
     }
@@ -104,20 +146,21 @@ public class GarbageBin {
      * Returns current fill level as a percentage of capacity.
      */
     public double getFillPercentage() {
-        return (currentFill / capacity) * 100.0;
+        return (getCurrentFill() / capacity) * 100.0;
     }
     
     /**
      * Checks if the bin is full (>= 90% capacity).
      */
     public boolean isFull() {
-        return currentFill >= (capacity * 0.9);
+        return getCurrentFill() >= (capacity * FULL_FRACTION);
     }
     
     /**
      * Mark this bin as being serviced by a collection vehicle.
      */
     public void markAsBeingServiced() {
+        anchor();
         beingServiced = true;
     }
     
@@ -128,6 +171,32 @@ public class GarbageBin {
         return beingServiced;
     }
     
+    /**
+     * Write the bin's state (everything but its grid position) for a snapshot.
+     */
+    void writeState(DataOutput out) throws IOException {
+        out.writeInt(id);
+        out.writeDouble(capacity);
+        out.writeByte(areaType.ordinal());
+        out.writeDouble(anchorFill);
+        out.writeLong(anchorTick);
+        out.writeDouble(demandScale);
+        out.writeBoolean(beingServiced);
+    }
+    
+    /**
+     * Create a bin from state written by writeState(). The caller places it on the
+     * grid and adds it to a kernel, which supplies its demand.
+     */
+    static GarbageBin readState(DataInput in, SimulationRandom random) throws IOException {
+        GarbageBin bin = new GarbageBin(in.readInt(), in.readDouble(), AREA_TYPES[in.readByte()], random);
+        bin.anchorFill = in.readDouble();
+        bin.anchorTick = in.readLong();
+        bin.demandScale = in.readDouble();
+        bin.beingServiced = in.readBoolean();
+        return bin;
+    }
+    
     // Getters and setters
     
     public int getId() {
@@ -138,14 +207,33 @@ public class GarbageBin {
         return capacity;
     }
     
+    /**
+     * Fill at the current tick: the anchor fill plus this bin's share of the
+     * demand since, up to capacity.
+     */
     public double getCurrentFill() {
-        return currentFill;
+        if (beingServiced || demand == null) {
+            return anchorFill;
+        }
+        long now = now();
+        if (now <= anchorTick) {
+            return anchorFill;
+        }
+        return Math.min(capacity, anchorFill + demandScale * demand.between(anchorTick, now));
     }
+
     
-    public String getAreaType() {
+    public AreaType getAreaType() {
         return areaType;
     }
     
+    /**
+     * Cell of the bin, or null if it is not on the kernel's grid.
+     */
+    public GridPoint getLocation() {
+        return (kernel != null) ? kernel.getGrid().getLocation(this) : null;
+    }
+    
     /**
      * Returns a string representation of the bin based on its fill level.
      * This is used by Repast for visualization.
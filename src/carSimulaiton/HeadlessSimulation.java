@@ -0,0 +1,265 @@
+package carSimulaiton;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import repast.simphony.context.Context;
+import repast.simphony.context.DefaultContext;
+import repast.simphony.random.RandomHelper;
+
+/**
+ * Runs the model without the Repast GUI or scheduler, as fast as the kernel allows.
+ *
+ * Usage: HeadlessSimulation [ticks] [size] [bins] [cars] [seed] [--quiet] [--profile]
+ *                           [--metrics file.csv] [--trajectory file.bin]
+ *                           [--restore snapshot] [--snapshot snapshot]
+ *                           [--map file] [--save-map file]
+ *                           [--scenario file] [--save-scenario file]
+ *                           [--depot x,y[,bays,unloadTicks]]...
+ *                           [--fleet class=weight,...] [--continuous]
+ *                           [--dispatch greedy|central|predictive]
+ *                           [--demand flat|weekly[,ticksPerHour]]
+ * Defaults to 1000 ticks of the standard 50x50 scenario. With --quiet the agents'
+ * console output is discarded so the run measures the model rather than the terminal;
+ * --profile reports where the tick time goes; --metrics writes the per-tick KPI
+ * time series to a CSV file and --trajectory records every truck's path.
+ * --restore continues a run saved with --snapshot (e.g. in freezedried_data/)
+ * instead of building a new scenario; the size, bins and cars arguments are then ignored.
+ * --map builds the scenario on the roads and lights of a map file instead of the
+ * generated grid (the size argument is then ignored); --save-map writes the built
+ * scenario's map to a file. --save-scenario compiles the built scenario (map, bins,
+ * depots and cars) to a file that --scenario loads in place of building one; the
+ * size, bins, cars, depot and fleet arguments are then ignored.
+ * Each --depot declares a depot near the given cell; without any, one sits at the centre.
+ * --fleet sets the mix of vehicle classes, e.g. --fleet compactor=1,small_van=3.
+ * --continuous moves trucks along straight runs of road as scheduled arrivals
+ * instead of stepping them cell by cell.
+ * --dispatch sets how trucks get their bins (see DispatchPolicy); greedy by default.
+ * --demand picks the bins' demand profile: constant rates (the default) or a working
+ * week starting Monday midnight, 60 ticks to the hour unless given.
+ */
+public class HeadlessSimulation {
+
+    public static void main(String[] args) throws IOException {
+        long ticks = 1000;
+        int size = 50;
+        int numBins = 5;
+        int numCars = 5;
+        int seed = 1;
+        boolean quiet = false;
+        boolean continuous = false;
+        DispatchPolicy dispatch = null;
+        DemandProfile demand = null;
+        String metricsFile = null;
+        String trajectoryFile = null;
+        String restoreFile = null;
+        String snapshotFile = null;
+        String mapFile = null;
+        String saveMapFile = null;
+        String scenarioFile = null;
+        String saveScenarioFile = null;
+        List<int[]> depots = new ArrayList<>();
+        Map<VehicleClass, Integer> fleetMix = new EnumMap<>(VehicleClass.class);
+
+        int position = 0;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--quiet".equals(arg)) {
+                quiet = true;
+                continue;
+            }
+            if ("--continuous".equals(arg)) {
+                continuous = true;
+                continue;
+            }
+            if ("--dispatch".equals(arg) && i + 1 < args.length) {
+                dispatch = DispatchPolicy.valueOf(args[++i].trim().toUpperCase());
+                continue;
+            }
+            if ("--demand".equals(arg) && i + 1 < args.length) {
+                String[] parts = args[++i].split(",");
+                int ticksPerHour = (parts.length > 1) ? Integer.parseInt(parts[1].trim())
+                                                      : DemandProfile.DEFAULT_TICKS_PER_HOUR;
+                demand = "weekly".equalsIgnoreCase(parts[0].trim()) ? DemandProfile.weekly(ticksPerHour)
+                                                                    : DemandProfile.flat();
+                continue;
+            }
+            if ("--profile".equals(arg)) {
+                PhaseTimers.setEnabled(true);
+                continue;
+            }
+            if ("--metrics".equals(arg) && i + 1 < args.length) {
+                metricsFile = args[++i];
+                continue;
+            }
+            if ("--trajectory".equals(arg) && i + 1 < args.length) {
+                trajectoryFile = args[++i];
+                continue;
+            }
+            if ("--restore".equals(arg) && i + 1 < args.length) {
+                restoreFile = args[++i];
+                continue;
+            }
+            if ("--snapshot".equals(arg) && i + 1 < args.length) {
+                snapshotFile = args[++i];
+                continue;
+            }
+            if ("--map".equals(arg) && i + 1 < args.length) {
+                mapFile = args[++i];
+                continue;
+            }
+            if ("--save-map".equals(arg) && i + 1 < args.length) {
+                saveMapFile = args[++i];
+                continue;
+            }
+            if ("--scenario".equals(arg) && i + 1 < args.length) {
+                scenarioFile = args[++i];
+                continue;
+            }
+            if ("--save-scenario".equals(arg) && i + 1 < args.length) {
+                saveScenarioFile = args[++i];
+                continue;
+            }
+            if ("--depot".equals(arg) && i + 1 < args.length) {
+                String[] parts = args[++i].split(",");
+                int[] depot = { 0, 0, Depot.DEFAULT_BAYS, Depot.DEFAULT_UNLOAD_TICKS };
+                for (int p = 0; p < parts.length && p < depot.length; p++) {
+                    depot[p] = Integer.parseInt(parts[p].trim());
+                }
+                depots.add(depot);
+                continue;
+            }
+            if ("--fleet".equals(arg) && i + 1 < args.length) {
+                for (String part : args[++i].split(",")) {
+                    String[] entry = part.split("=");
+                    fleetMix.put(VehicleClass.valueOf(entry[0].trim().toUpperCase()),
+                                 (entry.length > 1) ? Integer.parseInt(entry[1].trim()) : 1);
+                }
+                continue;
+            }
+            switch (position++) {
+                case 0: ticks = Long.parseLong(arg); break;
+                case 1: size = Integer.parseInt(arg); break;
+                case 2: numBins = Integer.parseInt(arg); break;
+                case 3: numCars = Integer.parseInt(arg); break;
+                case 4: seed = Integer.parseInt(arg); break;
+                default: throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+        }
+
+        PrintStream console = System.out;
+        if (quiet) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        RandomHelper.setSeed(seed);
+        Context<Object> context = new DefaultContext<>();
+        SimulationKernel kernel;
+        if (restoreFile != null) {
+            kernel = SimulationSnapshot.load(restoreFile).restore(context);
+            if (metricsFile != null) {
+                kernel.getMetrics().setOutput(metricsFile);
+            }
+            if (trajectoryFile != null) {
+                kernel.setTrajectoryRecorder(new TrajectoryRecorder(trajectoryFile, kernel.getGrid()));
+            }
+        } else {
+            ScenarioFile scenario = (scenarioFile != null) ? ScenarioFile.load(scenarioFile) : null;
+            CellMap map = (scenario != null) ? scenario.getCellMap()
+                        : (mapFile != null) ? CellMap.load(mapFile) : null;
+            CarSimulationBuilder builder = (map != null)
+                ? new CarSimulationBuilder(map.getWidth(), map.getHeight(), numBins, numCars)
+                : new CarSimulationBuilder(size, size, numBins, numCars);
+            builder.setCellMap(map);
+            builder.setScenario(scenario);
+            builder.setMetricsFile(metricsFile);
+            builder.setTrajectoryFile(trajectoryFile);
+            for (int[] depot : depots) {
+                builder.addDepot(depot[0], depot[1], depot[2], depot[3]);
+            }
+            builder.setFleetMix(fleetMix);
+            builder.build(context);
+            kernel = builder.getKernel();
+            if (saveMapFile != null) {
+                kernel.getCellMap().save(saveMapFile);
+                System.out.println("Saved map to " + saveMapFile);
+            }
+            if (saveScenarioFile != null) {
+                ScenarioFile.save(kernel, saveScenarioFile);
+                System.out.println("Saved scenario to " + saveScenarioFile);
+            }
+        }
+        if (continuous) {
+            kernel.setContinuousTime(true);
+        }
+        if (dispatch != null) {
+            kernel.setDispatchPolicy(dispatch);
+        }
+        if (demand != null) {
+            kernel.setDemandProfile(demand);
+        }
+
+        long start = System.nanoTime();
+        kernel.run(ticks);
+        long elapsed = System.nanoTime() - start;
+        kernel.close();
+
+        if (snapshotFile != null) {
+            SimulationSnapshot snapshot = SimulationSnapshot.capture(kernel);
+            snapshot.save(snapshotFile);
+            System.out.println("Saved snapshot of tick " + snapshot.getTick() + " (" + snapshot.size() +
+                             " bytes) to " + snapshotFile);
+        }
+
+        System.setOut(console);
+        double seconds = elapsed / 1e9;
+        System.out.println("Ran " + ticks + " ticks (now at tick " + kernel.getTick() + ") on a " +
+                         kernel.getGrid().getDimensions().getWidth() + "x" +
+                         kernel.getGrid().getDimensions().getHeight() + " grid with " +
+                         kernel.getCars().size() + " cars and " + kernel.getBins().size() + " bins in " +
+                         String.format("%.3f", seconds) + " s (" +
+                         String.format("%.0f", ticks / seconds) + " ticks/s)");
+        kernel.getMetrics().printSummary();
+        printFleet(kernel);
+        for (Depot depot : kernel.getDepots()) {
+            System.out.println("  depot " + depot.getId() + ": " + depot.getUnloads() + " unloads, " +
+                             String.format("%.1f", depot.getUnloaded()) + " units, " +
+                             depot.getQueueLength() + " trucks waiting");
+        }
+        if (PhaseTimers.isEnabled()) {
+            kernel.getTimings().printReport();
+            DistanceFieldCache fields = kernel.getDistanceFields();
+            System.out.println("Distance fields: " + fields.size() + " cached, " + fields.getHits() + " hits, " +
+                             fields.getMisses() + " misses, " + fields.getEvictions() + " evictions");
+        }
+    }
+
+    /**
+     * Per vehicle class: trucks, collections, distance and operating cost.
+     */
+    private static void printFleet(SimulationKernel kernel) {
+        VehicleClass[] classes = VehicleClass.values();
+        int[] trucks = new int[classes.length];
+        int[] collections = new int[classes.length];
+        double[] distance = new double[classes.length];
+        for (Car car : kernel.getCars()) {
+            int c = car.getVehicleClass().ordinal();
+            trucks[c]++;
+            collections[c] += car.getCollectionsCompleted();
+            distance[c] += car.getTotalDistance();
+        }
+        for (VehicleClass vehicleClass : classes) {
+            int c = vehicleClass.ordinal();
+            if (trucks[c] > 0) {
+                System.out.println(String.format("  %-12s %3d trucks %6d collections %9.0f cells %10.1f cost",
+                                                 vehicleClass.getLabel(), trucks[c], collections[c], distance[c],
+                                                 distance[c] * vehicleClass.getCostPerCell()));
+            }
+        }
+    }
+}
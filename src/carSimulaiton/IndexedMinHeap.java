@@ -0,0 +1,193 @@
+package carSimulaiton;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of small non-negative int ids (e.g. bin ids), each with a
+ * double key.
+ *
+ * Every id's position in the heap is tracked, so changing or removing the key
+ * of an id already queued is O(log n) instead of a scan. Equal keys come out
+ * in id order, so the heap's order never depends on insertion history.
+ */
+public class IndexedMinHeap {
+    // Ids in heap order, then the slot of each id (-1 when absent) and its key
+    private int[] heap;
+    private int[] slots;
+    private double[] keys;
+    private int size = 0;
+
+    public IndexedMinHeap(int capacity) {
+        this.heap = new int[Math.max(1, capacity)];
+        this.slots = new int[Math.max(1, capacity)];
+        this.keys = new double[Math.max(1, capacity)];
+        Arrays.fill(slots, -1);
+    }
+
+    /**
+     * Queue an id with a key, or move it to a new key if already queued.
+     */
+    public void put(int id, double key) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative heap id: " + id);
+        }
+        if (id >= slots.length) {
+            int length = Math.max(id + 1, slots.length * 2);
+            int oldLength = slots.length;
+            slots = Arrays.copyOf(slots, length);
+            keys = Arrays.copyOf(keys, length);
+            Arrays.fill(slots, oldLength, length, -1);
+        }
+        int slot = slots[id];
+        if (slot < 0) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            heap[size] = id;
+            slots[id] = size;
+            keys[id] = key;
+            siftUp(size++);
+        } else {
+            double old = keys[id];
+            keys[id] = key;
+            if (key < old) {
+                siftUp(slot);
+            } else {
+                siftDown(slot);
+            }
+        }
+    }
+
+    /**
+     * Take an id out of the heap; does nothing if it is not queued.
+     */
+    public void remove(int id) {
+        if (!contains(id)) {
+            return;
+        }
+        int slot = slots[id];
+        int last = heap[--size];
+        slots[id] = -1;
+        if (slot < size) {
+            heap[slot] = last;
+            slots[last] = slot;
+            siftUp(slot);
+            siftDown(slots[last]);
+        }
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < slots.length && slots[id] >= 0;
+    }
+
+    /**
+     * Key of a queued id.
+     */
+    public double getKey(int id) {
+        return keys[id];
+    }
+
+    /**
+     * Id with the smallest key, or -1 if the heap is empty.
+     */
+    public int peek() {
+        return (size > 0) ? heap[0] : -1;
+    }
+
+    /**
+     * Remove and return the id with the smallest key, or -1 if the heap is empty.
+     */
+    public int poll() {
+        int id = peek();
+        if (id >= 0) {
+            remove(id);
+        }
+        return id;
+    }
+
+    /**
+     * Copy the ids with keys up to maxKey into out in key order, without
+     * removing them, stopping when out is full. Costs O(k log n) for k ids.
+     *
+     * @return Number of ids copied
+     */
+    public int smallest(double maxKey, int[] out) {
+        int count = 0;
+        while (count < out.length && size > 0 && keys[heap[0]] <= maxKey) {
+            out[count++] = poll();
+        }
+        for (int i = 0; i < count; i++) {
+            put(out[i], keys[out[i]]);
+        }
+        return count;
+    }
+
+    /**
+     * Copy the queued ids into out in id order; out must hold size() ids.
+     *
+     * @return Number of ids copied
+     */
+    public int ids(int[] out) {
+        int count = 0;
+        for (int id = 0; id < slots.length && count < size; id++) {
+            if (slots[id] >= 0) {
+                out[count++] = id;
+            }
+        }
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            slots[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private boolean less(int a, int b) {
+        int c = Double.compare(keys[a], keys[b]);
+        return c < 0 || (c == 0 && a < b);
+    }
+
+    private void siftUp(int slot) {
+        int id = heap[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!less(id, heap[parent])) {
+                break;
+            }
+            heap[slot] = heap[parent];
+            slots[heap[slot]] = slot;
+            slot = parent;
+        }
+        heap[slot] = id;
+        slots[id] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int id = heap[slot];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            if (child + 1 < size && less(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!less(heap[child], id)) {
+                break;
+            }
+            heap[slot] = heap[child];
+            slots[heap[slot]] = slot;
+            slot = child;
+        }
+        heap[slot] = id;
+        slots[id] = slot;
+    }
+}
@@ -0,0 +1,458 @@
+package carSimulaiton;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import repast.simphony.context.Context;
+import repast.simphony.context.DefaultContext;
+import repast.simphony.random.RandomHelper;
+import repast.simphony.space.grid.Grid;
+import repast.simphony.space.grid.GridPoint;
+
+/**
+ * One process of a partitioned run: simulates the trucks inside one region of the grid.
+ *
+ * Every worker builds the same scenario from the same seed, so roads, lights and
+ * bins exist on all of them, and drops the trucks outside its region. Lights and
+ * bins are cheap and stepped on every worker; bins draw their fill from a stream
+ * shared by all replicas and collections are broadcast, so the replicas stay equal.
+ *
+ * Each tick the worker applies the messages PartitionedSimulation routed to it
+ * after the previous tick (trucks handed over, ghosts along its edges, bin
+ * assignment changes and collections), runs one kernel tick for its own trucks,
+ * then sends trucks that left its region to their new owner, the cells of its
+ * edge trucks to the neighbouring regions, and its own assignment changes and
+ * collections to every worker.
+ *
+ * With balancing on, the worker also charges each truck's step time to a
+ * CostMap and sends it every epoch; a new partition from the coordinating
+ * process takes effect after the current tick, and trucks outside the new
+ * bounds are handed over like any other truck leaving the region.
+ *
+ * Ghosts are inert cars that only block cells. They show where the neighbours'
+ * trucks stood at the end of the previous tick, so two trucks can occasionally
+ * enter the same edge cell in one tick; the grid allows it and they separate on
+ * their next move. Wait-for cycles spanning two regions are not detected and
+ * fall back to the stuck-truck teleport.
+ *
+ * The whole scenario is replicated, so a worker's heap does not shrink with
+ * the region: the map, bins and lights of the full grid, and a full-grid
+ * distance field for every bin its trucks head to, wherever the bin is. Only
+ * the trucks, and the fields they need, are divided between the workers.
+ *
+ * Usage (started by PartitionedSimulation): PartitionWorker <port> <region>
+ */
+public class PartitionWorker implements TaskCoordinator.Listener {
+    // Message kinds; hand-offs and ghosts go to one region, the rest to all
+    static final byte HANDOFF = 1;
+    static final byte GHOST = 2;
+    static final byte ASSIGNED = 3;
+    static final byte RELEASED = 4;
+    static final byte COLLECTED = 5;
+
+    private static final Car.Direction[] DIRECTIONS = Car.Direction.values();
+
+    private final int region;
+    private RegionPartition partition;
+    private RegionPartition.Region bounds;
+    private final Context<Object> context;
+    private final SimulationKernel kernel;
+    private final Grid<Object> grid;
+
+    // Trucks this worker currently simulates
+    private final Map<Integer, Car> localCars = new HashMap<>();
+
+    // Outgoing messages: one buffer per region, plus one for every region
+    private final ByteArrayOutputStream[] directBytes;
+    private final DataOutputStream[] direct;
+    private final ByteArrayOutputStream broadcastBytes = new ByteArrayOutputStream(4096);
+    private final DataOutputStream broadcast = new DataOutputStream(broadcastBytes);
+
+    // Step cost per tile since the last epoch, if balancing
+    private CostMap costMap = null;
+    private int epoch = 0;
+
+    // Partition to switch to after the current tick
+    private RegionPartition nextPartition = null;
+
+    // Inert stand-ins for the neighbours' edge trucks, reused between ticks
+    private final List<Car> ghosts = new ArrayList<>();
+
+    // Scratch state reused every tick
+    private final List<Car> leaving = new ArrayList<>();
+    private final int[] ghostTargets = new int[4];
+    private byte[] inbox = new byte[4096];
+
+    // Statistics
+    private long handoffsSent = 0;
+    private long ghostsSent = 0;
+    private long revocations = 0;
+    private long tickNanos = 0;
+
+    /**
+     * Take over a freshly built scenario and keep only this region's trucks.
+     *
+     * @param seed Seed of the scenario, shared by all workers
+     */
+    public PartitionWorker(int region, RegionPartition partition, Context<Object> context,
+                           SimulationKernel kernel, long seed) {
+        this.region = region;
+        this.partition = partition;
+        this.bounds = partition.getRegion(region);
+        this.context = context;
+        this.kernel = kernel;
+        this.grid = kernel.getGrid();
+
+        int regions = partition.getRegionCount();
+        this.directBytes = new ByteArrayOutputStream[regions];
+        this.direct = new DataOutputStream[regions];
+        for (int r = 0; r < regions; r++) {
+            directBytes[r] = new ByteArrayOutputStream(1024);
+            direct[r] = new DataOutputStream(directBytes[r]);
+        }
+
+        // Bins fill by the clock, identically everywhere; trucks get a stream of their own per region
+        kernel.getRandom().setState(seed ^ (0x9E3779B97F4A7C15L * (region + 1)));
+
+        for (Car car : new ArrayList<>(kernel.getCars())) {
+            GridPoint location = grid.getLocation(car);
+            if (partition.ownerOf(location.getX(), location.getY()) == region) {
+                localCars.put(car.getId(), car);
+            } else {
+                kernel.removeCar(car);
+                context.remove(car);
+            }
+        }
+
+        kernel.getTaskCoordinator().setListener(this);
+    }
+
+    /**
+     * Measure step costs per tile and report them every epoch ticks.
+     */
+    public void enableCostMeasurement(int tileSize, int epoch) {
+        this.costMap = new CostMap(partition.getGridWidth(), partition.getGridHeight(), tileSize);
+        this.epoch = epoch;
+        kernel.setCostMap(costMap);
+    }
+
+    /**
+     * Run one tick: apply the routed messages, step the region, queue the outgoing messages.
+     *
+     * @param in An optional new partition, then the messages for this tick:
+     *           a count and length-prefixed blobs
+     */
+    public void tick(DataInputStream in) throws IOException {
+        if (in.readBoolean()) {
+            nextPartition = RegionPartition.read(in);
+        }
+        int blobs = in.readInt();
+        long start = System.nanoTime();
+        int ghostsPlaced = 0;
+        for (int i = 0; i < blobs; i++) {
+            int length = in.readInt();
+            if (inbox.length < length) {
+                inbox = new byte[Math.max(length, inbox.length * 2)];
+            }
+            in.readFully(inbox, 0, length);
+            ghostsPlaced = apply(new DataInputStream(new ByteArrayInputStream(inbox, 0, length)), ghostsPlaced);
+        }
+
+        // Ghosts not needed this tick leave the grid
+        while (ghosts.size() > ghostsPlaced) {
+            context.remove(ghosts.remove(ghosts.size() - 1));
+        }
+
+        kernel.tick();
+        if (nextPartition != null) {
+            partition = nextPartition;
+            bounds = partition.getRegion(region);
+            nextPartition = null;
+        }
+        sendBoundaryTraffic();
+        tickNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Apply one blob of messages.
+     *
+     * @return Number of ghosts placed so far this tick
+     */
+    private int apply(DataInputStream in, int ghostsPlaced) throws IOException {
+        TaskCoordinator coordinator = kernel.getTaskCoordinator();
+        while (in.available() > 0) {
+            byte kind = in.readByte();
+            switch (kind) {
+                case HANDOFF: {
+                    int x = in.readInt();
+                    int y = in.readInt();
+                    Car car = Car.readState(in, grid);
+                    car.setDeadlockResolver(kernel.getDeadlockResolver());
+                    car.setKernel(kernel);
+                    context.add(car);
+                    kernel.addCar(car);
+                    grid.moveTo(car, x, y);
+                    localCars.put(car.getId(), car);
+                    break;
+                }
+                case GHOST: {
+                    int x = in.readInt();
+                    int y = in.readInt();
+                    Car ghost;
+                    if (ghostsPlaced < ghosts.size()) {
+                        ghost = ghosts.get(ghostsPlaced);
+                    } else {
+                        ghost = new Car(grid, -1);
+                        ghosts.add(ghost);
+                        context.add(ghost);
+                    }
+                    grid.moveTo(ghost, x, y);
+                    ghostsPlaced++;
+                    break;
+                }
+                case ASSIGNED: {
+                    int vehicleId = in.readInt();
+                    int binId = in.readInt();
+                    int loser = coordinator.applyRemoteAssignment(vehicleId, binId, in.readLong());
+                    Car car = localCars.get(loser);
+                    if (car != null) {
+                        car.revokeTargetBin(binId);
+                        revocations++;
+                    }
+                    break;
+                }
+                case RELEASED: {
+                    int vehicleId = in.readInt();
+                    int binId = in.readInt();
+                    coordinator.applyRemoteRelease(vehicleId, binId, in.readLong());
+                    break;
+                }
+                case COLLECTED: {
+                    GarbageBin bin = kernel.getBin(in.readInt());
+                    double amount = in.readDouble();
+                    if (bin != null) {
+                        bin.reduceBy(amount);
+                        kernel.getForecaster().observe(bin, kernel.getTick());
+                    }
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown message kind " + kind);
+            }
+        }
+        return ghostsPlaced;
+    }
+
+    /**
+     * Hand trucks that left the region to their new owner and publish the
+     * trucks standing on the region edge.
+     */
+    private void sendBoundaryTraffic() throws IOException {
+        leaving.clear();
+        List<Car> cars = kernel.getCars();
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = cars.get(i);
+            GridPoint location = grid.getLocation(car);
+            int x = location.getX();
+            int y = location.getY();
+            if (!bounds.contains(x, y)) {
+                leaving.add(car);
+            } else if (bounds.isEdge(x, y)) {
+                sendGhost(x, y);
+            }
+        }
+
+        for (Car car : leaving) {
+            GridPoint location = grid.getLocation(car);
+            DataOutputStream out = direct[partition.ownerOf(location.getX(), location.getY())];
+            out.writeByte(HANDOFF);
+            out.writeInt(location.getX());
+            out.writeInt(location.getY());
+            car.writeState(out);
+
+            kernel.removeCar(car);
+            context.remove(car);
+            localCars.remove(car.getId());
+            handoffsSent++;
+        }
+    }
+
+    /**
+     * Tell every other region next to an edge cell that a truck stands there.
+     */
+    private void sendGhost(int x, int y) throws IOException {
+        int targets = 0;
+        for (Car.Direction direction : DIRECTIONS) {
+            int owner = partition.ownerOf(x + direction.getDx(), y + direction.getDy());
+            if (owner == region) {
+                continue;
+            }
+            boolean sent = false;
+            for (int i = 0; i < targets; i++) {
+                sent |= ghostTargets[i] == owner;
+            }
+            if (!sent) {
+                ghostTargets[targets++] = owner;
+                direct[owner].writeByte(GHOST);
+                direct[owner].writeInt(x);
+                direct[owner].writeInt(y);
+                ghostsSent++;
+            }
+        }
+    }
+
+    /**
+     * Send the tick's statistics and queued messages, then clear the queues.
+     */
+    public void writeOutgoing(DataOutputStream out) throws IOException {
+        out.writeLong(tickNanos);
+        out.writeInt(kernel.getCars().size());
+        if (costMap != null && kernel.getTick() % epoch == 0) {
+            out.writeBoolean(true);
+            costMap.write(out);
+            costMap.clear();
+        } else {
+            out.writeBoolean(false);
+        }
+        for (int r = 0; r < direct.length; r++) {
+            direct[r].flush();
+            out.writeInt(directBytes[r].size());
+            directBytes[r].writeTo(out);
+            directBytes[r].reset();
+        }
+        broadcast.flush();
+        out.writeInt(broadcastBytes.size());
+        broadcastBytes.writeTo(out);
+        broadcastBytes.reset();
+        out.flush();
+    }
+
+    /**
+     * Send the run totals once the last tick is done.
+     */
+    public void writeSummary(DataOutputStream out) throws IOException {
+        SimulationMetrics.Counter[] counters = SimulationMetrics.Counter.values();
+        out.writeInt(counters.length);
+        for (SimulationMetrics.Counter counter : counters) {
+            out.writeDouble(kernel.getMetrics().getTotal(counter));
+        }
+        out.writeLong(handoffsSent);
+        out.writeLong(ghostsSent);
+        out.writeLong(revocations);
+        out.writeLong(usedHeap());
+        out.flush();
+    }
+
+    /**
+     * Heap still in use by this process, after a collection; the run is over, so the pause costs nothing.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    //----------------------------------------------------------------
+    // TaskCoordinator.Listener: local changes go to every other worker
+    //----------------------------------------------------------------
+
+    @Override
+    public void binAssigned(int vehicleId, int binId, long tick) {
+        try {
+            broadcast.writeByte(ASSIGNED);
+            broadcast.writeInt(vehicleId);
+            broadcast.writeInt(binId);
+            broadcast.writeLong(tick);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void binReleased(int vehicleId, int binId, long tick) {
+        try {
+            broadcast.writeByte(RELEASED);
+            broadcast.writeInt(vehicleId);
+            broadcast.writeInt(binId);
+            broadcast.writeLong(tick);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void binCollected(int vehicleId, int binId, double amount) {
+        try {
+            broadcast.writeByte(COLLECTED);
+            broadcast.writeInt(binId);
+            broadcast.writeDouble(amount);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: PartitionWorker <port> <region>");
+            System.exit(2);
+        }
+        int port = Integer.parseInt(args[0]);
+        int region = Integer.parseInt(args[1]);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            out.writeInt(region);
+            out.flush();
+
+            // Scenario, as sent by PartitionedSimulation.start()
+            long ticks = in.readLong();
+            int numBins = in.readInt();
+            int numCars = in.readInt();
+            int seed = in.readInt();
+            DispatchPolicy policy = DispatchPolicy.values()[in.readByte()];
+            boolean verbose = in.readBoolean();
+            int epoch = in.readInt();
+            int tileSize = in.readInt();
+            RegionPartition partition = RegionPartition.read(in);
+
+            if (!verbose) {
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            }
+
+            RandomHelper.setSeed(seed);
+            Context<Object> context = new DefaultContext<>();
+            CarSimulationBuilder builder = new CarSimulationBuilder(partition.getGridWidth(), partition.getGridHeight(),
+                                                                    numBins, numCars);
+            builder.build(context);
+            SimulationKernel kernel = builder.getKernel();
+            kernel.setDispatchPolicy(policy);
+
+            PartitionWorker worker = new PartitionWorker(region, partition, context, kernel, seed);
+            if (epoch > 0) {
+                worker.enableCostMeasurement(tileSize, epoch);
+            }
+            for (long t = 0; t < ticks; t++) {
+                worker.tick(in);
+                worker.writeOutgoing(out);
+            }
+            worker.writeSummary(out);
+            kernel.close();
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package carSimulaiton;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+
+/**
+ * Runs one scenario split across several worker processes on this host.
+ *
+ * The grid is divided by a RegionPartition and each region is simulated by a
+ * PartitionWorker process connected over a loopback socket. This process is the
+ * tick barrier and message router: after every tick it collects each worker's
+ * outgoing messages and delivers them before the next one, trucks and ghosts to
+ * the region they are addressed to and bin assignment changes and collections
+ * to all other workers. Direct messages are delivered before broadcasts, each
+ * group in region order, so every worker merges the same changes the same way.
+ *
+ * Traffic is uneven (trucks gather around the depot, commercial bins fill
+ * fastest), so by default the regions come from a BisectionBalancer: every
+ * epoch the workers report their measured step cost per tile and the cuts move
+ * toward equal cost, a bounded distance at a time. The new partition is sent
+ * with the next tick's messages and trucks migrate through ordinary hand-offs.
+ *
+ * Usage: PartitionedSimulation [ticks] [size] [bins] [cars] [seed] [workers]
+ *                              [--epoch ticks] [--central] [--verbose]
+ * --epoch 0 keeps the initial uniform grid of regions. Run it with 1 worker and
+ * with N workers to measure the speedup; the report shows each region's compute
+ * time, so an unbalanced map is easy to spot.
+ */
+public class PartitionedSimulation {
+    private static final int CONNECT_TIMEOUT_MS = 60000;
+    public static final int DEFAULT_EPOCH = 100;
+
+    private RegionPartition partition;
+    private final int workers;
+
+    // Rebalancing, if enabled: costs reported since the last epoch and a partition not yet sent
+    private final BisectionBalancer balancer;
+    private final int epoch;
+    private final CostMap costs;
+    private RegionPartition pendingPartition = null;
+    private boolean costsReceived = false;
+
+    private Process[] processes;
+    private Socket[] sockets;
+    private DataInputStream[] inputs;
+    private DataOutputStream[] outputs;
+
+    // Messages of the last tick: [source][destination] and [source] for broadcasts
+    private final byte[][][] direct;
+    private final int[][] directLengths;
+    private final byte[][] broadcast;
+    private final int[] broadcastLengths;
+
+    // Scenario
+    private long ticks = 0;
+    private int numBins = 0;
+    private int numCars = 0;
+
+    // Statistics
+    private long wallNanos = 0;
+    private long criticalPathNanos = 0;
+    private final long[] computeNanos;
+    private final int[] carCounts;
+    private final double[] counterTotals = new double[SimulationMetrics.Counter.values().length];
+    private final long[] handoffs;
+    private final long[] ghosts;
+    private final long[] revocations;
+    private final long[] heapBytes;
+
+    /**
+     * Run with a fixed partition.
+     */
+    public PartitionedSimulation(RegionPartition partition) {
+        this(partition, null, 0);
+    }
+
+    /**
+     * Run with a partition the balancer adjusts every epoch ticks.
+     */
+    public PartitionedSimulation(BisectionBalancer balancer, int epoch) {
+        this(balancer.getPartition(), balancer, epoch);
+    }
+
+    private PartitionedSimulation(RegionPartition partition, BisectionBalancer balancer, int epoch) {
+        this.partition = partition;
+        this.balancer = balancer;
+        this.epoch = (balancer != null) ? epoch : 0;
+        this.costs = (balancer != null) ?
+                new CostMap(partition.getGridWidth(), partition.getGridHeight(), balancer.getTileSize()) : null;
+        this.workers = partition.getRegionCount();
+        this.direct = new byte[workers][workers][0];
+        this.directLengths = new int[workers][workers];
+        this.broadcast = new byte[workers][0];
+        this.broadcastLengths = new int[workers];
+        this.computeNanos = new long[workers];
+        this.carCounts = new int[workers];
+        this.handoffs = new long[workers];
+        this.ghosts = new long[workers];
+        this.revocations = new long[workers];
+        this.heapBytes = new long[workers];
+    }
+
+    /**
+     * Launch one worker process per region and send each the scenario.
+     */
+    public void start(long ticks, int numBins, int numCars, int seed, DispatchPolicy policy,
+                      boolean verbose) throws IOException {
+        this.ticks = ticks;
+        this.numBins = numBins;
+        this.numCars = numCars;
+        processes = new Process[workers];
+        sockets = new Socket[workers];
+        inputs = new DataInputStream[workers];
+        outputs = new DataOutputStream[workers];
+
+        try (ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+            // A worker that fails to start must not hang the run
+            server.setSoTimeout(CONNECT_TIMEOUT_MS);
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            for (int r = 0; r < workers; r++) {
+                processes[r] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                                  PartitionWorker.class.getName(),
+                                                  Integer.toString(server.getLocalPort()), Integer.toString(r))
+                        .inheritIO()
+                        .start();
+            }
+
+            // Workers connect in any order and introduce themselves by region
+            for (int i = 0; i < workers; i++) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+                int r = in.readInt();
+                sockets[r] = socket;
+                inputs[r] = in;
+                outputs[r] = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+            }
+        }
+
+        for (int r = 0; r < workers; r++) {
+            DataOutputStream out = outputs[r];
+            out.writeLong(ticks);
+            out.writeInt(numBins);
+            out.writeInt(numCars);
+            out.writeInt(seed);
+            out.writeByte(policy.ordinal());
+            out.writeBoolean(verbose);
+            out.writeInt(epoch);
+            out.writeInt(balancer != null ? balancer.getTileSize() : 0);
+            partition.write(out);
+            out.flush();
+        }
+    }
+
+    /**
+     * Drive all workers through the ticks given to start() and collect their totals.
+     */
+    public void run() throws IOException {
+        long start = System.nanoTime();
+        for (long t = 0; t < ticks; t++) {
+            for (int r = 0; r < workers; r++) {
+                deliver(r);
+            }
+            pendingPartition = null;
+
+            long slowest = 0;
+            costsReceived = false;
+            for (int r = 0; r < workers; r++) {
+                slowest = Math.max(slowest, collect(r));
+            }
+            criticalPathNanos += slowest;
+
+            if (costsReceived) {
+                if (balancer.rebalance(costs)) {
+                    partition = balancer.getPartition();
+                    pendingPartition = partition;
+                }
+                costs.clear();
+            }
+        }
+        wallNanos = System.nanoTime() - start;
+
+        for (int r = 0; r < workers; r++) {
+            DataInputStream in = inputs[r];
+            int counters = in.readInt();
+            for (int c = 0; c < counters; c++) {
+                counterTotals[c] += in.readDouble();
+            }
+            handoffs[r] = in.readLong();
+            ghosts[r] = in.readLong();
+            revocations[r] = in.readLong();
+            heapBytes[r] = in.readLong();
+        }
+    }
+
+    /**
+     * Send a worker the messages addressed to it, direct ones first.
+     */
+    private void deliver(int destination) throws IOException {
+        int blobs = 0;
+        for (int s = 0; s < workers; s++) {
+            if (directLengths[s][destination] > 0) {
+                blobs++;
+            }
+            if (s != destination && broadcastLengths[s] > 0) {
+                blobs++;
+            }
+        }
+
+        DataOutputStream out = outputs[destination];
+        out.writeBoolean(pendingPartition != null);
+        if (pendingPartition != null) {
+            pendingPartition.write(out);
+        }
+        out.writeInt(blobs);
+        for (int s = 0; s < workers; s++) {
+            if (directLengths[s][destination] > 0) {
+                out.writeInt(directLengths[s][destination]);
+                out.write(direct[s][destination], 0, directLengths[s][destination]);
+            }
+        }
+        for (int s = 0; s < workers; s++) {
+            if (s != destination && broadcastLengths[s] > 0) {
+                out.writeInt(broadcastLengths[s]);
+                out.write(broadcast[s], 0, broadcastLengths[s]);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Read a worker's statistics and outgoing messages for the tick it just ran.
+     *
+     * @return The worker's compute time for the tick
+     */
+    private long collect(int source) throws IOException {
+        DataInputStream in = inputs[source];
+        long nanos = in.readLong();
+        computeNanos[source] += nanos;
+        carCounts[source] = in.readInt();
+        if (in.readBoolean()) {
+            costs.readAndAdd(in);
+            costsReceived = true;
+        }
+
+        for (int d = 0; d < workers; d++) {
+            int length = in.readInt();
+            if (direct[source][d].length < length) {
+                direct[source][d] = new byte[Math.max(length, direct[source][d].length * 2)];
+            }
+            in.readFully(direct[source][d], 0, length);
+            directLengths[source][d] = length;
+        }
+
+        int length = in.readInt();
+        if (broadcast[source].length < length) {
+            broadcast[source] = new byte[Math.max(length, broadcast[source].length * 2)];
+        }
+        in.readFully(broadcast[source], 0, length);
+        broadcastLengths[source] = length;
+        return nanos;
+    }
+
+    /**
+     * Close the connections and wait for the workers to exit.
+     */
+    public void close() {
+        for (int r = 0; r < workers; r++) {
+            try {
+                if (sockets != null && sockets[r] != null) {
+                    sockets[r].close();
+                }
+            } catch (IOException e) {
+                System.out.println("PartitionedSimulation: failed to close worker " + r + ": " + e.getMessage());
+            }
+        }
+        for (int r = 0; r < workers; r++) {
+            if (processes == null || processes[r] == null) {
+                continue;
+            }
+            try {
+                processes[r].waitFor();
+            } catch (InterruptedException e) {
+                processes[r].destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Print the run time, each region's load and the KPI totals. The cars column
+     * counts the trucks in a region after the last tick, not those in transit;
+     * the heap column is each worker's live heap at the end of the run.
+     */
+    public void printReport(PrintStream out) {
+        double seconds = wallNanos / 1e9;
+        out.println("Ran " + ticks + " ticks on a " + partition.getGridWidth() + "x" + partition.getGridHeight() +
+                    " grid split into " + workers + " regions with " + numCars + " cars and " + numBins +
+                    " bins in " + String.format("%.3f", seconds) + " s (" +
+                    String.format("%.0f", ticks / seconds) + " ticks/s)");
+
+        out.println("  region  bounds                     cars  compute s  handoffs    ghosts  revoked  heap MB");
+        long totalCompute = 0;
+        for (int r = 0; r < workers; r++) {
+            totalCompute += computeNanos[r];
+            out.println(String.format("  %6d  %-24s %6d %10.3f %9d %9d %8d %8.1f", r, partition.getRegion(r),
+                                      carCounts[r], computeNanos[r] / 1e9, handoffs[r], ghosts[r], revocations[r],
+                                      heapBytes[r] / 1e6));
+        }
+
+        // Efficiency 1.0 means every worker was busy for the whole critical path
+        double efficiency = criticalPathNanos == 0 ? 0 : (double) totalCompute / (workers * criticalPathNanos);
+        double exchange = wallNanos == 0 ? 0 : 100.0 * (wallNanos - criticalPathNanos) / wallNanos;
+        out.println(String.format("  Critical path %.3f s, load balance %.2f, exchange and barrier %.1f%% of wall time",
+                                  criticalPathNanos / 1e9, efficiency, exchange));
+        if (balancer != null) {
+            out.println("  Rebalanced " + balancer.getRebalances() + " times (epoch " + epoch + " ticks, " +
+                        balancer.getTileSize() + "-cell tiles)");
+        }
+
+        out.println("=== Totals over all regions ===");
+        SimulationMetrics.Counter[] counters = SimulationMetrics.Counter.values();
+        for (int c = 0; c < counters.length; c++) {
+            out.println(String.format("  %-22s %12.1f", counters[c].name().toLowerCase(), counterTotals[c]));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long ticks = 1000;
+        int size = 50;
+        int numBins = 5;
+        int numCars = 5;
+        int seed = 1;
+        int workers = 2;
+        DispatchPolicy policy = DispatchPolicy.GREEDY;
+        boolean verbose = false;
+        int epoch = DEFAULT_EPOCH;
+
+        int position = 0;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--epoch".equals(arg) && i + 1 < args.length) {
+                epoch = Integer.parseInt(args[++i]);
+                continue;
+            }
+            if ("--central".equals(arg)) {
+                policy = DispatchPolicy.CENTRAL;
+                continue;
+            }
+            if ("--verbose".equals(arg)) {
+                verbose = true;
+                continue;
+            }
+            switch (position++) {
+                case 0: ticks = Long.parseLong(arg); break;
+                case 1: size = Integer.parseInt(arg); break;
+                case 2: numBins = Integer.parseInt(arg); break;
+                case 3: numCars = Integer.parseInt(arg); break;
+                case 4: seed = Integer.parseInt(arg); break;
+                case 5: workers = Integer.parseInt(arg); break;
+                default: throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+        }
+
+        PartitionedSimulation simulation = (epoch > 0) ?
+                new PartitionedSimulation(BisectionBalancer.forGrid(size, size, workers), epoch) :
+                new PartitionedSimulation(RegionPartition.uniform(size, size, workers));
+        try {
+            simulation.start(ticks, numBins, numCars, seed, policy, verbose);
+            simulation.run();
+        } finally {
+            simulation.close();
+        }
+        simulation.printReport(System.out);
+    }
+}
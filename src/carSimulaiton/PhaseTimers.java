@@ -0,0 +1,298 @@
+package carSimulaiton;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Low-overhead timers showing where a tick's time goes.
+ *
+ * Code under measurement brackets itself with start() and stop(phase, start).
+ * When timing is disabled start() returns 0 and stop() ignores the sample, so
+ * the cost is a field read. Samples go into log-linear histograms (in the
+ * spirit of HdrHistogram: 16 sub-buckets per power of two, about 6% precision)
+ * from which the report derives p50/p99 per phase.
+ *
+ * The timers are static because the OGL styles are created by Repast and cannot
+ * be handed a kernel. Enable with -Dcarsim.profile=true or setEnabled() at runtime.
+ * Samples go to the recording thread's current Scope: a kernel enters its own
+ * scope for each tick, so kernels running at once (under WhatIfRunner or as
+ * partition workers) report apart, and a kernel's recorders are dropped with it.
+ * Anything recorded outside a kernel's tick lands in getDefault(). Every thread
+ * records into its own histograms, which a scope's getters and report merge;
+ * read them once the measured threads have finished or paused.
+ */
+public class PhaseTimers {
+
+    /**
+     * Measured sections. Agent step phases hold one sample per agent, the others
+     * one sample per tick or per call.
+     */
+    public enum Phase {
+        TICK("whole tick"),
+        LIGHTS("TrafficLight.step"),
+        BINS("bin sensor readings"),
+        CARS("Car.step"),
+        SENSE("Car bin scan"),
+        ASSIGN("target selection"),
+        MOVE("Car movement"),
+        DEADLOCK("deadlock resolution"),
+        METRICS("metrics sampling"),
+        RENDER_CARS("CarStyle"),
+        RENDER_BINS("GarbageBinStyle"),
+        RENDER_LIGHTS("TrafficLightStyle"),
+        RENDER_ROADS("RoadStyle");
+
+        private final String description;
+
+        Phase(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    // Histogram layout, shared with SimulationMetrics' time-in-status histograms
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private static volatile boolean enabled = Boolean.getBoolean("carsim.profile");
+
+    /**
+     * One thread's samples. A phase's histogram is allocated with its first sample.
+     */
+    private static final class Recorder {
+        final long[][] histograms = new long[PHASES.length][];
+        final long[] counts = new long[PHASES.length];
+        final long[] totals = new long[PHASES.length];
+        final long[] maxima = new long[PHASES.length];
+    }
+
+    /**
+     * The samples of one run, e.g. one kernel's ticks, kept apart from those of
+     * any other run in the process. Each thread recording into the scope gets
+     * its own recorder; the recorders go with the scope once it is dropped.
+     */
+    public static final class Scope {
+        // Every thread's recorder, kept after the thread ends so its samples are reported
+        private final List<Recorder> recorders = new ArrayList<>();
+
+        private final ThreadLocal<Recorder> local = ThreadLocal.withInitial(() -> {
+            Recorder recorder = new Recorder();
+            synchronized (recorders) {
+                recorders.add(recorder);
+            }
+            return recorder;
+        });
+
+        /**
+         * Discard all samples.
+         */
+        public void reset() {
+            synchronized (recorders) {
+                for (Recorder recorder : recorders) {
+                    for (int p = 0; p < PHASES.length; p++) {
+                        if (recorder.histograms[p] != null) {
+                            Arrays.fill(recorder.histograms[p], 0);
+                        }
+                        recorder.counts[p] = 0;
+                        recorder.totals[p] = 0;
+                        recorder.maxima[p] = 0;
+                    }
+                }
+            }
+        }
+
+        public long getCount(Phase phase) {
+            return merged().counts[phase.ordinal()];
+        }
+
+        public long getTotalNanos(Phase phase) {
+            return merged().totals[phase.ordinal()];
+        }
+
+        /**
+         * Approximate percentile of a phase's samples in nanoseconds.
+         *
+         * @param percentile Between 0 and 100
+         */
+        public long getPercentile(Phase phase, double percentile) {
+            return percentileOf(merged(), phase.ordinal(), percentile);
+        }
+
+        /**
+         * Print one line per measured phase: sample count, total time, share of the
+         * tick time, and mean/p50/p99/max per sample.
+         */
+        public void printReport() {
+            Recorder all = merged();
+            long[] counts = all.counts;
+            long[] totals = all.totals;
+            long tickTotal = totals[Phase.TICK.ordinal()];
+            System.out.println("=== Phase timings (microseconds per sample) ===");
+            System.out.println(String.format("  %-14s %-22s %10s %10s %6s %9s %9s %9s %9s",
+                    "phase", "measures", "samples", "total ms", "tick%", "mean", "p50", "p99", "max"));
+            for (Phase phase : PHASES) {
+                int p = phase.ordinal();
+                if (counts[p] == 0) {
+                    continue;
+                }
+                String share = (tickTotal > 0 && !phase.name().startsWith("RENDER"))
+                        ? String.format("%.1f", 100.0 * totals[p] / tickTotal) : "-";
+                System.out.println(String.format("  %-14s %-22s %10d %10.1f %6s %9.2f %9.2f %9.2f %9.2f",
+                        phase.name().toLowerCase(), phase.getDescription(), counts[p],
+                        totals[p] / 1e6, share,
+                        totals[p] / 1e3 / counts[p],
+                        percentileOf(all, p, 50) / 1e3,
+                        percentileOf(all, p, 99) / 1e3,
+                        all.maxima[p] / 1e3));
+            }
+        }
+
+        /**
+         * Sum of every thread's samples.
+         */
+        private Recorder merged() {
+            Recorder all = new Recorder();
+            synchronized (recorders) {
+                for (Recorder recorder : recorders) {
+                    for (int p = 0; p < PHASES.length; p++) {
+                        if (recorder.histograms[p] == null) {
+                            continue;
+                        }
+                        if (all.histograms[p] == null) {
+                            all.histograms[p] = new long[BUCKETS];
+                        }
+                        for (int i = 0; i < BUCKETS; i++) {
+                            all.histograms[p][i] += recorder.histograms[p][i];
+                        }
+                        all.counts[p] += recorder.counts[p];
+                        all.totals[p] += recorder.totals[p];
+                        all.maxima[p] = Math.max(all.maxima[p], recorder.maxima[p]);
+                    }
+                }
+            }
+            return all;
+        }
+    }
+
+    // Samples taken outside any run's scope, e.g. by the render styles
+    private static final Scope DEFAULT = new Scope();
+
+    private static final ThreadLocal<Scope> current = ThreadLocal.withInitial(() -> DEFAULT);
+
+    private PhaseTimers() {
+        // Static utility
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        PhaseTimers.enabled = enabled;
+    }
+
+    /**
+     * Send the calling thread's samples to a scope until exit() is called.
+     *
+     * @return The thread's previous scope, to hand to exit()
+     */
+    public static Scope enter(Scope scope) {
+        Scope previous = current.get();
+        current.set(scope);
+        return previous;
+    }
+
+    /**
+     * Return the calling thread to the scope it was in before enter().
+     */
+    public static void exit(Scope previous) {
+        current.set(previous);
+    }
+
+    /**
+     * Begin a measurement.
+     *
+     * @return Start timestamp to pass to stop(), or 0 if timing is disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Finish a measurement started with start().
+     */
+    public static void stop(Phase phase, long start) {
+        if (start != 0) {
+            record(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Record a duration in nanoseconds into the calling thread's scope.
+     */
+    public static void record(Phase phase, long nanos) {
+        Recorder recorder = current.get().local.get();
+        int p = phase.ordinal();
+        long value = Math.max(0, nanos);
+        if (recorder.histograms[p] == null) {
+            recorder.histograms[p] = new long[BUCKETS];
+        }
+        recorder.histograms[p][bucketOf(value)]++;
+        recorder.counts[p]++;
+        recorder.totals[p] += value;
+        if (value > recorder.maxima[p]) {
+            recorder.maxima[p] = value;
+        }
+    }
+
+    /**
+     * Samples taken outside any run's scope, e.g. rendering; a kernel's own
+     * phases are in SimulationKernel.getTimings().
+     */
+    public static Scope getDefault() {
+        return DEFAULT;
+    }
+
+    private static long percentileOf(Recorder recorder, int p, double percentile) {
+        long count = recorder.counts[p];
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        long[] buckets = recorder.histograms[p];
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(recorder.maxima[p], highestValueIn(i));
+            }
+        }
+        return recorder.maxima[p];
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
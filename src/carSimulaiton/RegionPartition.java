@@ -0,0 +1,208 @@
+package carSimulaiton;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Split of the grid into rectangular regions, one per worker of a partitioned run.
+ *
+ * The regions must tile the grid exactly; every cell has one owner, looked up
+ * in constant time. A partition is sent from the coordinating process to every
+ * worker, so all of them agree on who owns which cell.
+ */
+public class RegionPartition {
+
+    /**
+     * Rectangle of cells [x, x + width) x [y, y + height).
+     */
+    public static class Region {
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+
+        public Region(int x, int y, int width, int height) {
+            if (width < 1 || height < 1) {
+                throw new IllegalArgumentException("Region must contain at least one cell");
+            }
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        public boolean contains(int cellX, int cellY) {
+            return cellX >= x && cellX < x + width && cellY >= y && cellY < y + height;
+        }
+
+        /**
+         * Check whether a cell of this region lies on its border.
+         */
+        public boolean isEdge(int cellX, int cellY) {
+            return cellX == x || cellX == x + width - 1 || cellY == y || cellY == y + height - 1;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getArea() {
+            return width * height;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + x + "," + y + ") " + width + "x" + height;
+        }
+    }
+
+    private final int gridWidth;
+    private final int gridHeight;
+    private final List<Region> regions;
+
+    // Owning region of every cell, indexed by y * gridWidth + x
+    private final short[] owners;
+
+    /**
+     * @param regions Rectangles covering every cell of the grid exactly once
+     */
+    public RegionPartition(int gridWidth, int gridHeight, List<Region> regions) {
+        if (regions.isEmpty() || regions.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Unsupported number of regions: " + regions.size());
+        }
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.regions = Collections.unmodifiableList(new ArrayList<>(regions));
+        this.owners = new short[gridWidth * gridHeight];
+
+        Arrays.fill(owners, (short) -1);
+        for (int r = 0; r < regions.size(); r++) {
+            Region region = regions.get(r);
+            if (region.x < 0 || region.y < 0 || region.x + region.width > gridWidth ||
+                region.y + region.height > gridHeight) {
+                throw new IllegalArgumentException("Region " + region + " lies outside the grid");
+            }
+            for (int y = region.y; y < region.y + region.height; y++) {
+                for (int x = region.x; x < region.x + region.width; x++) {
+                    if (owners[y * gridWidth + x] >= 0) {
+                        throw new IllegalArgumentException("Regions overlap at (" + x + "," + y + ")");
+                    }
+                    owners[y * gridWidth + x] = (short) r;
+                }
+            }
+        }
+        for (int i = 0; i < owners.length; i++) {
+            if (owners[i] < 0) {
+                throw new IllegalArgumentException("Cell (" + (i % gridWidth) + "," + (i / gridWidth) +
+                                                   ") belongs to no region");
+            }
+        }
+    }
+
+    /**
+     * Split the grid into equal columns and rows of regions, choosing the
+     * factorization of the region count whose regions are closest to square.
+     */
+    public static RegionPartition uniform(int gridWidth, int gridHeight, int count) {
+        int bestColumns = count;
+        double bestScore = Double.MAX_VALUE;
+        for (int columns = 1; columns <= count; columns++) {
+            if (count % columns != 0) {
+                continue;
+            }
+            int rows = count / columns;
+            if (columns > gridWidth || rows > gridHeight) {
+                continue;
+            }
+            double aspect = ((double) gridWidth / columns) / ((double) gridHeight / rows);
+            double score = Math.abs(Math.log(aspect));
+            if (score < bestScore) {
+                bestScore = score;
+                bestColumns = columns;
+            }
+        }
+        int columns = bestColumns;
+        int rows = count / columns;
+
+        List<Region> regions = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            int y0 = row * gridHeight / rows;
+            int y1 = (row + 1) * gridHeight / rows;
+            for (int column = 0; column < columns; column++) {
+                int x0 = column * gridWidth / columns;
+                int x1 = (column + 1) * gridWidth / columns;
+                regions.add(new Region(x0, y0, x1 - x0, y1 - y0));
+            }
+        }
+        return new RegionPartition(gridWidth, gridHeight, regions);
+    }
+
+    /**
+     * Region owning a cell; coordinates wrap around like the grid.
+     */
+    public int ownerOf(int x, int y) {
+        x = Math.floorMod(x, gridWidth);
+        y = Math.floorMod(y, gridHeight);
+        return owners[y * gridWidth + x];
+    }
+
+    public Region getRegion(int index) {
+        return regions.get(index);
+    }
+
+    public int getRegionCount() {
+        return regions.size();
+    }
+
+    public int getGridWidth() {
+        return gridWidth;
+    }
+
+    public int getGridHeight() {
+        return gridHeight;
+    }
+
+    //----------------------------------------------------------------
+    // Wire format
+    //----------------------------------------------------------------
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(gridWidth);
+        out.writeInt(gridHeight);
+        out.writeInt(regions.size());
+        for (Region region : regions) {
+            out.writeInt(region.x);
+            out.writeInt(region.y);
+            out.writeInt(region.width);
+            out.writeInt(region.height);
+        }
+    }
+
+    public static RegionPartition read(DataInput in) throws IOException {
+        int gridWidth = in.readInt();
+        int gridHeight = in.readInt();
+        int count = in.readInt();
+        List<Region> regions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            regions.add(new Region(in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+        }
+        return new RegionPartition(gridWidth, gridHeight, regions);
+    }
+}
@@ -3,6 +3,14 @@ import repast.simphony.visualizationOGL2D.DefaultStyleOGL2D;
 import java.awt.Color;
 
 public class Road {
+    // Display colors, shared by every road so styling one allocates nothing
+    private static final Color BIDIRECTIONAL_COLOR = new Color(180, 180, 180);  // Light gray
+    private static final Color EASTBOUND_COLOR = new Color(150, 150, 120);      // Slightly yellowish
+    private static final Color WESTBOUND_COLOR = new Color(120, 150, 150);      // Slightly bluish
+    private static final Color NORTHBOUND_COLOR = new Color(150, 120, 150);     // Slightly purplish
+    private static final Color SOUTHBOUND_COLOR = new Color(120, 150, 120);     // Slightly greenish
+    private static final Color INTERSECTION_COLOR = new Color(100, 100, 100);   // Dark gray
+    
     private RoadType type;
     private Direction direction;
     
@@ -73,22 +81,22 @@ public class Road {
         switch(type) {
             case HORIZONTAL:
                 if (direction == Direction.BIDIRECTIONAL) {
-                    return new Color(180, 180, 180);  // Light gray for bidirectional roads
+                    return BIDIRECTIONAL_COLOR;
                 } else if (direction == Direction.EASTBOUND) {
-                    return new Color(150, 150, 120);  // Slightly yellowish for eastbound
+                    return EASTBOUND_COLOR;
                 } else {
-                    return new Color(120, 150, 150);  // Slightly bluish for westbound
+                    return WESTBOUND_COLOR;
                 }
             case VERTICAL:
                 if (direction == Direction.BIDIRECTIONAL) {
-                    return new Color(180, 180, 180);  // Light gray for bidirectional roads
+                    return BIDIRECTIONAL_COLOR;
                 } else if (direction == Direction.NORTHBOUND) {
-                    return new Color(150, 120, 150);  // Slightly purplish for northbound
+                    return NORTHBOUND_COLOR;
                 } else {
-                    return new Color(120, 150, 120);  // Slightly greenish for southbound
+                    return SOUTHBOUND_COLOR;
                 }
             case INTERSECTION:
-                return new Color(100, 100, 100);  // Dark gray for intersections
+                return INTERSECTION_COLOR;
             default:
                 return Color.GRAY;
         }
@@ -0,0 +1,59 @@
+package carSimulaiton;
+
+/**
+ * Static view of the road cells of a grid, for path searches.
+ *
+ * Keeps one byte per cell with the directions a truck may drive into that cell
+ * (the same rule Car.isValidMove applies, without the traffic), so searches
+ * never touch the grid's object lists. The bytes are copied from the run's
+ * CellMap once, as searches read them far more often than anything else does.
+ */
+public class RoadNetwork {
+    private final int width;
+    private final int height;
+
+    // Directions (Car.Direction masks) in which each cell may be entered, plus
+    // INTERSECTION for intersections; 0 off-road
+    private final byte[] entries;
+
+    private static final int INTERSECTION = CellMap.INTERSECTION;
+
+    public RoadNetwork(CellMap cells) {
+        this.width = cells.getWidth();
+        this.height = cells.getHeight();
+        this.entries = new byte[width * height];
+        for (int cell = 0; cell < entries.length; cell++) {
+            entries[cell] = (byte) cells.getEntries(cell);
+        }
+    }
+
+    /**
+     * Check whether a truck may drive into a cell heading in the given direction.
+     */
+    public boolean canEnter(int x, int y, Car.Direction direction) {
+        return (entries[cell(x, y)] & direction.getMask()) != 0;
+    }
+
+    public boolean isRoad(int x, int y) {
+        return entries[cell(x, y)] != 0;
+    }
+
+    public boolean isIntersection(int x, int y) {
+        return (entries[cell(x, y)] & INTERSECTION) != 0;
+    }
+
+    /**
+     * Cell id of a position; coordinates wrap around like the grid.
+     */
+    public int cell(int x, int y) {
+        return Math.floorMod(y, height) * width + Math.floorMod(x, width);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
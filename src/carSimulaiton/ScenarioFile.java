@@ -0,0 +1,170 @@
+package carSimulaiton;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import repast.simphony.context.Context;
+import repast.simphony.space.grid.Grid;
+import repast.simphony.space.grid.GridPoint;
+
+/**
+ * A scenario compiled to one file: its map (roads and lights, see CellMap)
+ * followed by the bins, depots and cars as they stand before the first tick,
+ * and the run's random state after placing them.
+ *
+ * Loading maps the roads instead of laying them and reads the agents in one
+ * sequential pass, with no searching for free cells, so a large scenario
+ * starts in little more than the time it takes to create its agents. Running
+ * a loaded scenario continues exactly like the run that saved it. The map part
+ * is an ordinary map file, so CellMap.load() accepts a scenario file too.
+ *
+ * Scenario section layout (big-endian), after the map: magic, version, the
+ * version of the agent records (SimulationSnapshot.VERSION), random state,
+ * then bins, depots and cars (each as count + records with x, y first). A file
+ * whose agent records are of another version is rejected, not misread.
+ */
+public class ScenarioFile {
+    private static final long MAGIC = 0x43535343454E3031L; // "CSSCEN01"
+    private static final int VERSION = 2;
+
+    private final CellMap map;
+
+    // Everything after the map, read when the scenario is populated
+    private final DataInputStream agents;
+
+    private ScenarioFile(CellMap map, DataInputStream agents) {
+        this.map = map;
+        this.agents = agents;
+    }
+
+    /**
+     * Compile a freshly built scenario (one that has not run a tick) to a file.
+     */
+    public static void save(SimulationKernel kernel, String file) throws IOException {
+        if (kernel.getTick() != 0) {
+            throw new IllegalStateException("A scenario is saved before its first tick");
+        }
+        Grid<Object> grid = kernel.getGrid();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeLong(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(SimulationSnapshot.VERSION);
+        out.writeLong(kernel.getRandom().getState());
+
+        out.writeInt(kernel.getBins().size());
+        for (GarbageBin bin : kernel.getBins()) {
+            writeLocation(out, grid, bin);
+            bin.writeState(out);
+        }
+        out.writeInt(kernel.getDepots().size());
+        for (Depot depot : kernel.getDepots()) {
+            writeLocation(out, grid, depot);
+            depot.writeState(out);
+        }
+        out.writeInt(kernel.getCars().size());
+        for (Car car : kernel.getCars()) {
+            writeLocation(out, grid, car);
+            car.writeState(out);
+        }
+        out.flush();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            kernel.getCellMap().write(channel);
+            CellMap.writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()));
+        }
+    }
+
+    /**
+     * Open a scenario file: its map is mapped at once, its agents are read
+     * by populate().
+     */
+    public static ScenarioFile load(String file) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            CellMap map = CellMap.read(channel, file);
+            long offset = map.getFileBytes();
+            ByteBuffer section = ByteBuffer.allocate((int) Math.max(0, channel.size() - offset));
+            CellMap.readFully(channel, section, offset);
+            DataInputStream agents = new DataInputStream(new ByteArrayInputStream(section.array()));
+            if (section.capacity() < 16 || agents.readLong() != MAGIC) {
+                throw new IOException(file + " is a map file without a scenario");
+            }
+            int version = agents.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported scenario version " + version + " (expected " + VERSION + ")");
+            }
+            int recordVersion = agents.readInt();
+            if (recordVersion != SimulationSnapshot.VERSION) {
+                throw new IOException("Scenario agents saved with record version " + recordVersion +
+                                      " (expected " + SimulationSnapshot.VERSION + "); recompile the scenario");
+            }
+            return new ScenarioFile(map, agents);
+        }
+    }
+
+    public CellMap getCellMap() {
+        return map;
+    }
+
+    /**
+     * Add the scenario's bins, depots and cars to a context whose kernel runs
+     * on this scenario's map, and restore the random state they were saved
+     * with. A scenario file is populated once.
+     */
+    void populate(Context<Object> context, SimulationKernel kernel) throws IOException {
+        Grid<Object> grid = kernel.getGrid();
+        DataInputStream in = agents;
+        long randomState = in.readLong();
+
+        int binCount = in.readInt();
+        for (int i = 0; i < binCount; i++) {
+            int x = in.readInt();
+            int y = in.readInt();
+            GarbageBin bin = GarbageBin.readState(in, kernel.getRandom());
+            context.add(bin);
+            kernel.addGarbageBin(bin);
+            grid.moveTo(bin, x, y);
+        }
+
+        int depotCount = in.readInt();
+        for (int i = 0; i < depotCount; i++) {
+            int x = in.readInt();
+            int y = in.readInt();
+            Depot depot = Depot.readState(in);
+            context.add(depot);
+            grid.moveTo(depot, x, y);
+            kernel.addDepot(depot);
+        }
+
+        int carCount = in.readInt();
+        for (int i = 0; i < carCount; i++) {
+            int x = in.readInt();
+            int y = in.readInt();
+            Car car = Car.readState(in, grid);
+            car.setDeadlockResolver(kernel.getDeadlockResolver());
+            car.setKernel(kernel);
+            context.add(car);
+            kernel.addCar(car);
+            grid.moveTo(car, x, y);
+        }
+
+        kernel.getRandom().setState(randomState);
+        System.out.println("Scenario loaded with " + binCount + " bins, " + depotCount + " depots and " +
+                         carCount + " cars");
+    }
+
+    private static void writeLocation(DataOutputStream out, Grid<Object> grid, Object agent) throws IOException {
+        GridPoint location = grid.getLocation(agent);
+        out.writeInt(location.getX());
+        out.writeInt(location.getY());
+    }
+}
@@ -0,0 +1,633 @@
+package carSimulaiton;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import repast.simphony.engine.schedule.ScheduledMethod;
+import repast.simphony.random.RandomHelper;
+import repast.simphony.space.grid.Grid;
+import repast.simphony.space.grid.GridPoint;
+
+/**
+ * Drives one simulation run: owns the agent lists and advances them tick by tick.
+ *
+ * A tick steps the agents in fixed phases (traffic lights, bin sensors, cars,
+ * then deadlock resolution) by calling their step methods directly. Bins are
+ * not stepped; they fill by the run's demand profile, evaluated when read. Under the Repast
+ * runtime the kernel is the only scheduled agent, so the GUI still works; for
+ * headless runs HeadlessSimulation calls tick() in a loop.
+ */
+public class SimulationKernel {
+    private Grid<Object> grid;
+    private DeadlockResolver deadlockResolver;
+
+    // Random stream for everything stochastic in this run
+    private SimulationRandom random;
+
+    // Agents by type, stepped in this order
+    private List<TrafficLight> lights = new ArrayList<>();
+    private List<GarbageBin> bins = new ArrayList<>();
+    private List<Car> cars = new ArrayList<>();
+
+    // Where trucks unload, indexed by depot id
+    private List<Depot> depots = new ArrayList<>();
+
+    // Bin assignments shared by the cars of this run
+    private TaskCoordinator taskCoordinator = new TaskCoordinator();
+
+    // How trucks choose bins; the dispatcher is only used under CENTRAL and PREDICTIVE
+    private DispatchPolicy dispatchPolicy = DispatchPolicy.GREEDY;
+    private CentralDispatcher dispatcher = null;
+
+    // Waste generated per area type and hour of the week
+    private DemandProfile demandProfile = DemandProfile.flat();
+
+    // What the trucks have seen of the bins
+    private BinKnowledgeTable binKnowledge = new BinKnowledgeTable();
+
+    // Learned fill rates and overflow forecasts of the bins
+    private FillForecaster forecaster = new FillForecaster(taskCoordinator);
+
+    // Lookups used by the agents
+    private GarbageBin[] binsById = new GarbageBin[16]; // Indexed by bin id
+
+    // Roads, lights, bins and depots by cell, off the heap; the lights, bins and
+    // depots added since it was last read are registered on the next read
+    private CellMap cellMap = null;
+    private boolean cellMapStale = false;
+    private int[] straightRoadCells = null;
+
+    // Road cells, the distance from each to the nearest depot and to single
+    // targets such as bins; built on first use
+    private RoadNetwork roadNetwork = null;
+    private DistanceField depotField = null;
+    private DistanceFieldCache distanceFields = null;
+    private long distanceFieldBudget = -1; // Bytes, or -1 to fit a field per bin and depot
+
+    // Scratch list the trucks rank their target bins in
+    private final TargetCandidates targetCandidates = new TargetCandidates();
+
+    // Fleet and bin KPIs, one row per tick
+    private SimulationMetrics metrics = new SimulationMetrics();
+
+    // Phase timings of this kernel's ticks, apart from any other kernel's
+    private final PhaseTimers.Scope timings = new PhaseTimers.Scope();
+
+    // Optional per-tick record of every truck's position and state
+    private TrajectoryRecorder trajectory = null;
+
+    // Optional map receiving each truck's step time at its starting cell
+    private CostMap costMap = null;
+
+    // Continuous-time mode: trucks cross straight runs of road as single events,
+    // queued by arrival tick (then car id, so the order survives a snapshot)
+    private boolean continuousTime = false;
+    private PriorityQueue<Car> arrivals = new PriorityQueue<>(
+            Comparator.comparingLong(Car::getTransitArrival).thenComparingInt(Car::getId));
+
+    // Number of completed ticks
+    private long tick = 0;
+
+    /**
+     * Kernel whose random stream is seeded from Repast's RandomHelper, so the
+     * Repast random seed parameter still controls the run.
+     */
+    public SimulationKernel(Grid<Object> grid) {
+        this(grid, RandomHelper.nextInt());
+    }
+
+    public SimulationKernel(Grid<Object> grid, long seed) {
+        this.grid = grid;
+        this.random = new SimulationRandom(seed);
+        this.deadlockResolver = new DeadlockResolver(grid);
+        taskCoordinator.setArea(grid.getDimensions().getWidth(), grid.getDimensions().getHeight());
+    }
+
+    /**
+     * Drive the run on a map's roads. Lights, bins and depots added to the
+     * kernel are entered into the map; a loaded map's own lights must be
+     * added in light id order.
+     */
+    public void setCellMap(CellMap cellMap) {
+        if (cellMap.getWidth() != grid.getDimensions().getWidth() ||
+            cellMap.getHeight() != grid.getDimensions().getHeight()) {
+            throw new IllegalArgumentException("Map of " + cellMap.getWidth() + "x" + cellMap.getHeight() +
+                                               " does not fit the grid");
+        }
+        this.cellMap = cellMap;
+        this.cellMapStale = true;
+        straightRoadCells = null;
+        roadNetwork = null;
+        depotField = null;
+        distanceFields = null;
+    }
+
+    /**
+     * The run's map, with every light, bin and depot on the grid entered.
+     */
+    public CellMap getCellMap() {
+        if (cellMapStale) {
+            for (int i = 0; i < lights.size(); i++) {
+                GridPoint location = grid.getLocation(lights.get(i));
+                if (location != null) {
+                    cellMap.setLight(location.getX(), location.getY(), i);
+                }
+            }
+            for (GarbageBin bin : bins) {
+                GridPoint location = grid.getLocation(bin);
+                if (location != null) {
+                    cellMap.setOccupant(location.getX(), location.getY(), CellMap.OCCUPANT_BIN, bin.getId());
+                }
+            }
+            for (Depot depot : depots) {
+                GridPoint location = grid.getLocation(depot);
+                if (location != null) {
+                    cellMap.setOccupant(location.getX(), location.getY(), CellMap.OCCUPANT_DEPOT, depot.getId());
+                }
+            }
+            cellMapStale = false;
+        }
+        return cellMap;
+    }
+
+    public void addTrafficLight(TrafficLight light) {
+        lights.add(light);
+        cellMapStale = cellMap != null;
+    }
+
+    public void addGarbageBin(GarbageBin bin) {
+        bins.add(bin);
+        if (bin.getId() >= binsById.length) {
+            binsById = Arrays.copyOf(binsById, Math.max(bin.getId() + 1, binsById.length * 2));
+        }
+        binsById[bin.getId()] = bin;
+        bin.setKernel(this);
+        bin.setDemand(demandProfile.getCurve(bin.getAreaType()));
+        forecaster.track(bin, tick);
+        cellMapStale = cellMap != null;
+        if (distanceFields != null && distanceFieldBudget < 0) {
+            distanceFields.setBudget(scaledDistanceFieldBudget());
+        }
+    }
+
+    public void addCar(Car car) {
+        cars.add(car);
+    }
+
+    /**
+     * Add a depot already placed on the grid; its id must be its index.
+     */
+    public void addDepot(Depot depot) {
+        if (depot.getId() != depots.size()) {
+            throw new IllegalArgumentException("Depot " + depot.getId() + " added as depot " + depots.size());
+        }
+        depots.add(depot);
+        depotField = null;
+        cellMapStale = cellMap != null;
+    }
+
+    /**
+     * Stop stepping a car, e.g. when it leaves this kernel's partition.
+     */
+    public void removeCar(Car car) {
+        cars.remove(car);
+        arrivals.remove(car);
+    }
+
+    /**
+     * Advance the simulation by one tick.
+     */
+    @ScheduledMethod(start = 1, interval = 1)
+    public void tick() {
+        PhaseTimers.Scope outer = PhaseTimers.enter(timings);
+        try {
+            advance();
+        } finally {
+            PhaseTimers.exit(outer);
+        }
+    }
+
+    private void advance() {
+        long tickStart = PhaseTimers.start();
+        tick++;
+        taskCoordinator.setCurrentTick(tick);
+        for (int i = 0; i < taskCoordinator.getRevokedCount(); i++) {
+            revokeStaleTarget(taskCoordinator.getRevokedVehicle(i), taskCoordinator.getRevokedBin(i));
+        }
+
+        for (int i = 0; i < lights.size(); i++) {
+            long start = PhaseTimers.start();
+            lights.get(i).step();
+            PhaseTimers.stop(PhaseTimers.Phase.LIGHTS, start);
+        }
+
+        long readingsStart = PhaseTimers.start();
+        forecaster.observeDue(tick);
+        PhaseTimers.stop(PhaseTimers.Phase.BINS, readingsStart);
+
+        if (!arrivals.isEmpty()) {
+            processArrivals();
+        }
+
+        if (dispatchPolicy != DispatchPolicy.GREEDY) {
+            long dispatchStart = PhaseTimers.start();
+            dispatcher.dispatch(cars, bins, taskCoordinator, getDistanceFields());
+            PhaseTimers.stop(PhaseTimers.Phase.ASSIGN, dispatchStart);
+        }
+
+        // Random car order each tick, as the Repast scheduler would do
+        shuffleCars();
+        if (costMap != null) {
+            stepCarsMeasured();
+        } else {
+            for (int i = 0; i < cars.size(); i++) {
+                Car car = cars.get(i);
+                if (continuousTime && car.isInTransit() && car.advanceTransit()) {
+                    continue;
+                }
+                long start = PhaseTimers.start();
+                car.step();
+                PhaseTimers.stop(PhaseTimers.Phase.CARS, start);
+            }
+        }
+
+        long deadlockStart = PhaseTimers.start();
+        int cyclesBefore = deadlockResolver.getCyclesDetected();
+        deadlockResolver.resolve();
+        metrics.add(SimulationMetrics.Counter.DEADLOCK_CYCLES, deadlockResolver.getCyclesDetected() - cyclesBefore);
+        PhaseTimers.stop(PhaseTimers.Phase.DEADLOCK, deadlockStart);
+
+        long metricsStart = PhaseTimers.start();
+        metrics.endTick(tick, cars, bins, forecaster);
+        PhaseTimers.stop(PhaseTimers.Phase.METRICS, metricsStart);
+
+        if (trajectory != null) {
+            recordTrajectory();
+        }
+
+        PhaseTimers.stop(PhaseTimers.Phase.TICK, tickStart);
+    }
+
+    /**
+     * Tell the holder of a timed-out assignment that the bin is no longer its
+     * own. The holder may belong to another partition, then its kernel does it.
+     */
+    private void revokeStaleTarget(int vehicleId, int binId) {
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = cars.get(i);
+            if (car.getId() == vehicleId) {
+                car.expireTargetBin(binId);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Run a number of ticks back to back.
+     */
+    public void run(long ticks) {
+        for (long i = 0; i < ticks; i++) {
+            tick();
+        }
+    }
+
+    /**
+     * Charge the time spent stepping each truck to the cell it started from,
+     * e.g. to rebalance partitions; null stops measuring.
+     */
+    public void setCostMap(CostMap costMap) {
+        this.costMap = costMap;
+    }
+
+    /**
+     * Record every truck's position and state after each tick.
+     */
+    public void setTrajectoryRecorder(TrajectoryRecorder trajectory) {
+        this.trajectory = trajectory;
+    }
+
+    /**
+     * Flush recorded metrics and trajectories and release their output files.
+     * Runs at the end of a Repast run; headless drivers call it themselves.
+     */
+    @ScheduledMethod(start = ScheduledMethod.END)
+    public void close() {
+        metrics.close();
+        if (trajectory != null) {
+            try {
+                trajectory.close();
+            } catch (IOException e) {
+                System.out.println("SimulationKernel: failed to close trajectory: " + e.getMessage());
+            }
+            trajectory = null;
+        }
+    }
+
+    private void recordTrajectory() {
+        try {
+            trajectory.recordTick(tick, cars);
+        } catch (IOException e) {
+            System.out.println("SimulationKernel: trajectory recording stopped: " + e.getMessage());
+            trajectory = null;
+        }
+    }
+
+    private void stepCarsMeasured() {
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = cars.get(i);
+            if (continuousTime && car.isInTransit() && car.advanceTransit()) {
+                continue;
+            }
+            GridPoint location = grid.getLocation(car);
+            long start = System.nanoTime();
+            car.step();
+            long elapsed = System.nanoTime() - start;
+            costMap.add(location.getX(), location.getY(), elapsed);
+            if (PhaseTimers.isEnabled()) {
+                PhaseTimers.record(PhaseTimers.Phase.CARS, elapsed);
+            }
+        }
+    }
+
+    /**
+     * Land every truck whose transit ends this tick, in arrival order.
+     */
+    private void processArrivals() {
+        while (!arrivals.isEmpty() && arrivals.peek().getTransitArrival() <= tick) {
+            arrivals.poll().arriveFromTransit();
+        }
+    }
+
+    /**
+     * Queue a truck's transit arrival; called by the truck when it sets off.
+     */
+    void scheduleArrival(Car car) {
+        arrivals.add(car);
+    }
+
+    /**
+     * Drop a truck's queued arrival; called by the truck when its transit ends early.
+     */
+    void cancelArrival(Car car) {
+        arrivals.remove(car);
+    }
+
+    public boolean isContinuousTime() {
+        return continuousTime;
+    }
+
+    /**
+     * Switch continuous-time movement on or off. When on, a truck that sets
+     * off along a straight run of road is not stepped again until it reaches
+     * the next decision point (intersection, target or turn); its arrival is a
+     * scheduled event and meanwhile it only drives on along the run. Switching
+     * off lands every truck still in transit at once.
+     */
+    public void setContinuousTime(boolean continuousTime) {
+        this.continuousTime = continuousTime;
+        arrivals.clear();
+        for (Car car : cars) {
+            if (car.hasPendingArrival()) {
+                if (continuousTime) {
+                    arrivals.add(car);
+                } else {
+                    car.arriveFromTransit();
+                }
+            }
+        }
+    }
+
+    private void shuffleCars() {
+        for (int i = cars.size() - 1; i > 0; i--) {
+            Collections.swap(cars, i, random.nextIntFromTo(0, i));
+        }
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Continue counting from a restored tick.
+     */
+    void setTick(long tick) {
+        this.tick = tick;
+    }
+
+    public SimulationRandom getRandom() {
+        return random;
+    }
+
+    public Grid<Object> getGrid() {
+        return grid;
+    }
+
+    public DispatchPolicy getDispatchPolicy() {
+        return dispatchPolicy;
+    }
+
+    public void setDispatchPolicy(DispatchPolicy dispatchPolicy) {
+        this.dispatchPolicy = dispatchPolicy;
+        if (dispatchPolicy != DispatchPolicy.GREEDY && dispatcher == null) {
+            dispatcher = new CentralDispatcher(grid);
+        }
+        if (dispatcher != null) {
+            dispatcher.setPredictive(dispatchPolicy == DispatchPolicy.PREDICTIVE);
+        }
+    }
+
+    /**
+     * Task coordinator holding the bin assignments of this run.
+     */
+    public TaskCoordinator getTaskCoordinator() {
+        return taskCoordinator;
+    }
+
+    /**
+     * Fill rate forecasts of this run's bins.
+     */
+    public FillForecaster getForecaster() {
+        return forecaster;
+    }
+
+    /**
+     * Bin sightings shared by the trucks of this run.
+     */
+    public BinKnowledgeTable getBinKnowledge() {
+        return binKnowledge;
+    }
+
+    public DemandProfile getDemandProfile() {
+        return demandProfile;
+    }
+
+    /**
+     * Fill the bins by another demand profile from the current tick on.
+     */
+    public void setDemandProfile(DemandProfile demandProfile) {
+        this.demandProfile = demandProfile;
+        for (GarbageBin bin : bins) {
+            bin.setDemand(demandProfile.getCurve(bin.getAreaType()));
+        }
+    }
+
+    public SimulationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public PhaseTimers.Scope getTimings() {
+        return timings;
+    }
+
+    public DeadlockResolver getDeadlockResolver() {
+        return deadlockResolver;
+    }
+
+    public GarbageBin getBin(int binId) {
+        return (binId >= 0 && binId < binsById.length) ? binsById[binId] : null;
+    }
+
+    public Depot getDepot(int depotId) {
+        return (depotId >= 0 && depotId < depots.size()) ? depots.get(depotId) : null;
+    }
+
+    public List<Depot> getDepots() {
+        return Collections.unmodifiableList(depots);
+    }
+
+    /**
+     * Depot a truck at the given cell should unload at: the one nearest by road,
+     * or the nearest in a straight line if the cell cannot reach any by road.
+     *
+     * @return The depot, or null if the run has none
+     */
+    public Depot getNearestDepot(int x, int y) {
+        int nearest = getDepotField().nearest(x, y);
+        if (nearest >= 0) {
+            return depots.get(nearest);
+        }
+        Depot best = null;
+        double bestDistance = Double.MAX_VALUE;
+        int width = grid.getDimensions().getWidth();
+        int height = grid.getDimensions().getHeight();
+        for (Depot depot : depots) {
+            GridPoint location = grid.getLocation(depot);
+            int dx = Math.abs(location.getX() - x);
+            int dy = Math.abs(location.getY() - y);
+            dx = Math.min(dx, width - dx);
+            dy = Math.min(dy, height - dy);
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = depot;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Depot a truck can unload at from the given road cell, or null if the cell
+     * is not next to one.
+     */
+    public Depot getDepotServing(int x, int y) {
+        DistanceField field = getDepotField();
+        return (field.distance(x, y) == 0) ? depots.get(field.nearest(x, y)) : null;
+    }
+
+    /**
+     * Road distance from every cell to its nearest depot. Trucks unload from the
+     * road cells beside a depot, which are the field's goals.
+     */
+    public DistanceField getDepotField() {
+        if (depotField == null) {
+            int[][] goals = new int[depots.size()][];
+            for (int i = 0; i < depots.size(); i++) {
+                GridPoint location = grid.getLocation(depots.get(i));
+                goals[i] = getDistanceFields().goalsBeside(location.getX(), location.getY());
+            }
+            depotField = new DistanceField(getRoadNetwork(), goals);
+        }
+        return depotField;
+    }
+
+    /**
+     * Road distance fields to single targets, e.g. bins; a truck is next to the
+     * target where its field reads 0.
+     */
+    public DistanceFieldCache getDistanceFields() {
+        if (distanceFields == null) {
+            long budget = (distanceFieldBudget < 0) ? scaledDistanceFieldBudget() : distanceFieldBudget;
+            distanceFields = new DistanceFieldCache(getRoadNetwork(), budget);
+        }
+        return distanceFields;
+    }
+
+    private long scaledDistanceFieldBudget() {
+        return DistanceFieldCache.budgetFor(getRoadNetwork(), bins.size() + depots.size());
+    }
+
+    TargetCandidates getTargetCandidates() {
+        return targetCandidates;
+    }
+
+    /**
+     * Bytes of cached distance fields to keep, or -1 (the default) for one field
+     * per bin and depot as far as DistanceFieldCache.budgetFor() allows; drops
+     * the fields cached so far.
+     */
+    public void setDistanceFieldBudget(long bytes) {
+        this.distanceFieldBudget = bytes;
+        this.distanceFields = null;
+    }
+
+    public RoadNetwork getRoadNetwork() {
+        if (roadNetwork == null) {
+            roadNetwork = new RoadNetwork(getCellMap());
+        }
+        return roadNetwork;
+    }
+
+    public List<GarbageBin> getBins() {
+        return Collections.unmodifiableList(bins);
+    }
+
+    public List<Car> getCars() {
+        return Collections.unmodifiableList(cars);
+    }
+
+    public List<TrafficLight> getTrafficLights() {
+        return Collections.unmodifiableList(lights);
+    }
+
+    public TrafficLight getTrafficLight(int lightId) {
+        return lights.get(lightId);
+    }
+
+    /**
+     * Ids of the road cells that are not intersections, in cell id order, e.g.
+     * for relocating stuck cars.
+     */
+    public int[] getStraightRoadCells() {
+        if (straightRoadCells == null) {
+            CellMap cells = getCellMap();
+            int count = 0;
+            int[] found = new int[1024];
+            for (int cell = 0; cell < cells.getWidth() * cells.getHeight(); cell++) {
+                int entries = cells.getEntries(cell);
+                if (entries != 0 && (entries & CellMap.INTERSECTION) == 0) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, 2 * count);
+                    }
+                    found[count++] = cell;
+                }
+            }
+            straightRoadCells = Arrays.copyOf(found, count);
+        }
+        return straightRoadCells;
+    }
+}
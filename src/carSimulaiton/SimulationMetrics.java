@@ -0,0 +1,370 @@
+package carSimulaiton;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-tick fleet and bin KPIs recorded as a time series.
+ *
+ * Agents bump counters while they step; at the end of each tick the kernel calls
+ * endTick(), which samples the gauges and writes one row into a preallocated ring.
+ * The bin gauges come from the fill forecaster's latest sensor readings (taken
+ * as trucks pass, after each collection and when a bin's forecast falls due), whose
+ * aggregates it keeps as readings arrive, so a tick costs no scan of the bins.
+ * Nothing is allocated while recording. When an output file is set, the ring is
+ * written out as CSV every time it fills (and on close); without one the oldest
+ * rows are simply overwritten.
+ *
+ * Time spent in each car status is kept in log-linear histograms, bucketed like
+ * PhaseTimers (exact below 16 ticks, about 6% above), so p50/p99 durations can
+ * be reported without storing every interval.
+ */
+public class SimulationMetrics {
+
+    /**
+     * Events counted during a tick; the row holds the per-tick amount.
+     */
+    public enum Counter {
+        COLLECTIONS,
+        GARBAGE_COLLECTED,
+        DEPOT_UNLOADS,
+        ASSIGNMENTS,
+        ASSIGNMENT_REJECTIONS,
+        YIELDS,
+        TELEPORTS,
+        DEADLOCK_CYCLES,
+        OPERATING_COST      // Distance driven, weighted by each truck's cost per cell
+    }
+
+    /**
+     * Values sampled at the end of a tick.
+     */
+    public enum Gauge {
+        BINS_FULL,          // Bins at the full mark (GarbageBin.isFull), at their latest reading
+        MEAN_BIN_FILL,      // Mean bin fill at the latest readings, percent
+        FLEET_LOAD,         // Mean truck load, fraction of capacity
+        FLEET_BUSY          // Fraction of trucks heading to, collecting from or unloading bins
+    }
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final Gauge[] GAUGES = Gauge.values();
+    private static final Car.Status[] STATUSES = Car.Status.values();
+
+    // Row layout: counters, gauges, then the number of cars in each status
+    private static final int GAUGE_OFFSET = COUNTERS.length;
+    private static final int STATUS_OFFSET = GAUGE_OFFSET + GAUGES.length;
+    private static final int COLUMNS = STATUS_OFFSET + STATUSES.length;
+
+    // Counters for the tick in progress and for the whole run
+    private final double[] tickCounters = new double[COUNTERS.length];
+    private final double[] totals = new double[COUNTERS.length];
+
+    // Gauge aggregates over the whole run
+    private final double[] gaugeSums = new double[GAUGES.length];
+    private final double[] gaugeMaxima = new double[GAUGES.length];
+    private long ticksRecorded = 0;
+
+    // Ring of completed rows
+    private final long[] ringTicks;
+    private final double[] ring;
+    private int ringStart = 0;
+    private int ringSize = 0;
+
+    private final long[][] statusDurations = new long[STATUSES.length][PhaseTimers.BUCKETS];
+    private final long[] statusMaxima = new long[STATUSES.length];
+    private final int[] statusCounts = new int[STATUSES.length];
+
+    // CSV output, if any
+    private Writer output = null;
+    private final StringBuilder line = new StringBuilder(256);
+
+    public SimulationMetrics() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Number of tick rows buffered between flushes
+     */
+    public SimulationMetrics(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.ringTicks = new long[capacity];
+        this.ring = new double[capacity * COLUMNS];
+    }
+
+    //----------------------------------------------------------------
+    // Recording
+    //----------------------------------------------------------------
+
+    public void increment(Counter counter) {
+        tickCounters[counter.ordinal()]++;
+    }
+
+    public void add(Counter counter, double amount) {
+        tickCounters[counter.ordinal()] += amount;
+    }
+
+    /**
+     * Record how long a car stayed in a status before leaving it.
+     */
+    public void recordStatusDuration(Car.Status status, long ticks) {
+        long value = Math.max(0, ticks);
+        statusDurations[status.ordinal()][PhaseTimers.bucketOf(value)]++;
+        statusMaxima[status.ordinal()] = Math.max(statusMaxima[status.ordinal()], value);
+    }
+
+    /**
+     * Close the current tick: sample the gauges and store the row. Until every
+     * bin has a sensor reading the bin gauges are read from the bins directly.
+     */
+    public void endTick(long tick, List<Car> cars, List<GarbageBin> bins, FillForecaster forecaster) {
+        if (ringSize == ringTicks.length) {
+            if (output != null) {
+                flush();
+            } else {
+                // No sink: drop the oldest row
+                ringStart = (ringStart + 1) % ringTicks.length;
+                ringSize--;
+            }
+        }
+
+        int row = (ringStart + ringSize) % ringTicks.length;
+        int base = row * COLUMNS;
+        ringTicks[row] = tick;
+
+        for (int i = 0; i < COUNTERS.length; i++) {
+            ring[base + i] = tickCounters[i];
+            totals[i] += tickCounters[i];
+            tickCounters[i] = 0;
+        }
+
+        int binsFull = 0;
+        double meanFill = 0;
+        if (forecaster.getBinsRead() == bins.size()) {
+            binsFull = forecaster.getBinsFull();
+            meanFill = forecaster.getMeanFillPercentage();
+        } else if (!bins.isEmpty()) {
+            double fill = 0;
+            for (int i = 0; i < bins.size(); i++) {
+                GarbageBin bin = bins.get(i);
+                if (bin.isFull()) {
+                    binsFull++;
+                }
+                fill += bin.getFillPercentage();
+            }
+            meanFill = fill / bins.size();
+        }
+
+        double load = 0;
+        int busy = 0;
+        Arrays.fill(statusCounts, 0);
+        for (int i = 0; i < cars.size(); i++) {
+            Car car = cars.get(i);
+            Car.Status status = car.getActivity();
+            statusCounts[status.ordinal()]++;
+            if (status == Car.Status.HEADING_TO_BIN || status == Car.Status.COLLECTING ||
+                status == Car.Status.RETURNING_TO_DEPOT || status == Car.Status.UNLOADING) {
+                busy++;
+            }
+            load += car.getCurrentLoad() / car.getCapacity();
+        }
+
+        ring[base + GAUGE_OFFSET + Gauge.BINS_FULL.ordinal()] = binsFull;
+        ring[base + GAUGE_OFFSET + Gauge.MEAN_BIN_FILL.ordinal()] = meanFill;
+        ring[base + GAUGE_OFFSET + Gauge.FLEET_LOAD.ordinal()] = cars.isEmpty() ? 0 : load / cars.size();
+        ring[base + GAUGE_OFFSET + Gauge.FLEET_BUSY.ordinal()] = cars.isEmpty() ? 0 : (double) busy / cars.size();
+        for (int i = 0; i < STATUSES.length; i++) {
+            ring[base + STATUS_OFFSET + i] = statusCounts[i];
+        }
+        for (int i = 0; i < GAUGES.length; i++) {
+            double value = ring[base + GAUGE_OFFSET + i];
+            gaugeSums[i] += value;
+            if (ticksRecorded == 0 || value > gaugeMaxima[i]) {
+                gaugeMaxima[i] = value;
+            }
+        }
+
+        ticksRecorded++;
+        ringSize++;
+    }
+
+    //----------------------------------------------------------------
+    // Output
+    //----------------------------------------------------------------
+
+    /**
+     * Write the time series to a CSV file, replacing any previous contents.
+     */
+    public void setOutput(String path) {
+        close();
+        try {
+            output = new BufferedWriter(new FileWriter(path));
+            writeHeader();
+            System.out.println("SimulationMetrics: writing time series to " + path);
+        } catch (IOException e) {
+            System.out.println("SimulationMetrics: cannot open " + path + ": " + e.getMessage());
+            output = null;
+        }
+    }
+
+    /**
+     * Write all buffered rows to the output file and empty the ring.
+     */
+    public void flush() {
+        if (output == null) {
+            return;
+        }
+        try {
+            for (int i = 0; i < ringSize; i++) {
+                int row = (ringStart + i) % ringTicks.length;
+                int base = row * COLUMNS;
+                line.setLength(0);
+                line.append(ringTicks[row]);
+                for (int c = 0; c < COLUMNS; c++) {
+                    line.append(',');
+                    appendNumber(ring[base + c]);
+                }
+                line.append('\n');
+                output.append(line);
+            }
+            output.flush();
+        } catch (IOException e) {
+            System.out.println("SimulationMetrics: write failed, disabling output: " + e.getMessage());
+            output = null;
+        }
+        ringStart = 0;
+        ringSize = 0;
+    }
+
+    /**
+     * Flush any buffered rows and close the output file.
+     */
+    public void close() {
+        if (output == null) {
+            return;
+        }
+        flush();
+        try {
+            if (output != null) {
+                output.close();
+            }
+        } catch (IOException e) {
+            System.out.println("SimulationMetrics: close failed: " + e.getMessage());
+        }
+        output = null;
+    }
+
+    private void writeHeader() throws IOException {
+        line.setLength(0);
+        line.append("tick");
+        for (Counter counter : COUNTERS) {
+            line.append(',').append(counter.name().toLowerCase());
+        }
+        for (Gauge gauge : GAUGES) {
+            line.append(',').append(gauge.name().toLowerCase());
+        }
+        for (Car.Status status : STATUSES) {
+            line.append(",cars_").append(status.name().toLowerCase());
+        }
+        line.append('\n');
+        output.append(line);
+    }
+
+    private void appendNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            line.append((long) value);
+        } else {
+            line.append(Math.round(value * 10000) / 10000.0);
+        }
+    }
+
+    //----------------------------------------------------------------
+    // Queries
+    //----------------------------------------------------------------
+
+    /**
+     * Total of a counter over all completed ticks.
+     */
+    public double getTotal(Counter counter) {
+        return totals[counter.ordinal()];
+    }
+
+    /**
+     * Mean of a gauge over all completed ticks.
+     */
+    public double getGaugeMean(Gauge gauge) {
+        return (ticksRecorded == 0) ? 0 : gaugeSums[gauge.ordinal()] / ticksRecorded;
+    }
+
+    /**
+     * Highest value of a gauge over all completed ticks.
+     */
+    public double getGaugeMax(Gauge gauge) {
+        return gaugeMaxima[gauge.ordinal()];
+    }
+
+    /**
+     * Number of ticks recorded since the run (or restore) started.
+     */
+    public long getTicksRecorded() {
+        return ticksRecorded;
+    }
+
+    /**
+     * Number of rows currently buffered.
+     */
+    public int getBufferedTicks() {
+        return ringSize;
+    }
+
+    /**
+     * Approximate percentile of the time spent in a status, in ticks.
+     *
+     * @param percentile Between 0 and 100
+     * @return Upper bound of the histogram bucket holding the percentile (within
+     *         about 6%, and never above the longest duration), or 0 if nothing was recorded
+     */
+    public long getStatusDurationPercentile(Car.Status status, double percentile) {
+        long[] buckets = statusDurations[status.ordinal()];
+        long count = 0;
+        for (long n : buckets) {
+            count += n;
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(statusMaxima[status.ordinal()], PhaseTimers.highestValueIn(i));
+            }
+        }
+        return statusMaxima[status.ordinal()];
+    }
+
+    /**
+     * Print run totals and time-in-status percentiles.
+     */
+    public void printSummary() {
+        System.out.println("=== Simulation metrics ===");
+        for (Counter counter : COUNTERS) {
+            System.out.println(String.format("  %-22s %12.1f", counter.name().toLowerCase(), getTotal(counter)));
+        }
+        System.out.println("  Time in status (ticks):      p50      p99");
+        for (Car.Status status : STATUSES) {
+            System.out.println(String.format("  %-22s %8d %8d", status.name().toLowerCase(),
+                    getStatusDurationPercentile(status, 50), getStatusDurationPercentile(status, 99)));
+        }
+    }
+}
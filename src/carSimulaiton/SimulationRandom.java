@@ -0,0 +1,59 @@
+package carSimulaiton;
+
+/**
+ * Random number stream owned by one simulation run.
+ *
+ * Repast's RandomHelper is a JVM-wide static, so two runs in one JVM would draw
+ * from the same stream and its generator state cannot be saved. This SplitMix64
+ * generator keeps its whole state in one long, which snapshots store and restore
+ * so a resumed run continues with exactly the numbers it would have drawn.
+ * Not thread-safe; each run uses its own instance from its kernel thread.
+ */
+public class SimulationRandom {
+    private long state;
+
+    public SimulationRandom(long seed) {
+        this.state = seed;
+    }
+
+    /**
+     * Uniform double in [0, 1).
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Uniform double in [from, to).
+     */
+    public double nextDoubleFromTo(double from, double to) {
+        return from + nextDouble() * (to - from);
+    }
+
+    /**
+     * Uniform int in [from, to], both ends inclusive (like RandomHelper.nextIntFromTo).
+     */
+    public int nextIntFromTo(int from, int to) {
+        long range = (long) to - from + 1;
+        // Multiply-shift maps 32 random bits onto the range without modulo bias worth worrying about
+        return (int) (from + (((nextLong() >>> 32) * range) >>> 32));
+    }
+
+    public long nextLong() {
+        long z = (state += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Complete generator state, for snapshots.
+     */
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+}
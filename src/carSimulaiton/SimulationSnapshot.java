@@ -0,0 +1,268 @@
+package carSimulaiton;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import repast.simphony.context.Context;
+import repast.simphony.space.grid.Grid;
+import repast.simphony.space.grid.GridPoint;
+
+/**
+ * Complete state of a simulation run between two ticks, in a versioned binary format.
+ *
+ * Captures the grid size and occupancy, the demand profile, every road, traffic
+ * light, bin, depot and car (including each car's targets, known bins, cooldowns
+ * and movement history), the run's task coordinator tables, fill forecasts, bin
+ * sightings, dispatch policy and time mode, pending deadlock yields, the tick
+ * count and the run's random stream. Restoring into a fresh context gives a kernel that
+ * continues as the original would have. A snapshot is immutable, so one capture
+ * can be restored any number of times.
+ *
+ * Layout (big-endian): magic, version, width, height, tick, random state, demand
+ * profile, then roads (in cell order), lights, bins, depots and cars (each as
+ * count + records with x, y first), pending yields (car ids), the task coordinator's tables, the
+ * fill forecaster's readings, rates and due ticks, the fleet's bin sightings, the dispatch
+ * policy and whether the run uses continuous time (transits in progress are part of each car).
+ */
+public class SimulationSnapshot {
+    private static final long MAGIC = 0x4353534E41503031L; // "CSSNAP01"
+    // Also versions the agents' writeState() records, which scenario files embed
+    static final int VERSION = 14;
+
+    private static final Road.RoadType[] ROAD_TYPES = Road.RoadType.values();
+    private static final Road.Direction[] ROAD_DIRECTIONS = Road.Direction.values();
+
+    private final byte[] data;
+    private final long tick;
+
+    private SimulationSnapshot(byte[] data, long tick) {
+        this.data = data;
+        this.tick = tick;
+    }
+
+    /**
+     * Capture the state of a run. Call between ticks.
+     */
+    public static SimulationSnapshot capture(SimulationKernel kernel) throws IOException {
+        Grid<Object> grid = kernel.getGrid();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeLong(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(grid.getDimensions().getWidth());
+        out.writeInt(grid.getDimensions().getHeight());
+        out.writeLong(kernel.getTick());
+        out.writeLong(kernel.getRandom().getState());
+        kernel.getDemandProfile().writeState(out);
+
+        CellMap cells = kernel.getCellMap();
+        out.writeInt(cells.countRoads());
+        for (int y = 0; y < cells.getHeight(); y++) {
+            for (int x = 0; x < cells.getWidth(); x++) {
+                Road.RoadType type = cells.getRoadType(x, y);
+                if (type != null) {
+                    out.writeInt(x);
+                    out.writeInt(y);
+                    out.writeByte(type.ordinal());
+                    out.writeByte(cells.getRoadDirection(x, y).ordinal());
+                }
+            }
+        }
+
+        List<TrafficLight> lights = kernel.getTrafficLights();
+        out.writeInt(lights.size());
+        for (TrafficLight light : lights) {
+            writeLocation(out, grid, light);
+            light.writeState(out);
+        }
+
+        List<GarbageBin> bins = kernel.getBins();
+        out.writeInt(bins.size());
+        for (GarbageBin bin : bins) {
+            writeLocation(out, grid, bin);
+            bin.writeState(out);
+        }
+
+        List<Depot> depots = kernel.getDepots();
+        out.writeInt(depots.size());
+        for (Depot depot : depots) {
+            writeLocation(out, grid, depot);
+            depot.writeState(out);
+        }
+
+        // Cars in kernel order, which seeds the next shuffle
+        List<Car> cars = kernel.getCars();
+        out.writeInt(cars.size());
+        for (Car car : cars) {
+            writeLocation(out, grid, car);
+            car.writeState(out);
+        }
+
+        out.writeInt(kernel.getDeadlockResolver().getPendingYields().size());
+        for (Car car : kernel.getDeadlockResolver().getPendingYields()) {
+            out.writeInt(car.getId());
+        }
+
+        kernel.getTaskCoordinator().writeState(out);
+        kernel.getForecaster().writeState(out);
+        kernel.getBinKnowledge().writeState(out);
+
+        out.writeByte(kernel.getDispatchPolicy().ordinal());
+        out.writeBoolean(kernel.isContinuousTime());
+
+        out.flush();
+        return new SimulationSnapshot(bytes.toByteArray(), kernel.getTick());
+    }
+
+    /**
+     * Read a snapshot written by save().
+     */
+    public static SimulationSnapshot load(String path) throws IOException {
+        byte[] data = Files.readAllBytes(Paths.get(path));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        readHeader(in);
+        in.readInt(); // Width
+        in.readInt(); // Height
+        return new SimulationSnapshot(data, in.readLong());
+    }
+
+    public void save(String path) throws IOException {
+        Files.write(Paths.get(path), data);
+    }
+
+    /**
+     * Rebuild the captured run in an empty context.
+     *
+     * @param context Context to populate; receives the grid, all agents and the kernel
+     * @return The kernel of the restored run, ready to continue with the next tick
+     */
+    public SimulationKernel restore(Context<Object> context) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        readHeader(in);
+        int width = in.readInt();
+        int height = in.readInt();
+        long restoredTick = in.readLong();
+        long randomState = in.readLong();
+
+        context.setId("CarSimulation");
+        Grid<Object> grid = CarSimulationBuilder.createGrid(context, width, height);
+        SimulationKernel kernel = new SimulationKernel(grid, 0);
+        CellMap cells = new CellMap(width, height);
+        kernel.setCellMap(cells);
+        kernel.setDemandProfile(DemandProfile.readState(in));
+        context.add(kernel);
+
+        // Roads go straight into the cell map, without Road agents
+        int roadCount = in.readInt();
+        for (int i = 0; i < roadCount; i++) {
+            int x = in.readInt();
+            int y = in.readInt();
+            cells.setRoad(x, y, ROAD_TYPES[in.readByte()], ROAD_DIRECTIONS[in.readByte()]);
+        }
+
+        int lightCount = in.readInt();
+        for (int i = 0; i < lightCount; i++) {
+            int x = in.readInt();
+            int y = in.readInt();
+            TrafficLight light = new TrafficLight(TrafficLight.LightState.GREEN);
+            light.readState(in);
+            context.add(light);
+            kernel.addTrafficLight(light);
+            grid.moveTo(light, x, y);
+        }
+
+        int binCount = in.readInt();
+        for (int i = 0; i < binCount; i++) {
+            int x = in.readInt();
+            int y = in.readInt();
+            GarbageBin bin = GarbageBin.readState(in, kernel.getRandom());
+            context.add(bin);
+            kernel.addGarbageBin(bin);
+            grid.moveTo(bin, x, y);
+        }
+
+        int depotCount = in.readInt();
+        for (int i = 0; i < depotCount; i++) {
+            int x = in.readInt();
+            int y = in.readInt();
+            Depot depot = Depot.readState(in);
+            context.add(depot);
+            grid.moveTo(depot, x, y);
+            kernel.addDepot(depot);
+        }
+
+        Map<Integer, Car> carsById = new HashMap<>();
+        int carCount = in.readInt();
+        for (int i = 0; i < carCount; i++) {
+            int x = in.readInt();
+            int y = in.readInt();
+            Car car = Car.readState(in, grid);
+            car.setDeadlockResolver(kernel.getDeadlockResolver());
+            car.setKernel(kernel);
+            context.add(car);
+            kernel.addCar(car);
+            grid.moveTo(car, x, y);
+            carsById.put(car.getId(), car);
+        }
+
+        int yieldCount = in.readInt();
+        for (int i = 0; i < yieldCount; i++) {
+            Car car = carsById.get(in.readInt());
+            if (car != null) {
+                kernel.getDeadlockResolver().addPendingYield(car);
+            }
+        }
+
+        kernel.getTaskCoordinator().readState(in);
+        kernel.getForecaster().readState(in);
+        kernel.getBinKnowledge().readState(in);
+
+        kernel.setDispatchPolicy(DispatchPolicy.values()[in.readByte()]);
+        kernel.setContinuousTime(in.readBoolean());
+
+        kernel.setTick(restoredTick);
+        kernel.getRandom().setState(randomState);
+        System.out.println("Restored snapshot of tick " + restoredTick + ": " + carCount + " cars, " +
+                         binCount + " bins, " + lightCount + " traffic lights");
+        return kernel;
+    }
+
+    /**
+     * Tick after which the snapshot was taken.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Size of the encoded snapshot in bytes.
+     */
+    public int size() {
+        return data.length;
+    }
+
+    private static void readHeader(DataInputStream in) throws IOException {
+        if (in.readLong() != MAGIC) {
+            throw new IOException("Not a simulation snapshot");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+    }
+
+    private static void writeLocation(DataOutputStream out, Grid<Object> grid, Object agent) throws IOException {
+        GridPoint location = grid.getLocation(agent);
+        out.writeInt(location.getX());
+        out.writeInt(location.getY());
+    }
+}
@@ -0,0 +1,74 @@
+package carSimulaiton;
+
+import java.util.Arrays;
+
+/**
+ * Scratch list of bins a truck could target, each with an upper bound on its
+ * score, handed out highest bound first.
+ *
+ * A truck ranks its known bins by a bound that needs no road distance, then
+ * looks up road distances (distance fields, searched on a cache miss) only for
+ * bins whose bound can still beat the best score so far. The kernel keeps one
+ * list for all its trucks, which step one at a time.
+ */
+class TargetCandidates {
+    // Low bits of a sort key hold the candidate's index
+    private static final int INDEX_BITS = 21;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    private int[] bins = new int[16];
+    private double[] bounds = new double[16];
+    private long[] order = new long[16];
+    private int size = 0;
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * @param bound Upper bound on the bin's score, positive
+     */
+    void add(int bin, double bound) {
+        if (size == bins.length) {
+            int capacity = size * 2;
+            bins = Arrays.copyOf(bins, capacity);
+            bounds = Arrays.copyOf(bounds, capacity);
+            order = Arrays.copyOf(order, capacity);
+        }
+        bins[size] = bin;
+        bounds[size] = bound;
+        size++;
+    }
+
+    /**
+     * Order the candidates by bound, highest first. Bounds that differ only in
+     * their lowest mantissa bits may come out in either order; callers compare
+     * each candidate's exact bound, so this only affects how much is pruned.
+     */
+    void sortByBound() {
+        for (int i = 0; i < size; i++) {
+            // Bits of a positive double sort like the double itself
+            order[i] = (Double.doubleToLongBits(bounds[i]) & ~INDEX_MASK) | i;
+        }
+        Arrays.sort(order, 0, size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Bin of the rank-th highest bound, after sortByBound().
+     */
+    int getBin(int rank) {
+        return bins[indexOf(rank)];
+    }
+
+    double getBound(int rank) {
+        return bounds[indexOf(rank)];
+    }
+
+    private int indexOf(int rank) {
+        return (int) (order[size - 1 - rank] & INDEX_MASK);
+    }
+}
@@ -1,18 +1,50 @@
 package carSimulaiton;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import repast.simphony.space.continuous.NdPoint;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Central coordinator for task allocation in the garbage collection system.
  * This class handles the global coordination of bin assignments to vehicles.
+ * 
+ * There is one coordinator per simulation run, owned by its SimulationKernel,
+ * so several runs can share a JVM. Times are simulation ticks, advanced by the
+ * kernel through setCurrentTick().
+ * 
+ * In a partitioned run every worker keeps a replica of the tables: local
+ * changes are reported to a Listener and other workers' changes are merged
+ * with applyRemoteAssignment() and applyRemoteRelease().
+ * 
+ * The coordinator also ranks the open bins (known urgency, not assigned, not
+ * being serviced, not cooling down after a collection) by urgency and then by
+ * predicted overflow tick, in an indexed min-heap fed by the run's
+ * FillForecaster. The same ranking is kept per square block of the grid, so
+ * the most urgent open bins near a point come from the few blocks around it.
+ * Every change to a bin costs O(log n) in both heaps.
  */
 public class TaskCoordinator {
-    // Singleton instance
-    private static TaskCoordinator instance = null;
+    
+    /**
+     * Receives the assignment changes made by this coordinator's own vehicles.
+     */
+    public interface Listener {
+        void binAssigned(int vehicleId, int binId, long tick);
+        
+        void binReleased(int vehicleId, int binId, long tick);
+        
+        void binCollected(int vehicleId, int binId, double amount);
+    }
+    
+    // Current simulation tick
+    private long currentTick = 0;
     
     // Map bin IDs to assigned vehicle IDs
     private Map<Integer, Integer> binAssignments = new HashMap<>();
@@ -20,33 +52,126 @@ public class TaskCoordinator {
     // Track which bins are currently being serviced
     private Set<Integer> binsBeingServiced = new HashSet<>();
     
-    // Track recently emptied bins (to avoid immediate reassignment)
-    private Map<Integer, Long> recentlyEmptiedBins = new HashMap<>();
-    private static final long EMPTY_COOLDOWN = 5000; // 5 seconds
+    // Track recently emptied bins (to avoid immediate reassignment), keyed by the tick they were emptied
+    private final IndexedMinHeap recentlyEmptiedBins = new IndexedMinHeap(64);
+    static final long EMPTY_COOLDOWN = 50; // Ticks
     
-    // Track assignment times to detect stale assignments
-    private Map<Integer, Long> assignmentTimes = new HashMap<>();
-    private static final long ASSIGNMENT_TIMEOUT = 20000; // 20 seconds
+    // Track assignment times to detect stale assignments, keyed by the tick each bin was assigned
+    private final IndexedMinHeap assignmentTimes = new IndexedMinHeap(64);
+    private static final long ASSIGNMENT_TIMEOUT = 500; // Ticks
+    
+    // Stale assignments revoked by the last setCurrentTick(), as vehicle id, bin id pairs
+    private int[] revoked = new int[8];
+    private int revokedCount = 0;
+    
+    // Bins whose assignment or cooldown expired this tick, reused across ticks
+    private int[] expired = new int[8];
     
     // Track vehicle-bin assignments historically
-    private Map<String, Integer> assignmentHistory = new HashMap<>(); // key: "vehicleId-binId", value: count
+    private Map<Long, Integer> assignmentHistory = new HashMap<>(); // key: historyKey(vehicleId, binId), value: count
     private static final int MAX_REPEATED_ASSIGNMENTS = 3; // Maximum times a vehicle can be assigned to same bin
     
+    // Notified of local changes, if set
+    private Listener listener = null;
+    
+    // Console line per assignment change; benchmarks turn it off
+    private boolean logging = true;
+    
+    // Urgency levels, most urgent first
+    public static final int URGENCY_FULL = 0;    // At 90% or more
+    public static final int URGENCY_SOON = 1;    // At 70% or more, or due to overflow within URGENT_HORIZON
+    public static final int URGENCY_ROUTINE = 2;
+    public static final long URGENT_HORIZON = 100; // Ticks
+    
+    // Heap key = urgency * URGENCY_SPAN + predicted overflow tick
+    private static final double URGENCY_SPAN = 1L << 40;
+    
+    // Side of the square blocks of the spatial index, in cells
+    private static final int BLOCK_SIZE = 16;
+    
+    // Per bin id: heap key (NaN until the first forecast), fill and fill fraction at that forecast and position
+    private double[] urgencyKeys = new double[0];
+    private double[] fills = new double[0];
+    private double[] fillFractions = new double[0];
+    private int[] binX = new int[0];
+    private int[] binY = new int[0];
+    
+    // Open bins by key, overall and per block of the grid (one block until setArea)
+    private final IndexedMinHeap openBins = new IndexedMinHeap(64);
+    // Open bins again, fullest first (key = -fill fraction)
+    private final IndexedMinHeap openByFill = new IndexedMinHeap(64);
+    private IndexedMinHeap[] blocks = { new IndexedMinHeap(64) };
+    private int width = 0;
+    private int height = 0;
+    private int blocksX = 1;
+    private int blocksY = 1;
+    
+    // Scratch space of the nearby queries
+    private int[] blockIds = new int[0];
+    private double[] blockKeys = new double[0];
+    private int[] nearbyX = new int[1];
+    private int[] nearbyY = new int[1];
+    
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+    
     /**
-     * Private constructor for singleton pattern
+     * Print assignment changes to the console (on by default).
      */
-    private TaskCoordinator() {
-        // Private constructor
+    public synchronized void setLogging(boolean logging) {
+        this.logging = logging;
+    }
+    
+    /**
+     * Advance the coordinator's clock and expire stale assignments and cooldowns.
+     * Called by the kernel at the start of every tick; the kernel then tells the
+     * holders of the revoked assignments (getRevokedCount()) to drop their target.
+     * 
+     * @param tick The tick about to be simulated
+     */
+    public synchronized void setCurrentTick(long tick) {
+        this.currentTick = tick;
+        cleanupStaleAssignments();
+    }
+    
+    public synchronized long getCurrentTick() {
+        return currentTick;
     }
     
     /**
-     * Get singleton instance
+     * Number of stale assignments revoked by the last setCurrentTick().
      */
-    public static synchronized TaskCoordinator getInstance() {
-        if (instance == null) {
-            instance = new TaskCoordinator();
+    public synchronized int getRevokedCount() {
+        return revokedCount;
+    }
+    
+    public synchronized int getRevokedVehicle(int index) {
+        return revoked[2 * index];
+    }
+    
+    public synchronized int getRevokedBin(int index) {
+        return revoked[2 * index + 1];
+    }
+    
+    /**
+     * Size of the grid the bins are on, for the spatial index of the open bins.
+     */
+    public synchronized void setArea(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.blocksX = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.blocksY = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.nearbyX = new int[blocksX];
+        this.nearbyY = new int[blocksY];
+        this.blocks = new IndexedMinHeap[blocksX * blocksY];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = new IndexedMinHeap(16);
+        }
+        openBins.clear();
+        for (int binId = 0; binId < urgencyKeys.length; binId++) {
+            refreshOpen(binId);
         }
-        return instance;
     }
     
     /**
@@ -57,34 +182,38 @@ public class TaskCoordinator {
      * @return true if bin was assigned, false if already assigned or being serviced
      */
     public synchronized boolean requestBinAssignment(int vehicleId, int binId) {
-        // Check for and clean up stale assignments first
-        cleanupStaleAssignments();
-        
         // Check if bin is already assigned or serviced
         if (binAssignments.containsKey(binId) || binsBeingServiced.contains(binId)) {
             return false;
         }
         
         // Check if recently emptied
-        Long emptyTime = recentlyEmptiedBins.get(binId);
-        if (emptyTime != null && System.currentTimeMillis() - emptyTime < EMPTY_COOLDOWN) {
+        if (wasRecentlyEmptied(binId)) {
             return false;
         }
         
         // Check if this vehicle has been repeatedly assigned to this bin and failed
-        String assignmentKey = vehicleId + "-" + binId;
+        long assignmentKey = historyKey(vehicleId, binId);
         int assignmentCount = assignmentHistory.getOrDefault(assignmentKey, 0);
         if (assignmentCount >= MAX_REPEATED_ASSIGNMENTS) {
-            System.out.println("TaskCoordinator: Rejecting assignment of Bin " + binId + 
-                             " to Vehicle " + vehicleId + " due to repeated failed assignments");
+            if (logging) {
+                System.out.println("TaskCoordinator: Rejecting assignment of Bin " + binId + 
+                                 " to Vehicle " + vehicleId + " due to repeated failed assignments");
+            }
             return false;
         }
         
         // Assign bin to vehicle
         binAssignments.put(binId, vehicleId);
-        assignmentTimes.put(binId, System.currentTimeMillis());
+        assignmentTimes.put(binId, currentTick);
         assignmentHistory.put(assignmentKey, assignmentCount + 1);
-        System.out.println("TaskCoordinator: Bin " + binId + " assigned to Vehicle " + vehicleId);
+        refreshOpen(binId);
+        if (logging) {
+            System.out.println("TaskCoordinator: Bin " + binId + " assigned to Vehicle " + vehicleId);
+        }
+        if (listener != null) {
+            listener.binAssigned(vehicleId, binId, currentTick);
+        }
         return true;
     }
     
@@ -100,7 +229,10 @@ public class TaskCoordinator {
         Integer assignedVehicle = binAssignments.get(binId);
         if (assignedVehicle != null && assignedVehicle == vehicleId) {
             binsBeingServiced.add(binId);
-            System.out.println("TaskCoordinator: Bin " + binId + " now being serviced by Vehicle " + vehicleId);
+            refreshOpen(binId);
+            if (logging) {
+                System.out.println("TaskCoordinator: Bin " + binId + " now being serviced by Vehicle " + vehicleId);
+            }
             return true;
         }
         return false;
@@ -113,20 +245,85 @@ public class TaskCoordinator {
      * @param binId ID of the bin to release
      */
     public synchronized void releaseBin(int vehicleId, int binId) {
+        // Check if bin is assigned to this vehicle
+        if (release(vehicleId, binId, currentTick)) {
+            if (logging) {
+                System.out.println("TaskCoordinator: Bin " + binId + " released by Vehicle " + vehicleId);
+            }
+            if (listener != null) {
+                listener.binReleased(vehicleId, binId, currentTick);
+            }
+        }
+    }
+    
+    /**
+     * Report garbage a vehicle took out of a bin, so replicas of the bin can follow.
+     * 
+     * @param vehicleId ID of the collecting vehicle
+     * @param binId ID of the bin
+     * @param amount Amount removed from the bin
+     */
+    public synchronized void recordCollection(int vehicleId, int binId, double amount) {
+        if (listener != null) {
+            listener.binCollected(vehicleId, binId, amount);
+        }
+    }
+    
+    /**
+     * Merge an assignment made by another partition's coordinator.
+     * 
+     * Claims of the same bin made in the same tick are settled the same way on
+     * every replica: the lowest vehicle id wins. A claim never beats an older one.
+     * 
+     * @param vehicleId Vehicle that claimed the bin
+     * @param binId Claimed bin
+     * @param tick Tick the claim was made in
+     * @return The vehicle that lost the bin (the claimant or the previous holder), or -1 if there was no conflict
+     */
+    public synchronized int applyRemoteAssignment(int vehicleId, int binId, long tick) {
+        int loser = -1;
+        Integer holder = binAssignments.get(binId);
+        if (holder != null && holder != vehicleId) {
+            if (!assignmentTimes.contains(binId) || (long) assignmentTimes.getKey(binId) != tick || holder < vehicleId) {
+                return vehicleId;
+            }
+            loser = holder;
+        }
+        
+        binAssignments.put(binId, vehicleId);
+        assignmentTimes.put(binId, tick);
+        long assignmentKey = historyKey(vehicleId, binId);
+        assignmentHistory.put(assignmentKey, assignmentHistory.getOrDefault(assignmentKey, 0) + 1);
+        refreshOpen(binId);
+        return loser;
+    }
+    
+    /**
+     * Merge a release made by another partition's coordinator.
+     * 
+     * @param vehicleId Vehicle that released the bin
+     * @param binId Released bin
+     * @param tick Tick the bin was released in
+     */
+    public synchronized void applyRemoteRelease(int vehicleId, int binId, long tick) {
+        release(vehicleId, binId, tick);
+    }
+    
+    private boolean release(int vehicleId, int binId, long tick) {
         // Check if bin is assigned to this vehicle
         Integer assignedVehicle = binAssignments.get(binId);
-        if (assignedVehicle != null && assignedVehicle == vehicleId) {
-            binAssignments.remove(binId);
-            binsBeingServiced.remove(binId);
-            assignmentTimes.remove(binId);
-            recentlyEmptiedBins.put(binId, System.currentTimeMillis());
-            
-            // Reset the assignment history for successful collection
-            String assignmentKey = vehicleId + "-" + binId;
-            assignmentHistory.put(assignmentKey, 0);
-            
-            System.out.println("TaskCoordinator: Bin " + binId + " released by Vehicle " + vehicleId);
+        if (assignedVehicle == null || assignedVehicle != vehicleId) {
+            return false;
         }
+        binAssignments.remove(binId);
+        binsBeingServiced.remove(binId);
+        assignmentTimes.remove(binId);
+        recentlyEmptiedBins.put(binId, tick);
+        refreshOpen(binId);
+        
+        // Reset the assignment history for successful collection
+        assignmentHistory.put(historyKey(vehicleId, binId), 0);
+        return true;
     }
     
     /**
@@ -137,11 +334,20 @@ public class TaskCoordinator {
     private synchronized void forceReleaseBin(int binId) {
         Integer vehicleId = binAssignments.get(binId);
         if (vehicleId != null) {
-            System.out.println("TaskCoordinator: Force releasing stale assignment of Bin " + binId + 
-                             " from Vehicle " + vehicleId);
+            if (logging) {
+                System.out.println("TaskCoordinator: Force releasing stale assignment of Bin " + binId + 
+                                 " from Vehicle " + vehicleId);
+            }
             binAssignments.remove(binId);
             binsBeingServiced.remove(binId);
             assignmentTimes.remove(binId);
+            refreshOpen(binId);
+            if (2 * revokedCount + 2 > revoked.length) {
+                revoked = Arrays.copyOf(revoked, revoked.length * 2);
+            }
+            revoked[2 * revokedCount] = vehicleId;
+            revoked[2 * revokedCount + 1] = binId;
+            revokedCount++;
         }
     }
     
@@ -155,17 +361,19 @@ public class TaskCoordinator {
         // Check if bin is assigned to a vehicle
         if (binAssignments.containsKey(binId)) {
             Integer vehicleId = binAssignments.get(binId);
-            System.out.println("TaskCoordinator: Forced release of all assignments for Bin " + binId);
+            if (logging) {
+                System.out.println("TaskCoordinator: Forced release of all assignments for Bin " + binId);
+            }
             
             // Release the assignment
             binAssignments.remove(binId);
             binsBeingServiced.remove(binId);
             assignmentTimes.remove(binId);
+            refreshOpen(binId);
             
             // Mark this as a problematic assignment to avoid repeating
             if (vehicleId != null) {
-                String assignmentKey = vehicleId + "-" + binId;
-                assignmentHistory.put(assignmentKey, MAX_REPEATED_ASSIGNMENTS);
+                assignmentHistory.put(historyKey(vehicleId, binId), MAX_REPEATED_ASSIGNMENTS);
             }
         }
     }
@@ -189,9 +397,6 @@ public class TaskCoordinator {
      * @return true if bin is available
      */
     public synchronized boolean isBinAvailable(int binId) {
-        // Clean up stale assignments first
-        cleanupStaleAssignments();
-        
         return !binAssignments.containsKey(binId) && !binsBeingServiced.contains(binId);
     }
     
@@ -202,39 +407,416 @@ public class TaskCoordinator {
      * @return true if bin was emptied within the cooldown period
      */
     public synchronized boolean wasRecentlyEmptied(int binId) {
-        Long emptyTime = recentlyEmptiedBins.get(binId);
-        return emptyTime != null && System.currentTimeMillis() - emptyTime < EMPTY_COOLDOWN;
+        return recentlyEmptiedBins.contains(binId) &&
+               currentTick - (long) recentlyEmptiedBins.getKey(binId) < EMPTY_COOLDOWN;
+    }
+    
+    /**
+     * Check if a bin is assigned to any vehicle
+     * 
+     * @param binId ID of the bin
+     * @return true if some vehicle holds the bin
+     */
+    public synchronized boolean isBinAssigned(int binId) {
+        return binAssignments.containsKey(binId);
     }
     
     /**
      * Clean up stale assignments
      */
     private synchronized void cleanupStaleAssignments() {
-        // Find stale assignments
-        long currentTime = System.currentTimeMillis();
-        Set<Integer> staleBins = new HashSet<>();
+        revokedCount = 0;
+        
+        // Force release stale assignments, in bin order on every replica
+        int stale = expire(assignmentTimes, currentTick - ASSIGNMENT_TIMEOUT);
+        for (int i = 0; i < stale; i++) {
+            forceReleaseBin(expired[i]);
+        }
+        
+        // Also clean up recently emptied bins that are no longer in cooldown
+        int cooled = expire(recentlyEmptiedBins, currentTick - EMPTY_COOLDOWN);
+        for (int i = 0; i < cooled; i++) {
+            refreshOpen(expired[i]);
+        }
+    }
+    
+    /**
+     * Take the bins stamped before a tick off a heap of ticks, into expired in
+     * bin order. Only the expiring bins are touched, not every entry.
+     * 
+     * @return Number of bins taken
+     */
+    private int expire(IndexedMinHeap times, long before) {
+        int count = 0;
+        while (!times.isEmpty() && times.getKey(times.peek()) < before) {
+            if (count == expired.length) {
+                expired = Arrays.copyOf(expired, count * 2);
+            }
+            expired[count++] = times.poll();
+        }
+        Arrays.sort(expired, 0, count);
+        return count;
+    }
+    
+    private static long historyKey(int vehicleId, int binId) {
+        return ((long) vehicleId << 32) | (binId & 0xFFFFFFFFL);
+    }
+    
+    //----------------------------------------------------------------
+    // Bin urgency
+    //----------------------------------------------------------------
+    
+    /**
+     * Record a bin's latest forecast and re-rank it.
+     * 
+     * @param binId ID of the bin
+     * @param x Column of the bin
+     * @param y Row of the bin
+     * @param fill Fill of the bin
+     * @param fillFraction Fill as a fraction of capacity
+     * @param overflowTick Predicted tick the bin is full, infinity if it is not filling
+     */
+    public synchronized void updateUrgency(int binId, int x, int y, double fill, double fillFraction,
+                                           double overflowTick) {
+        int urgency;
+        if (fillFraction >= 0.9) {
+            urgency = URGENCY_FULL;
+        } else if (fillFraction >= 0.7 || overflowTick - currentTick <= URGENT_HORIZON) {
+            urgency = URGENCY_SOON;
+        } else {
+            urgency = URGENCY_ROUTINE;
+        }
+        double overflow = Math.max(0.0, Math.min(overflowTick, URGENCY_SPAN - 1));
+        rank(binId, x, y, urgency * URGENCY_SPAN + overflow, fill, fillFraction);
+    }
+    
+    private void rank(int binId, int x, int y, double key, double fill, double fillFraction) {
+        if (binId >= urgencyKeys.length) {
+            int length = Math.max(binId + 1, urgencyKeys.length * 2);
+            int oldLength = urgencyKeys.length;
+            urgencyKeys = Arrays.copyOf(urgencyKeys, length);
+            fills = Arrays.copyOf(fills, length);
+            fillFractions = Arrays.copyOf(fillFractions, length);
+            binX = Arrays.copyOf(binX, length);
+            binY = Arrays.copyOf(binY, length);
+            Arrays.fill(urgencyKeys, oldLength, length, Double.NaN);
+        }
         
-        for (Map.Entry<Integer, Long> entry : assignmentTimes.entrySet()) {
-            if (currentTime - entry.getValue() > ASSIGNMENT_TIMEOUT) {
-                staleBins.add(entry.getKey());
+        // Moving a bin between blocks means taking it out of the old one first
+        if (openBins.contains(binId) && blockOf(binX[binId], binY[binId]) != blockOf(x, y)) {
+            blocks[blockOf(binX[binId], binY[binId])].remove(binId);
+        }
+        binX[binId] = x;
+        binY[binId] = y;
+        urgencyKeys[binId] = key;
+        fills[binId] = fill;
+        fillFractions[binId] = fillFraction;
+        refreshOpen(binId);
+    }
+    
+    /**
+     * Urgency of a bin at its last forecast, or -1 if it has none.
+     */
+    public synchronized int getUrgency(int binId) {
+        if (binId < 0 || binId >= urgencyKeys.length || Double.isNaN(urgencyKeys[binId])) {
+            return -1;
+        }
+        return (int) (urgencyKeys[binId] / URGENCY_SPAN);
+    }
+    
+    /**
+     * Copy the open bins of at most the given urgency into out, most urgent
+     * (then soonest to overflow) first, stopping when out is full.
+     * 
+     * @return Number of bin ids copied
+     */
+    public synchronized int getUrgentBins(int maxUrgency, int[] out) {
+        return openBins.smallest(maxKey(maxUrgency), out);
+    }
+    
+    /**
+     * Like getUrgentBins(maxUrgency, out), but copying at most limit bins and
+     * passing over bins holding more than maxFill at their latest forecast.
+     */
+    public synchronized int getUrgentBins(int maxUrgency, double maxFill, int[] out, int limit) {
+        return smallestFitting(openBins, maxKey(maxUrgency), maxFill, out, limit);
+    }
+    
+    /**
+     * Copy the open bins filled to at least the given fraction of capacity at
+     * their latest forecast into out, fullest (by fraction) first, stopping
+     * after limit bins or when out is full. Bins holding more than maxFill are
+     * passed over, so bins too big for every truck do not crowd out the rest.
+     * 
+     * @return Number of bin ids copied
+     */
+    public synchronized int getFullestBins(double minFraction, double maxFill, int[] out, int limit) {
+        return smallestFitting(openByFill, -minFraction, maxFill, out, limit);
+    }
+    
+    /**
+     * Take a heap's bins in key order, up to maxKey, until limit of them hold
+     * at most maxFill, copy those into out and put them all back.
+     */
+    private int smallestFitting(IndexedMinHeap heap, double maxKey, double maxFill, int[] out, int limit) {
+        if (blockIds.length < heap.size()) {
+            blockIds = new int[Math.max(heap.size(), 2 * blockIds.length)];
+            blockKeys = new double[blockIds.length];
+        }
+        limit = Math.min(limit, out.length);
+        int taken = 0;
+        int count = 0;
+        while (count < limit && !heap.isEmpty() && heap.getKey(heap.peek()) <= maxKey) {
+            blockKeys[taken] = heap.getKey(heap.peek());
+            int binId = heap.poll();
+            blockIds[taken++] = binId;
+            if (fills[binId] <= maxFill) {
+                out[count++] = binId;
+            }
+        }
+        for (int b = 0; b < taken; b++) {
+            heap.put(blockIds[b], blockKeys[b]);
+        }
+        return count;
+    }
+    
+    /**
+     * Copy the most urgent open bins within a square around a point into out,
+     * most urgent (then soonest to overflow) first, stopping when out is full.
+     * Only the blocks of the spatial index that overlap the square are read,
+     * each only as far as its first out.length bins inside the square. Before
+     * setArea() every open bin counts as near.
+     * 
+     * @param radius Largest distance along each axis, in cells; the grid wraps
+     * @return Number of bin ids copied
+     */
+    public synchronized int getUrgentBinsNear(int x, int y, int radius, int maxUrgency, int[] out) {
+        if (width == 0) {
+            return getUrgentBins(maxUrgency, out);
+        }
+        int rangeX = blockRange(x, radius, width, blocksX, nearbyX);
+        int rangeY = blockRange(y, radius, height, blocksY, nearbyY);
+        double maxKey = maxKey(maxUrgency);
+        int count = 0;
+        for (int i = 0; i < rangeX; i++) {
+            for (int j = 0; j < rangeY; j++) {
+                IndexedMinHeap block = blocks[nearbyY[j] * blocksX + nearbyX[i]];
+                if (blockIds.length < block.size()) {
+                    blockIds = new int[Math.max(block.size(), 2 * blockIds.length)];
+                }
+                
+                // Take the block's bins in order until enough lie inside, then put them back
+                int taken = 0;
+                int inside = 0;
+                while (inside < out.length && !block.isEmpty() && block.getKey(block.peek()) <= maxKey) {
+                    int binId = block.poll();
+                    blockIds[taken++] = binId;
+                    if (wrappedDistance(binX[binId], x, width) <= radius &&
+                        wrappedDistance(binY[binId], y, height) <= radius) {
+                        count = insertByKey(out, count, binId);
+                        inside++;
+                    }
+                }
+                for (int b = 0; b < taken; b++) {
+                    block.put(blockIds[b], urgencyKeys[blockIds[b]]);
+                }
             }
         }
+        return count;
+    }
+    
+    /**
+     * Insert a bin into the first count entries of a list sorted by key,
+     * dropping the last one if the list is full.
+     */
+    private int insertByKey(int[] list, int count, int binId) {
+        int at = count;
+        while (at > 0 && keyOrder(binId, list[at - 1]) < 0) {
+            at--;
+        }
+        if (at >= list.length) {
+            return count;
+        }
+        int moved = Math.min(count, list.length - 1) - at;
+        System.arraycopy(list, at, list, at + 1, moved);
+        list[at] = binId;
+        return Math.min(count + 1, list.length);
+    }
+    
+    private int keyOrder(int a, int b) {
+        int c = Double.compare(urgencyKeys[a], urgencyKeys[b]);
+        return (c != 0) ? c : Integer.compare(a, b);
+    }
+    
+    private static double maxKey(int maxUrgency) {
+        return (maxUrgency + 1) * URGENCY_SPAN - 1;
+    }
+    
+    /**
+     * Blocks along one axis that overlap [center - radius, center + radius],
+     * wrapping around the grid.
+     * 
+     * @return Number of block indices written to out
+     */
+    private int blockRange(int center, int radius, int size, int blockCount, int[] out) {
+        int low = Math.floorMod(center - radius, size);
+        int high = Math.floorMod(center + radius, size);
+        int from = low / BLOCK_SIZE;
+        int to = high / BLOCK_SIZE;
+        // A range that wraps back into the block it started in covers them all
+        if (2 * radius + 1 >= size || (low > high && from == to)) {
+            for (int i = 0; i < blockCount; i++) {
+                out[i] = i;
+            }
+            return blockCount;
+        }
+        int count = 0;
+        for (int block = from; ; block = (block + 1) % blockCount) {
+            out[count++] = block;
+            if (block == to) {
+                return count;
+            }
+        }
+    }
+    
+    private static int wrappedDistance(int a, int b, int size) {
+        int d = Math.abs(a - b);
+        return Math.min(d, size - d);
+    }
+    
+    private int blockOf(int x, int y) {
+        if (width == 0) {
+            return 0;
+        }
+        return (Math.floorMod(y, height) / BLOCK_SIZE) * blocksX + Math.floorMod(x, width) / BLOCK_SIZE;
+    }
+    
+    /**
+     * Put a bin into the heaps or take it out, after a change to its urgency,
+     * assignment, service or cooldown.
+     */
+    private void refreshOpen(int binId) {
+        if (binId < 0 || binId >= urgencyKeys.length) {
+            return;
+        }
+        boolean open = !Double.isNaN(urgencyKeys[binId]) && !binAssignments.containsKey(binId) &&
+                       !binsBeingServiced.contains(binId) && !recentlyEmptiedBins.contains(binId);
+        IndexedMinHeap block = blocks[blockOf(binX[binId], binY[binId])];
+        if (open) {
+            openBins.put(binId, urgencyKeys[binId]);
+            openByFill.put(binId, -fillFractions[binId]);
+            block.put(binId, urgencyKeys[binId]);
+        } else {
+            openBins.remove(binId);
+            openByFill.remove(binId);
+            block.remove(binId);
+        }
+    }
+    
+    //----------------------------------------------------------------
+    // Snapshot support
+    //----------------------------------------------------------------
+    
+    /**
+     * Write the coordinator's tables for a snapshot, in key order so equal
+     * states always encode to the same bytes.
+     */
+    synchronized void writeState(DataOutput out) throws IOException {
+        out.writeLong(currentTick);
         
-        // Force release stale assignments
-        for (Integer binId : staleBins) {
-            forceReleaseBin(binId);
+        out.writeInt(binAssignments.size());
+        for (Map.Entry<Integer, Integer> entry : new TreeMap<>(binAssignments).entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue());
         }
         
-        // Also clean up recently emptied bins that are no longer in cooldown
-        Set<Integer> oldBins = new HashSet<>();
-        for (Map.Entry<Integer, Long> entry : recentlyEmptiedBins.entrySet()) {
-            if (currentTime - entry.getValue() > EMPTY_COOLDOWN) {
-                oldBins.add(entry.getKey());
+        out.writeInt(binsBeingServiced.size());
+        for (Integer binId : new TreeSet<>(binsBeingServiced)) {
+            out.writeInt(binId);
+        }
+        
+        writeTimes(out, recentlyEmptiedBins);
+        writeTimes(out, assignmentTimes);
+        
+        out.writeInt(assignmentHistory.size());
+        for (Map.Entry<Long, Integer> entry : new TreeMap<>(assignmentHistory).entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        
+        int ranked = 0;
+        for (double key : urgencyKeys) {
+            if (!Double.isNaN(key)) {
+                ranked++;
             }
         }
+        out.writeInt(ranked);
+        for (int binId = 0; binId < urgencyKeys.length; binId++) {
+            if (!Double.isNaN(urgencyKeys[binId])) {
+                out.writeInt(binId);
+                out.writeInt(binX[binId]);
+                out.writeInt(binY[binId]);
+                out.writeDouble(urgencyKeys[binId]);
+                out.writeDouble(fills[binId]);
+                out.writeDouble(fillFractions[binId]);
+            }
+        }
+    }
+    
+    /**
+     * Replace the coordinator's tables with ones written by writeState().
+     */
+    synchronized void readState(DataInput in) throws IOException {
+        currentTick = in.readLong();
+        
+        binAssignments.clear();
+        int assigned = in.readInt();
+        for (int i = 0; i < assigned; i++) {
+            binAssignments.put(in.readInt(), in.readInt());
+        }
+        
+        binsBeingServiced.clear();
+        int serviced = in.readInt();
+        for (int i = 0; i < serviced; i++) {
+            binsBeingServiced.add(in.readInt());
+        }
+        
+        readTimes(in, recentlyEmptiedBins);
+        readTimes(in, assignmentTimes);
         
-        for (Integer binId : oldBins) {
-            recentlyEmptiedBins.remove(binId);
+        assignmentHistory.clear();
+        int history = in.readInt();
+        for (int i = 0; i < history; i++) {
+            assignmentHistory.put(in.readLong(), in.readInt());
+        }
+        
+        openBins.clear();
+        openByFill.clear();
+        for (IndexedMinHeap block : blocks) {
+            block.clear();
+        }
+        Arrays.fill(urgencyKeys, Double.NaN);
+        int ranked = in.readInt();
+        for (int i = 0; i < ranked; i++) {
+            rank(in.readInt(), in.readInt(), in.readInt(), in.readDouble(), in.readDouble(), in.readDouble());
+        }
+    }
+    
+    private static void writeTimes(DataOutput out, IndexedMinHeap times) throws IOException {
+        int[] binIds = new int[times.size()];
+        int count = times.ids(binIds);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(binIds[i]);
+            out.writeLong((long) times.getKey(binIds[i]));
+        }
+    }
+    
+    private static void readTimes(DataInput in, IndexedMinHeap times) throws IOException {
+        times.clear();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            times.put(in.readInt(), in.readLong());
         }
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,11 @@
 package carSimulaiton;
 
-import repast.simphony.engine.schedule.ScheduledMethod;
 import repast.simphony.random.RandomHelper;
 
 import java.awt.Color;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 public class TrafficLight {
     private LightState state;
@@ -42,7 +44,9 @@ public class TrafficLight {
         System.out.println("Traffic light created with state: " + state);
     }
 
-    @ScheduledMethod(start = 1, interval = 1)
+    /**
+     * Advance the light by one tick. Called by the SimulationKernel.
+     */
     public void step() {
         timer++;
 
@@ -64,6 +68,22 @@ public class TrafficLight {
         }
     }
 
+    /**
+     * Write the light's state for a snapshot.
+     */
+    void writeState(DataOutput out) throws IOException {
+        out.writeByte(state.ordinal());
+        out.writeInt(timer);
+    }
+
+    /**
+     * Restore a light written by writeState().
+     */
+    void readState(DataInput in) throws IOException {
+        state = LightState.values()[in.readByte()];
+        timer = in.readInt();
+    }
+
     private int getDuration(LightState state) {
         switch (state) {
             case GREEN:
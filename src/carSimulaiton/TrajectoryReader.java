@@ -0,0 +1,207 @@
+package carSimulaiton;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a file written by TrajectoryRecorder, one tick block at a time.
+ *
+ * Typical use:
+ *   try (TrajectoryReader reader = new TrajectoryReader("trajectory.bin")) {
+ *       while (reader.next()) {
+ *           for (int i = 0; i < reader.getCount(); i++) {
+ *               ... reader.getTick(), reader.getCarId(i), reader.getX(i), reader.getY(i) ...
+ *           }
+ *       }
+ *   }
+ *
+ * Column accessors read straight from the mapped file, so scanning a trajectory
+ * allocates nothing per record.
+ */
+public class TrajectoryReader implements Closeable {
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private static final Car.Direction[] DIRECTIONS = Car.Direction.values();
+    private static final Car.Status[] STATUSES = Car.Status.values();
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long dataEnd;
+    private final long blockCount;
+
+    private MappedByteBuffer window = null;
+    private long windowStart = 0;
+
+    // Current block
+    private long nextBlock = TrajectoryRecorder.HEADER_SIZE;
+    private int base = -1;
+    private long tick = -1;
+    private int count = 0;
+
+    public TrajectoryReader(String path) throws IOException {
+        this.file = new RandomAccessFile(path, "r");
+        this.channel = file.getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(TrajectoryRecorder.HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < TrajectoryRecorder.HEADER_SIZE || header.getLong() != TrajectoryRecorder.MAGIC) {
+            file.close();
+            throw new IOException("Not a trajectory file: " + path);
+        }
+        int version = header.getInt();
+        if (version != TrajectoryRecorder.VERSION) {
+            file.close();
+            throw new IOException("Unsupported trajectory version " + version + " in " + path);
+        }
+        header.getInt(); // Reserved
+        this.dataEnd = header.getLong();
+        this.blockCount = header.getLong();
+    }
+
+    /**
+     * Advance to the next tick block.
+     *
+     * @return false at the end of the file
+     */
+    public boolean next() throws IOException {
+        if (nextBlock + TrajectoryRecorder.BLOCK_HEADER_SIZE > dataEnd) {
+            return false;
+        }
+        ensureWindow(nextBlock, TrajectoryRecorder.BLOCK_HEADER_SIZE);
+        int records = window.getInt((int) (nextBlock - windowStart) + 8);
+        long size = TrajectoryRecorder.blockSize(records);
+        ensureWindow(nextBlock, size);
+
+        base = (int) (nextBlock - windowStart);
+        tick = window.getLong(base);
+        count = records;
+        nextBlock += size;
+        return true;
+    }
+
+    /**
+     * Go back to the first block.
+     */
+    public void rewind() {
+        nextBlock = TrajectoryRecorder.HEADER_SIZE;
+        base = -1;
+        tick = -1;
+        count = 0;
+    }
+
+    /**
+     * Number of tick blocks in the file.
+     */
+    public long getBlockCount() {
+        return blockCount;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Number of trucks recorded in the current block.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public int getCarId(int i) {
+        return window.getInt(column(0) + 4 * i);
+    }
+
+    public int getX(int i) {
+        return window.getInt(column(1) + 4 * i);
+    }
+
+    public int getY(int i) {
+        return window.getInt(column(2) + 4 * i);
+    }
+
+    public float getLoad(int i) {
+        return window.getFloat(column(3) + 4 * i);
+    }
+
+    /**
+     * @return The truck's heading, or null if it had none
+     */
+    public Car.Direction getDirection(int i) {
+        byte ordinal = window.get(column(4) + i);
+        return ordinal < 0 ? null : DIRECTIONS[ordinal];
+    }
+
+    public Car.Status getStatus(int i) {
+        return STATUSES[window.get(column(4) + count + i)];
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        file.close();
+    }
+
+    /**
+     * Offset of a column in the current block. The first four columns are four
+     * bytes wide; direction and status follow as one byte each.
+     */
+    private int column(int index) {
+        if (base < 0) {
+            throw new IllegalStateException("Call next() before reading records");
+        }
+        return base + TrajectoryRecorder.BLOCK_HEADER_SIZE + index * 4 * count;
+    }
+
+    private void ensureWindow(long offset, long size) throws IOException {
+        if (window != null && offset >= windowStart && offset + size <= windowStart + window.capacity()) {
+            return;
+        }
+        windowStart = offset;
+        long length = Math.min(Math.max(WINDOW_SIZE, size), dataEnd - offset);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+    }
+
+    /**
+     * Print a short summary of a trajectory file: ticks, records, trucks and cell changes.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.out.println("Usage: TrajectoryReader <trajectory file>");
+            return;
+        }
+
+        try (TrajectoryReader reader = new TrajectoryReader(args[0])) {
+            long records = 0;
+            long moves = 0;
+            long firstTick = -1;
+            long lastTick = -1;
+            Map<Integer, Long> lastCell = new HashMap<>();
+
+            while (reader.next()) {
+                if (firstTick < 0) {
+                    firstTick = reader.getTick();
+                }
+                lastTick = reader.getTick();
+                for (int i = 0; i < reader.getCount(); i++) {
+                    long cell = ((long) reader.getX(i) << 32) | (reader.getY(i) & 0xFFFFFFFFL);
+                    Long previous = lastCell.put(reader.getCarId(i), cell);
+                    if (previous != null && previous != cell) {
+                        moves++;
+                    }
+                }
+                records += reader.getCount();
+            }
+
+            System.out.println("Ticks " + firstTick + " to " + lastTick + " (" + reader.getBlockCount() +
+                             " blocks), " + records + " records, " + lastCell.size() + " trucks, " +
+                             moves + " cell changes");
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package carSimulaiton;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import repast.simphony.space.grid.Grid;
+import repast.simphony.space.grid.GridPoint;
+
+/**
+ * Records the position and state of every truck on every tick into a binary
+ * file, written through memory-mapped windows.
+ *
+ * File layout (big-endian):
+ *   header:  magic (long), version (int), reserved (int), data end (long), block count (long)
+ *   blocks:  one per tick: tick (long), record count n (int), then fixed-width columns
+ *            carId int[n], x int[n], y int[n], load float[n], direction byte[n], status byte[n]
+ *
+ * Each tick is written straight into the mapped window with absolute puts, so
+ * recording allocates nothing. Windows are remapped as the file grows, so the
+ * file is not limited to 2 GB. A full window is unmapped and left to the OS to
+ * write back; the file is only flushed to disk once, on close. Read it back
+ * with TrajectoryReader.
+ */
+public class TrajectoryRecorder implements Closeable {
+    static final long MAGIC = 0x43535452414A3031L; // "CSTRAJ01"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int BLOCK_HEADER_SIZE = 12;
+    static final int BYTES_PER_RECORD = 18;
+
+    // Size of each mapped window; a tick larger than this gets a window of its own
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    // sun.misc.Unsafe.invokeCleaner, to unmap a window at once instead of when it
+    // is collected; null where the JDK does not offer it
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final Grid<Object> grid;
+
+    private MappedByteBuffer window = null;
+    private long windowStart = 0;
+    private long position = HEADER_SIZE; // File offset of the next block
+    private long blockCount = 0;
+
+    /**
+     * Create (or overwrite) a trajectory file.
+     *
+     * @param path File to write
+     * @param grid Grid the trucks move on
+     */
+    public TrajectoryRecorder(String path, Grid<Object> grid) throws IOException {
+        this.file = new RandomAccessFile(path, "rw");
+        this.channel = file.getChannel();
+        this.grid = grid;
+        file.setLength(0);
+        writeHeader();
+    }
+
+    /**
+     * Append one block with the state of all given cars.
+     */
+    public void recordTick(long tick, List<Car> cars) throws IOException {
+        int n = cars.size();
+        long blockSize = blockSize(n);
+        ensureWindow(blockSize);
+
+        int base = (int) (position - windowStart);
+        window.putLong(base, tick);
+        window.putInt(base + 8, n);
+
+        int ids = base + BLOCK_HEADER_SIZE;
+        int xs = ids + 4 * n;
+        int ys = xs + 4 * n;
+        int loads = ys + 4 * n;
+        int directions = loads + 4 * n;
+        int statuses = directions + n;
+
+        for (int i = 0; i < n; i++) {
+            Car car = cars.get(i);
+            GridPoint pt = grid.getLocation(car);
+            Car.Direction direction = car.getCurrentDirection();
+
+            window.putInt(ids + 4 * i, car.getId());
+            window.putInt(xs + 4 * i, pt.getX());
+            window.putInt(ys + 4 * i, pt.getY());
+            window.putFloat(loads + 4 * i, (float) car.getCurrentLoad());
+            window.put(directions + i, (byte) (direction != null ? direction.ordinal() : -1));
+            window.put(statuses + i, (byte) car.getActivity().ordinal());
+        }
+
+        position += blockSize;
+        blockCount++;
+    }
+
+    /**
+     * Number of ticks recorded so far.
+     */
+    public long getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Finish the header, trim the file to the recorded data and close it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (window != null) {
+            unmap(window);
+            window = null;
+        }
+        writeHeader();
+        channel.force(false);
+        try {
+            channel.truncate(position);
+        } catch (IOException e) {
+            // Some platforms refuse while pages are still mapped; readers use the header's data end
+            System.out.println("TrajectoryRecorder: could not trim file: " + e.getMessage());
+        }
+        file.close();
+    }
+
+    static long blockSize(int records) {
+        return BLOCK_HEADER_SIZE + (long) BYTES_PER_RECORD * records;
+    }
+
+    /**
+     * Make sure the current window covers the next block, mapping a new one if not.
+     */
+    private void ensureWindow(long blockSize) throws IOException {
+        if (window != null && position + blockSize <= windowStart + window.capacity()) {
+            return;
+        }
+        if (window != null) {
+            unmap(window);
+        }
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, Math.max(WINDOW_SIZE, blockSize));
+    }
+
+    /**
+     * Release a window's mapping now; its dirty pages stay in the page cache for
+     * the OS to write back. The window must not be used afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return; // Unmapped when collected
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("TrajectoryRecorder: could not unmap a window: " + e.getMessage());
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(0);
+        header.putLong(position);
+        header.putLong(blockCount);
+        header.flip();
+        channel.write(header, 0);
+    }
+}
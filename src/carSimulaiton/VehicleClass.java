@@ -0,0 +1,62 @@
+package carSimulaiton;
+
+/**
+ * Kinds of collection truck in a fleet, with what sets them apart in the model.
+ */
+public enum VehicleClass {
+    //            label          capacity  cells/tick  collection ticks  cost/cell
+    STANDARD     ("Standard",      100.0,      1,           5,             1.0),
+    COMPACTOR    ("Compactor",     250.0,      1,           8,             1.8),
+    SIDE_LOADER  ("Side-loader",   150.0,      1,           2,             1.3),
+    SMALL_VAN    ("Small van",      80.0,      2,           3,             0.5);
+
+    private final String label;
+    private final double capacity;
+    private final int speed;
+    private final int collectionTicks;
+    private final double costPerCell;
+
+    VehicleClass(String label, double capacity, int speed, int collectionTicks, double costPerCell) {
+        this.label = label;
+        this.capacity = capacity;
+        this.speed = speed;
+        this.collectionTicks = collectionTicks;
+        this.costPerCell = costPerCell;
+    }
+
+    /**
+     * Class with the given label (the Car type string), STANDARD if none matches.
+     */
+    public static VehicleClass forLabel(String label) {
+        for (VehicleClass vehicleClass : values()) {
+            if (vehicleClass.label.equalsIgnoreCase(label)) {
+                return vehicleClass;
+            }
+        }
+        return STANDARD;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /** Load the truck can carry before it must unload. */
+    public double getCapacity() {
+        return capacity;
+    }
+
+    /** Cells driven per tick on a clear road. */
+    public int getSpeed() {
+        return speed;
+    }
+
+    /** Ticks spent emptying one bin. */
+    public int getCollectionTicks() {
+        return collectionTicks;
+    }
+
+    /** Operating cost of driving one cell. */
+    public double getCostPerCell() {
+        return costPerCell;
+    }
+}
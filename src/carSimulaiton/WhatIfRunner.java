@@ -0,0 +1,193 @@
+package carSimulaiton;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import repast.simphony.context.Context;
+import repast.simphony.context.DefaultContext;
+import repast.simphony.random.RandomHelper;
+
+/**
+ * Runs several what-if branches from one captured state and compares their KPIs.
+ *
+ * Every branch restores the same immutable SimulationSnapshot into its own
+ * context, applies its setup (a dispatch policy, a parameter change, ...) and
+ * runs on a thread pool. Branches share nothing: each has its own kernel,
+ * random stream, assignment table and metrics, and starts from identical state,
+ * so differences in the report come from the setup alone.
+ *
+ * Usage: WhatIfRunner [warmup ticks] [branch ticks] [size] [bins] [cars] [seed] [threads]
+ * warms a scenario up once under greedy dispatch, then compares greedy and
+ * central dispatch from that state.
+ */
+public class WhatIfRunner {
+
+    /**
+     * A named variation applied to the restored kernel before it runs.
+     */
+    public static class Branch {
+        private final String name;
+        private final Consumer<SimulationKernel> setup;
+
+        public Branch(String name, Consumer<SimulationKernel> setup) {
+            this.name = name;
+            this.setup = setup;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * KPIs of one finished branch.
+     */
+    public static class Result {
+        private final String name;
+        private final SimulationMetrics metrics;
+        private final double seconds;
+
+        Result(String name, SimulationMetrics metrics, double seconds) {
+            this.name = name;
+            this.metrics = metrics;
+            this.seconds = seconds;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public SimulationMetrics getMetrics() {
+            return metrics;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+    }
+
+    private final SimulationSnapshot snapshot;
+    private final int threads;
+
+    /**
+     * @param snapshot State every branch starts from
+     * @param threads Number of branches run at the same time
+     */
+    public WhatIfRunner(SimulationSnapshot snapshot, int threads) {
+        this.snapshot = snapshot;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Run every branch for the same number of ticks.
+     *
+     * @return One result per branch, in the order given
+     */
+    public List<Result> run(List<Branch> branches, long ticks) throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, branches.size()));
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Branch branch : branches) {
+                futures.add(pool.submit(() -> runBranch(branch, ticks)));
+            }
+
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Result runBranch(Branch branch, long ticks) throws IOException {
+        Context<Object> context = new DefaultContext<>();
+        SimulationKernel kernel = snapshot.restore(context);
+        branch.setup.accept(kernel);
+
+        long start = System.nanoTime();
+        kernel.run(ticks);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        kernel.close();
+        return new Result(branch.getName(), kernel.getMetrics(), seconds);
+    }
+
+    /**
+     * Print the branches side by side, one KPI per row.
+     */
+    public static void printReport(List<Result> results, PrintStream out) {
+        StringBuilder header = new StringBuilder(String.format("%-24s", "KPI"));
+        for (Result result : results) {
+            header.append(String.format(" %14s", result.getName()));
+        }
+        out.println(header);
+
+        printRow(out, results, "collections", r -> r.getMetrics().getTotal(SimulationMetrics.Counter.COLLECTIONS), "%.0f");
+        printRow(out, results, "garbage collected", r -> r.getMetrics().getTotal(SimulationMetrics.Counter.GARBAGE_COLLECTED), "%.1f");
+        printRow(out, results, "depot unloads", r -> r.getMetrics().getTotal(SimulationMetrics.Counter.DEPOT_UNLOADS), "%.0f");
+        printRow(out, results, "mean bins full", r -> r.getMetrics().getGaugeMean(SimulationMetrics.Gauge.BINS_FULL), "%.2f");
+        printRow(out, results, "max bins full", r -> r.getMetrics().getGaugeMax(SimulationMetrics.Gauge.BINS_FULL), "%.0f");
+        printRow(out, results, "mean bin fill %", r -> r.getMetrics().getGaugeMean(SimulationMetrics.Gauge.MEAN_BIN_FILL), "%.1f");
+        printRow(out, results, "operating cost", r -> r.getMetrics().getTotal(SimulationMetrics.Counter.OPERATING_COST), "%.1f");
+        printRow(out, results, "fleet busy %", r -> 100 * r.getMetrics().getGaugeMean(SimulationMetrics.Gauge.FLEET_BUSY), "%.1f");
+        printRow(out, results, "assignments", r -> r.getMetrics().getTotal(SimulationMetrics.Counter.ASSIGNMENTS), "%.0f");
+        printRow(out, results, "yields", r -> r.getMetrics().getTotal(SimulationMetrics.Counter.YIELDS), "%.0f");
+        printRow(out, results, "teleports", r -> r.getMetrics().getTotal(SimulationMetrics.Counter.TELEPORTS), "%.0f");
+        printRow(out, results, "deadlock cycles", r -> r.getMetrics().getTotal(SimulationMetrics.Counter.DEADLOCK_CYCLES), "%.0f");
+        printRow(out, results, "wall time (s)", Result::getSeconds, "%.2f");
+    }
+
+    private interface Kpi {
+        double of(Result result);
+    }
+
+    private static void printRow(PrintStream out, List<Result> results, String label, Kpi kpi, String format) {
+        StringBuilder row = new StringBuilder(String.format("%-24s", label));
+        for (Result result : results) {
+            row.append(String.format(" %14s", String.format(format, kpi.of(result))));
+        }
+        out.println(row);
+    }
+
+    public static void main(String[] args) throws Exception {
+        long warmupTicks = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        long branchTicks = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int numBins = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int numCars = args.length > 4 ? Integer.parseInt(args[4]) : 20;
+        int seed = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+        int threads = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+
+        // Agent chatter from concurrent branches would be unreadable
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        RandomHelper.setSeed(seed);
+        CarSimulationBuilder builder = new CarSimulationBuilder(size, size, numBins, numCars);
+        builder.build(new DefaultContext<>());
+        SimulationKernel warmup = builder.getKernel();
+        warmup.run(warmupTicks);
+        SimulationSnapshot snapshot = SimulationSnapshot.capture(warmup);
+
+        List<Branch> branches = new ArrayList<>();
+        branches.add(new Branch("greedy", kernel -> kernel.setDispatchPolicy(DispatchPolicy.GREEDY)));
+        branches.add(new Branch("central", kernel -> kernel.setDispatchPolicy(DispatchPolicy.CENTRAL)));
+        branches.add(new Branch("predictive", kernel -> kernel.setDispatchPolicy(DispatchPolicy.PREDICTIVE)));
+
+        List<Result> results = new WhatIfRunner(snapshot, threads).run(branches, branchTicks);
+
+        System.setOut(console);
+        System.out.println("Branched " + branches.size() + " runs from tick " + snapshot.getTick() + " (" +
+                         snapshot.size() + " byte snapshot), " + branchTicks + " ticks each:");
+        printReport(results, System.out);
+    }
+}
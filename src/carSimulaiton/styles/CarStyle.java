@@ -6,19 +6,17 @@ import java.net.URL;
 
 import repast.simphony.visualizationOGL2D.DefaultStyleOGL2D;
 import saf.v3d.scene.VSpatial;
-import saf.v3d.ShapeFactory2D;
 import carSimulaiton.Car;
+import carSimulaiton.PhaseTimers;
 import carSimulaiton.Road;
 
 public class CarStyle extends DefaultStyleOGL2D {
 
-    private ShapeFactory2D shapeFactory;
-
     @Override
     public VSpatial getVSpatial(Object object, VSpatial spatial) {
         if (object instanceof Car) {
             if (spatial == null) {
-                shapeFactory = new ShapeFactory2D();
+                // Made with the display's shape factory, shared by every car
                 String imagePath = getImagePath(object); // Get the image path
                 if (imagePath != null) {
                     // Create the image
@@ -38,6 +36,13 @@ public class CarStyle extends DefaultStyleOGL2D {
 
     @Override
     public Color getColor(Object object) {
+        long start = PhaseTimers.start();
+        Color color = colorFor(object);
+        PhaseTimers.stop(PhaseTimers.Phase.RENDER_CARS, start);
+        return color;
+    }
+
+    private Color colorFor(Object object) {
         if (object instanceof Car) {
             Car car = (Car) object;
             Car.Direction direction = car.getCurrentDirection();
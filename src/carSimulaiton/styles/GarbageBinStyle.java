@@ -2,15 +2,37 @@ package carSimulaiton.styles;
 
 import java.awt.Color;
 import java.awt.Font;
+import java.util.Arrays;
 
 import carSimulaiton.GarbageBin;
+import carSimulaiton.PhaseTimers;
 import repast.simphony.visualizationOGL2D.DefaultStyleOGL2D;
 import saf.v3d.scene.VSpatial;
 
 /**
  * Style class for garbage bins that changes their color based on fill level.
+ *
+ * The display asks for every bin's color, label and scale on every frame.
+ * Colors and the label font are shared constants, and each bin's look is
+ * cached by bin id with the render key it was made for: the fill in half
+ * percent steps and whether the bin is being serviced. Only bins whose key
+ * changed since the last frame are restyled, so a label string is built when
+ * its percentage moves rather than once per frame.
  */
 public class GarbageBinStyle extends DefaultStyleOGL2D {
+    private static final Color SERVICED_COLOR = new Color(100, 149, 237);  // Cornflower Blue for bins being serviced
+    private static final Color VERY_FULL_COLOR = new Color(255, 0, 0);     // Red for very full bins (90-100%)
+    private static final Color HIGH_COLOR = new Color(255, 165, 0);        // Orange for high fill (70-90%)
+    private static final Color MEDIUM_COLOR = new Color(255, 255, 0);      // Yellow for medium fill (40-70%)
+    private static final Color LOW_COLOR = new Color(144, 238, 144);       // Light green for low fill (10-40%)
+    private static final Color EMPTY_COLOR = new Color(0, 128, 0);         // Green for nearly empty bins (0-10%)
+    private static final Font LABEL_FONT = new Font("Arial", Font.BOLD, 12);
+    
+    // Per bin id: render key of the cached look (-1 for none), and the look
+    private int[] keys = new int[0];
+    private Color[] colors = new Color[0];
+    private String[] labels = new String[0];
+    private float[] scales = new float[0];
     
     @Override
     public VSpatial getVSpatial(Object agent, VSpatial spatial) {
@@ -23,40 +45,83 @@ public class GarbageBinStyle extends DefaultStyleOGL2D {
     
     @Override
     public Color getColor(Object agent) {
+        long start = PhaseTimers.start();
+        Color color = colorFor(agent);
+        PhaseTimers.stop(PhaseTimers.Phase.RENDER_BINS, start);
+        return color;
+    }
+    
+    private Color colorFor(Object agent) {
         if (agent instanceof GarbageBin) {
-            GarbageBin bin = (GarbageBin) agent;
-            double fillPercent = bin.getFillPercentage();
-            
-            if (bin.isBeingServiced()) {
-                return new Color(100, 149, 237); // Cornflower Blue for bins being serviced
+            int look = lookOf((GarbageBin) agent);
+            return colors[look];
+        }
+        
+        return Color.GREEN; // Default color
+    }
+    
+    /**
+     * Bring a bin's cached look up to date if its render key changed; returns
+     * the bin's index in the cache. Read the cache arrays after calling, as
+     * this may grow them.
+     */
+    private int lookOf(GarbageBin bin) {
+        int id = bin.getId();
+        if (id >= keys.length) {
+            int length = Math.max(id + 1, 2 * keys.length);
+            int oldLength = keys.length;
+            keys = Arrays.copyOf(keys, length);
+            colors = Arrays.copyOf(colors, length);
+            labels = Arrays.copyOf(labels, length);
+            scales = Arrays.copyOf(scales, length);
+            Arrays.fill(keys, oldLength, length, -1);
+        }
+        
+        // Thresholds and label rounding both fall on half percent steps
+        double fillPercent = bin.getFillPercentage();
+        boolean serviced = bin.isBeingServiced();
+        int key = 2 * (int) (fillPercent * 2) + (serviced ? 1 : 0);
+        if (keys[id] != key) {
+            keys[id] = key;
+            if (serviced) {
+                colors[id] = SERVICED_COLOR;
             } else if (fillPercent >= 90) {
-                return new Color(255, 0, 0);     // Red for very full bins (90-100%)
+                colors[id] = VERY_FULL_COLOR;
             } else if (fillPercent >= 70) {
-                return new Color(255, 165, 0);   // Orange for high fill (70-90%)
+                colors[id] = HIGH_COLOR;
             } else if (fillPercent >= 40) {
-                return new Color(255, 255, 0);   // Yellow for medium fill (40-70%)
+                colors[id] = MEDIUM_COLOR;
             } else if (fillPercent >= 10) {
-                return new Color(144, 238, 144); // Light green for low fill (10-40%)
+                colors[id] = LOW_COLOR;
             } else {
-                return new Color(0, 128, 0);     // Green for nearly empty bins (0-10%)
+                colors[id] = EMPTY_COLOR;
             }
+            labels[id] = String.format("%d: %.0f%%", id, fillPercent);
+            // Scale bins slightly larger as they fill up
+            scales[id] = (float) (0.7 + (fillPercent / 100.0) * 0.5);
         }
-        
-        return Color.GREEN; // Default color
+        return id;
     }
     
     @Override
     public String getLabel(Object agent) {
+        long start = PhaseTimers.start();
+        String label = labelFor(agent);
+        PhaseTimers.stop(PhaseTimers.Phase.RENDER_BINS, start);
+        return label;
+    }
+    
+    private String labelFor(Object agent) {
         if (agent instanceof GarbageBin) {
-            GarbageBin bin = (GarbageBin) agent;
-            return String.format("%d: %.0f%%", bin.getId(), bin.getFillPercentage());
+            int look = lookOf((GarbageBin) agent);
+            return labels[look];
         }
         return "";
     }
     
     @Override
     public Font getLabelFont(Object agent) {
-        return new Font("Arial", Font.BOLD, 12);
+        return LABEL_FONT;
     }
     
     @Override
@@ -67,10 +132,8 @@ public class GarbageBinStyle extends DefaultStyleOGL2D {
     @Override
     public float getScale(Object agent) {
         if (agent instanceof GarbageBin) {
-            GarbageBin bin = (GarbageBin) agent;
-            // Scale bins slightly larger as they fill up
-            double fillPercent = bin.getFillPercentage();
-            return (float) (0.7 + (fillPercent / 100.0) * 0.5);
+            int look = lookOf((GarbageBin) agent);
+            return scales[look];
         }
         return 1.0f;
     }
@@ -3,18 +3,22 @@ package carSimulaiton.styles;
 import java.awt.Color;
 import repast.simphony.visualizationOGL2D.DefaultStyleOGL2D;
 import saf.v3d.scene.VSpatial;
-import saf.v3d.ShapeFactory2D;
 import carSimulaiton.Road;
+import carSimulaiton.PhaseTimers;
 
+/**
+ * Roads never change once laid, so a road's rectangle is made once with the
+ * display's shape factory and its color is one of the shared Road colors;
+ * restyling a road each frame allocates nothing.
+ */
 public class RoadStyle extends DefaultStyleOGL2D {
     
     @Override
     public VSpatial getVSpatial(Object object, VSpatial spatial) {
         if (object instanceof Road) {
             if (spatial == null) {
-                ShapeFactory2D factory = new ShapeFactory2D();
                 // Create a rectangle for roads
-                return factory.createRectangle(30, 30);
+                return shapeFactory.createRectangle(30, 30);
             }
         }
         return spatial;
@@ -22,6 +26,13 @@ public class RoadStyle extends DefaultStyleOGL2D {
     
     @Override
     public Color getColor(Object object) {
+        long start = PhaseTimers.start();
+        Color color = colorFor(object);
+        PhaseTimers.stop(PhaseTimers.Phase.RENDER_ROADS, start);
+        return color;
+    }
+    
+    private Color colorFor(Object object) {
         if (object instanceof Road) {
             Road road = (Road) object;
             return road.getColor();
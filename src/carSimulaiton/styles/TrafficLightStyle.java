@@ -3,8 +3,8 @@ package carSimulaiton.styles;
 import java.awt.Color;
 import repast.simphony.visualizationOGL2D.DefaultStyleOGL2D;
 import saf.v3d.scene.VSpatial;
-import saf.v3d.ShapeFactory2D;
 import carSimulaiton.TrafficLight;
+import carSimulaiton.PhaseTimers;
 
 public class TrafficLightStyle extends DefaultStyleOGL2D {
     
@@ -12,9 +12,8 @@ public class TrafficLightStyle extends DefaultStyleOGL2D {
     public VSpatial getVSpatial(Object object, VSpatial spatial) {
         if (object instanceof TrafficLight) {
             if (spatial == null) {
-                ShapeFactory2D factory = new ShapeFactory2D();
                 // Create a circle for traffic lights
-                return factory.createCircle(10, 10);
+                return shapeFactory.createCircle(10, 10);
             }
         }
         return spatial;
@@ -22,6 +21,13 @@ public class TrafficLightStyle extends DefaultStyleOGL2D {
     
     @Override
     public Color getColor(Object object) {
+        long start = PhaseTimers.start();
+        Color color = colorFor(object);
+        PhaseTimers.stop(PhaseTimers.Phase.RENDER_LIGHTS, start);
+        return color;
+    }
+    
+    private Color colorFor(Object object) {
         if (object instanceof TrafficLight) {
             TrafficLight light = (TrafficLight) object;
             TrafficLight.LightState state = light.getState();
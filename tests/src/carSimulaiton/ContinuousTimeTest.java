@@ -0,0 +1,82 @@
+package carSimulaiton;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import repast.simphony.context.DefaultContext;
+import repast.simphony.random.RandomHelper;
+
+/**
+ * Continuous-time transit against tick-by-tick stepping of the same scenario.
+ */
+public class ContinuousTimeTest {
+    private static final int SIZE = 100;
+    private static final int BINS = 60;
+    private static final int CARS = 80;
+    private static final int TICKS = 3000;
+
+    private PrintStream console;
+
+    @BeforeEach
+    public void silence() {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @AfterEach
+    public void restore() {
+        System.setOut(console);
+    }
+
+    // Summed over several seeds: one run's counts swing with when the queue at the depot forms
+    private static final int[] SEEDS = {3, 5, 9, 11};
+
+    private static final SimulationMetrics.Counter[] COUNTERS = {
+        SimulationMetrics.Counter.COLLECTIONS, SimulationMetrics.Counter.YIELDS,
+        SimulationMetrics.Counter.DEADLOCK_CYCLES
+    };
+
+    @Test
+    public void transitKeepsTheKpisOfStepping() {
+        double[] stepped = new double[COUNTERS.length];
+        double[] transit = new double[COUNTERS.length];
+        for (int seed : SEEDS) {
+            add(stepped, run(seed, false));
+            add(transit, run(seed, true));
+        }
+
+        // Trucks in transit hold the cells they drive through, so the traffic behind them matches
+        assertClose(stepped, transit, 0, 0.05);
+        assertClose(stepped, transit, 1, 0.35);
+        assertClose(stepped, transit, 2, 0.35);
+    }
+
+    private static SimulationMetrics run(int seed, boolean continuousTime) {
+        RandomHelper.setSeed(seed);
+        CarSimulationBuilder builder = new CarSimulationBuilder(SIZE, SIZE, BINS, CARS);
+        builder.build(new DefaultContext<>());
+        SimulationKernel kernel = builder.getKernel();
+        kernel.setContinuousTime(continuousTime);
+        kernel.run(TICKS);
+        return kernel.getMetrics();
+    }
+
+    private static void add(double[] totals, SimulationMetrics metrics) {
+        for (int i = 0; i < COUNTERS.length; i++) {
+            totals[i] += metrics.getTotal(COUNTERS[i]);
+        }
+    }
+
+    private static void assertClose(double[] stepped, double[] transit, int counter, double tolerance) {
+        double expected = stepped[counter];
+        double actual = transit[counter];
+        assertTrue(Math.abs(actual - expected) <= tolerance * expected,
+                   COUNTERS[counter].name() + ": " + actual + " in transit, " + expected + " stepped");
+    }
+}
@@ -0,0 +1,71 @@
+package carSimulaiton;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Bays and the waiting queue of a Depot, driven tick by tick the way trucks call unload().
+ */
+public class DepotTest {
+
+    @Test
+    public void queuedTrucksTakeBaysInArrivalOrder() {
+        Depot depot = new Depot(0, 1, 2);
+        assertFalse(depot.unload(1, 0, 10.0));
+        assertFalse(depot.unload(2, 0, 10.0));
+        assertEquals(1, depot.getQueueLength());
+
+        assertFalse(depot.unload(1, 1, 10.0));
+        assertFalse(depot.unload(2, 1, 10.0));
+        assertTrue(depot.unload(1, 2, 10.0));
+        assertFalse(depot.unload(2, 2, 10.0));
+        assertEquals(0, depot.getQueueLength());
+
+        assertFalse(depot.unload(2, 3, 10.0));
+        assertTrue(depot.unload(2, 4, 10.0));
+        assertEquals(2, depot.getUnloads());
+        assertEquals(20.0, depot.getUnloaded(), 1e-9);
+    }
+
+    @Test
+    public void truckThatLeavesTheQueueNoLongerBlocksIt() {
+        Depot depot = new Depot(0, 1, 3);
+        depot.unload(1, 0, 10.0);   // Takes the bay
+        depot.unload(2, 0, 10.0);   // Head of the queue
+        depot.unload(3, 0, 10.0);
+        assertEquals(2, depot.getQueueLength());
+
+        // Truck 2 drives off after tick 1; truck 1 finishes at tick 3
+        depot.unload(1, 1, 10.0);
+        depot.unload(2, 1, 10.0);
+        depot.unload(3, 1, 10.0);
+        depot.unload(1, 2, 10.0);
+        depot.unload(3, 2, 10.0);
+        assertTrue(depot.unload(1, 3, 10.0));
+
+        assertFalse(depot.unload(3, 3, 10.0));
+        assertEquals(0, depot.getQueueLength());
+        assertFalse(depot.unload(3, 4, 10.0));
+        assertFalse(depot.unload(3, 5, 10.0));
+        assertTrue(depot.unload(3, 6, 10.0));
+    }
+
+    @Test
+    public void truckThatLeavesABayFreesIt() {
+        Depot depot = new Depot(0, 1, 5);
+        depot.unload(1, 0, 10.0);
+        depot.unload(2, 0, 10.0);
+
+        // Truck 1 leaves the bay; truck 2 gets it once truck 1 has missed a tick
+        depot.unload(2, 1, 10.0);
+        assertFalse(depot.unload(2, 2, 10.0));
+        for (long tick = 3; tick < 7; tick++) {
+            assertFalse(depot.unload(2, tick, 10.0));
+        }
+        assertTrue(depot.unload(2, 7, 10.0));
+        assertEquals(1, depot.getUnloads());
+    }
+}
@@ -0,0 +1,233 @@
+package carSimulaiton;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import repast.simphony.context.Context;
+import repast.simphony.context.DefaultContext;
+import repast.simphony.random.RandomHelper;
+
+/**
+ * Partitioned runs against a single kernel, with the workers driven in this
+ * process and their messages routed the way PartitionedSimulation routes them.
+ */
+public class PartitionedSimulationTest {
+    private static final int SIZE = 60;
+    private static final int BINS = 30;
+    private static final int CARS = 30;
+    private static final int SEED = 4;
+    // Collections are compared summed over these; one small run's count swings too much
+    private static final int[] SEEDS = {1, 2, 3, 4};
+    private static final int TICKS = 1500;
+
+    private PrintStream console;
+
+    @BeforeEach
+    public void silence() {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @AfterEach
+    public void restore() {
+        System.setOut(console);
+    }
+
+    @Test
+    public void oneRegionMatchesSingleKernel() throws IOException {
+        Workers workers = new Workers(RegionPartition.uniform(SIZE, SIZE, 1), SEED);
+        SimulationKernel single = buildKernel(new DefaultContext<>(), SEED);
+        single.getRandom().setState(workers.kernels[0].getRandom().getState());
+
+        workers.run(TICKS);
+        single.run(TICKS);
+
+        SimulationKernel partitioned = workers.kernels[0];
+        for (int i = 0; i < BINS; i++) {
+            assertEquals(single.getBins().get(i).getCurrentFill(), partitioned.getBins().get(i).getCurrentFill(),
+                         "fill of bin " + i);
+        }
+        List<Car> singleCars = single.getCars();
+        for (Car car : singleCars) {
+            Car twin = findCar(partitioned, car.getId());
+            assertEquals(single.getGrid().getLocation(car), partitioned.getGrid().getLocation(twin),
+                         "location of car " + car.getId());
+            assertEquals(car.getCurrentLoad(), twin.getCurrentLoad(), "load of car " + car.getId());
+        }
+        for (SimulationMetrics.Counter counter : SimulationMetrics.Counter.values()) {
+            assertEquals(single.getMetrics().getTotal(counter), partitioned.getMetrics().getTotal(counter),
+                         counter.name());
+        }
+    }
+
+    @Test
+    public void twoRegionsKeepReplicasEqualAndEveryTruck() throws IOException {
+        double collections = 0;
+        double expected = 0;
+        for (int seed : SEEDS) {
+            Workers workers = new Workers(RegionPartition.uniform(SIZE, SIZE, 2), seed);
+            SimulationKernel single = buildKernel(new DefaultContext<>(), seed);
+
+            workers.run(TICKS);
+            single.run(TICKS);
+
+            SimulationKernel first = workers.kernels[0];
+            SimulationKernel second = workers.kernels[1];
+            for (int i = 0; i < BINS; i++) {
+                assertEquals(first.getBins().get(i).getCurrentFill(), second.getBins().get(i).getCurrentFill(),
+                             "fill of bin " + i + " on both replicas, seed " + seed);
+            }
+
+            Set<Integer> ids = new HashSet<>();
+            for (SimulationKernel kernel : workers.kernels) {
+                for (Car car : kernel.getCars()) {
+                    assertTrue(ids.add(car.getId()), "car " + car.getId() + " simulated twice, seed " + seed);
+                }
+            }
+            // A truck handed off on the last tick is still in its message
+            for (int id : workers.carsInFlight()) {
+                assertTrue(ids.add(id), "car " + id + " simulated and in flight, seed " + seed);
+            }
+            assertEquals(CARS, ids.size(), "trucks, seed " + seed);
+
+            collections += first.getMetrics().getTotal(SimulationMetrics.Counter.COLLECTIONS) +
+                           second.getMetrics().getTotal(SimulationMetrics.Counter.COLLECTIONS);
+            expected += single.getMetrics().getTotal(SimulationMetrics.Counter.COLLECTIONS);
+        }
+
+        // Trucks draw from other random streams, so the runs differ in detail but not in outcome
+        assertTrue(Math.abs(collections - expected) <= 0.25 * expected,
+                   collections + " collections partitioned, " + expected + " on one kernel");
+    }
+
+    private static SimulationKernel buildKernel(Context<Object> context, int seed) {
+        RandomHelper.setSeed(seed);
+        CarSimulationBuilder builder = new CarSimulationBuilder(SIZE, SIZE, BINS, CARS);
+        builder.build(context);
+        return builder.getKernel();
+    }
+
+    private static Car findCar(SimulationKernel kernel, int id) {
+        for (Car car : kernel.getCars()) {
+            if (car.getId() == id) {
+                return car;
+            }
+        }
+        throw new AssertionError("car " + id + " missing");
+    }
+
+    /**
+     * One worker per region, each tick fed the messages the others sent after the previous one.
+     */
+    private static class Workers {
+        final PartitionWorker[] workers;
+        final SimulationKernel[] kernels;
+
+        // Last tick's messages: [source][destination] and [source] for broadcasts
+        final byte[][][] direct;
+        final byte[][] broadcast;
+
+        Workers(RegionPartition partition, int seed) {
+            int regions = partition.getRegionCount();
+            workers = new PartitionWorker[regions];
+            kernels = new SimulationKernel[regions];
+            direct = new byte[regions][regions][0];
+            broadcast = new byte[regions][0];
+            for (int r = 0; r < regions; r++) {
+                Context<Object> context = new DefaultContext<>();
+                kernels[r] = buildKernel(context, seed);
+                workers[r] = new PartitionWorker(r, partition, context, kernels[r], seed);
+            }
+        }
+
+        void run(int ticks) throws IOException {
+            int regions = workers.length;
+            for (int t = 0; t < ticks; t++) {
+                for (int r = 0; r < regions; r++) {
+                    workers[r].tick(inbox(r));
+                }
+                for (int r = 0; r < regions; r++) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    workers[r].writeOutgoing(new DataOutputStream(bytes));
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+                    in.readLong();
+                    in.readInt();
+                    in.readBoolean();
+                    for (int d = 0; d < regions; d++) {
+                        direct[r][d] = new byte[in.readInt()];
+                        in.readFully(direct[r][d]);
+                    }
+                    broadcast[r] = new byte[in.readInt()];
+                    in.readFully(broadcast[r]);
+                }
+            }
+        }
+
+        /**
+         * Ids of the trucks in last tick's handoffs, not yet on any worker.
+         */
+        List<Integer> carsInFlight() throws IOException {
+            List<Integer> ids = new ArrayList<>();
+            for (int s = 0; s < workers.length; s++) {
+                for (int d = 0; d < workers.length; d++) {
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(direct[s][d]));
+                    while (in.available() > 0) {
+                        byte kind = in.readByte();
+                        in.readInt();
+                        in.readInt();
+                        if (kind == PartitionWorker.HANDOFF) {
+                            ids.add(Car.readState(in, kernels[d].getGrid()).getId());
+                        } else if (kind != PartitionWorker.GHOST) {
+                            throw new IOException("Unexpected direct message " + kind);
+                        }
+                    }
+                }
+            }
+            return ids;
+        }
+
+        /**
+         * A worker's input for the next tick, direct messages first, as PartitionedSimulation sends it.
+         */
+        private DataInputStream inbox(int destination) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            int blobs = 0;
+            for (int s = 0; s < workers.length; s++) {
+                blobs += (direct[s][destination].length > 0) ? 1 : 0;
+                blobs += (s != destination && broadcast[s].length > 0) ? 1 : 0;
+            }
+            out.writeBoolean(false);
+            out.writeInt(blobs);
+            for (int s = 0; s < workers.length; s++) {
+                if (direct[s][destination].length > 0) {
+                    out.writeInt(direct[s][destination].length);
+                    out.write(direct[s][destination]);
+                }
+            }
+            for (int s = 0; s < workers.length; s++) {
+                if (s != destination && broadcast[s].length > 0) {
+                    out.writeInt(broadcast[s].length);
+                    out.write(broadcast[s]);
+                }
+            }
+            return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        }
+    }
+}
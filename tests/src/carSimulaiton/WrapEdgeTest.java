@@ -0,0 +1,63 @@
+package carSimulaiton;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import repast.simphony.context.Context;
+import repast.simphony.context.DefaultContext;
+import repast.simphony.random.RandomHelper;
+import repast.simphony.space.grid.GridPoint;
+
+/**
+ * Bins placed across the grid's wrap edge from the road they stand beside.
+ */
+public class WrapEdgeTest {
+    private static final int SIZE = 20;
+
+    private PrintStream console;
+
+    @BeforeEach
+    public void silence() {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @AfterEach
+    public void restore() {
+        System.setOut(console);
+    }
+
+    @Test
+    public void truckCollectsBinAcrossTheEdge() {
+        // One two-way road along x = 0; the bin stands on the last column, beside it across the edge
+        CellMap map = new CellMap(SIZE, SIZE);
+        for (int y = 0; y < SIZE; y++) {
+            map.setRoad(0, y, Road.RoadType.VERTICAL, Road.Direction.BIDIRECTIONAL);
+        }
+
+        RandomHelper.setSeed(1);
+        Context<Object> context = new DefaultContext<>();
+        CarSimulationBuilder builder = new CarSimulationBuilder(SIZE, SIZE, 0, 1);
+        builder.setCellMap(map);
+        builder.build(context);
+        SimulationKernel kernel = builder.getKernel();
+
+        GarbageBin bin = new GarbageBin(1, 100.0, GarbageBin.AreaType.RESIDENTIAL, kernel.getRandom());
+        context.add(bin);
+        kernel.addGarbageBin(bin);
+        kernel.getGrid().moveTo(bin, SIZE - 1, SIZE / 2);
+
+        Car truck = kernel.getCars().get(0);
+        assertTrue(truck.dispatchTo(bin, new GridPoint(SIZE - 1, SIZE / 2)));
+
+        kernel.run(4 * SIZE);
+        assertEquals(1.0, kernel.getMetrics().getTotal(SimulationMetrics.Counter.COLLECTIONS));
+    }
+}